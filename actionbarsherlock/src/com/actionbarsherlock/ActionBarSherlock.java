@@ -796,4 +796,21 @@ public abstract class ActionBarSherlock {
      * Ensure that the action bar is attached.
      */
     public void ensureActionBar() {}
+
+    /**
+     * Set whether invalidating the options menu should update the existing
+     * menu in place rather than clearing it. The menu is still created again
+     * through {@code onCreateOptionsMenu} but into a temporary menu, and only
+     * its differences are applied. Unchanged items keep their instances,
+     * action views and action providers.
+     * <p>
+     * With this enabled, references to items, action views or action
+     * providers obtained in {@code onCreateOptionsMenu} may belong to the
+     * temporary menu. Look them up in {@code onPrepareOptionsMenu} instead.
+     * <p>
+     * Has no effect when the native action bar is used.
+     *
+     * @param enabled Whether to diff the menu on invalidation.
+     */
+    public void setMenuDiffingEnabled(boolean enabled) {}
 }
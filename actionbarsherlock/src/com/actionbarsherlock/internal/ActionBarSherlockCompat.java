@@ -13,7 +13,6 @@ import android.util.AndroidRuntimeException;
 import android.util.Log;
 import android.util.TypedValue;
 import android.view.ContextThemeWrapper;
-import android.view.KeyCharacterMap;
 import android.view.KeyEvent;
 import android.view.View;
 import android.view.ViewGroup;
@@ -87,6 +86,8 @@ public class ActionBarSherlockCompat extends ActionBarSherlock implements MenuBu
     private boolean mClosingActionMenu;
     private boolean mMenuIsPrepared;
     private boolean mMenuRefreshContent;
+    private boolean mMenuDiffingEnabled;
+    private boolean mMenuDiffPending;
     private Bundle mMenuFrozenActionViewState;
 
     /** Implementation which backs the action bar interface API. */
@@ -248,14 +249,22 @@ public class ActionBarSherlockCompat extends ActionBarSherlock implements MenuBu
 
         Bundle savedActionViewStates = null;
         if (mMenu != null) {
-            savedActionViewStates = new Bundle();
-            mMenu.saveActionViewStates(savedActionViewStates);
-            if (savedActionViewStates.size() > 0) {
-                mMenuFrozenActionViewState = savedActionViewStates;
+            if (mMenuDiffingEnabled) {
+                // Keep the menu, and its action views, until it has been
+                // created again and can be diffed against.
+                mMenuDiffPending = true;
+            } else {
+                savedActionViewStates = new Bundle();
+                mMenu.saveActionViewStates(savedActionViewStates);
+                if (savedActionViewStates.size() > 0) {
+                    mMenuFrozenActionViewState = savedActionViewStates;
+                }
             }
             // This will be started again when the panel is prepared.
             mMenu.stopDispatchingItemsChanged();
-            mMenu.clear();
+            if (!mMenuDiffPending) {
+                mMenu.clear();
+            }
         }
         mMenuRefreshContent = true;
 
@@ -332,8 +341,6 @@ public class ActionBarSherlockCompat extends ActionBarSherlock implements MenuBu
 
         if (mNativeItemMap == null) {
             mNativeItemMap = new HashMap<android.view.MenuItem, MenuItemImpl>();
-        } else {
-            mNativeItemMap.clear();
         }
 
         if (mMenu == null) {
@@ -463,7 +470,9 @@ public class ActionBarSherlockCompat extends ActionBarSherlock implements MenuBu
             // Creating the panel menu will involve a lot of manipulation;
             // don't dispatch change events to presenters until we're done.
             mMenu.stopDispatchingItemsChanged();
-            if (!callbackCreateOptionsMenu(mMenu)) {
+            final MenuBuilder createdMenu = mMenuDiffPending ? new MenuBuilder(mMenu.getContext()) : mMenu;
+            mMenuDiffPending = false;
+            if (!callbackCreateOptionsMenu(createdMenu)) {
                 // Ditch the menu created above
                 mMenu = null;
 
@@ -475,6 +484,10 @@ public class ActionBarSherlockCompat extends ActionBarSherlock implements MenuBu
                 return false;
             }
 
+            if (createdMenu != mMenu) {
+                mMenu.applyDiff(createdMenu);
+            }
+
             mMenuRefreshContent = false;
         }
 
@@ -502,8 +515,7 @@ public class ActionBarSherlockCompat extends ActionBarSherlock implements MenuBu
         }
 
         // Set the proper keymap
-        KeyCharacterMap kmap = KeyCharacterMap.load(KeyCharacterMap.VIRTUAL_KEYBOARD);
-        mMenu.setQwertyMode(kmap.getKeyboardType() != KeyCharacterMap.NUMERIC);
+        mMenu.setQwertyModeFromKeyboard();
         mMenu.startDispatchingItemsChanged();
 
         // Set other state
@@ -1166,6 +1178,13 @@ public class ActionBarSherlockCompat extends ActionBarSherlock implements MenuBu
         }
     }
 
+    @Override
+    public void setMenuDiffingEnabled(boolean enabled) {
+        if (BuildConfig.DEBUG) Log.d(TAG, "[setMenuDiffingEnabled] enabled: " + enabled);
+
+        mMenuDiffingEnabled = enabled;
+    }
+
     @Override
     public void ensureActionBar() {
         if (BuildConfig.DEBUG) Log.d(TAG, "[ensureActionBar]");
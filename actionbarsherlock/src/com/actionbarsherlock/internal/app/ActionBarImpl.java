@@ -105,6 +105,10 @@ public class ActionBarImpl extends ActionBar {
     private Animator mCurrentShowAnim;
     private Animator mCurrentModeAnim;
     private boolean mShowHideAnimationEnabled;
+    private boolean mShowHideAnimationLayersEnabled =
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+    private ShowHideAnim mShowAnim;
+    private ShowHideAnim mHideAnim;
     boolean mWasHiddenBeforeMode;
 
     final AnimatorListener mHideListener = new AnimatorListenerAdapter() {
@@ -149,6 +153,16 @@ public class ActionBarImpl extends ActionBar {
         init(dialog.getWindow().getDecorView());
     }
 
+    /** Only sets up showing and hiding the given views, for tests. */
+    ActionBarImpl(ActionBarContainer containerView, NineFrameLayout contentView,
+            ActionBarContainer splitView) {
+        mContext = containerView.getContext();
+        mContainerView = containerView;
+        mContentView = contentView;
+        mSplitView = splitView;
+        mContextDisplayMode = splitView != null ? CONTEXT_DISPLAY_SPLIT : CONTEXT_DISPLAY_NORMAL;
+    }
+
     private void init(View decor) {
         mContext = decor.getContext();
         mActionView = (ActionBarView) decor.findViewById(R.id.abs__action_bar);
@@ -251,6 +265,26 @@ public class ActionBarImpl extends ActionBar {
         }
     }
 
+    /**
+     * Enables or disables rendering the animated views into hardware layers
+     * while animating between show/hide states. This is enabled by default
+     * on Honeycomb and newer and has no effect on older platforms or when the
+     * window is not hardware accelerated.
+     *
+     * @param enabled true to use hardware layers, false to not use them.
+     */
+    public void setShowHideAnimationLayersEnabled(boolean enabled) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        if (mCurrentShowAnim != null) {
+            mCurrentShowAnim.end();
+        }
+        mShowHideAnimationLayersEnabled = enabled;
+        mShowAnim = null;
+        mHideAnim = null;
+    }
+
     public void addOnMenuVisibilityListener(OnMenuVisibilityListener listener) {
         mMenuVisibilityListeners.add(listener);
     }
@@ -564,22 +598,21 @@ public class ActionBarImpl extends ActionBar {
 
         if (mShowHideAnimationEnabled) {
             mContainerView.setAlpha(0);
-            AnimatorSet anim = new AnimatorSet();
-            AnimatorSet.Builder b = anim.play(ObjectAnimator.ofFloat(mContainerView, "alpha", 1));
+            final boolean withSplit =
+                    mSplitView != null && mContextDisplayMode == CONTEXT_DISPLAY_SPLIT;
+            if (mShowAnim == null || mShowAnim.withSplit != withSplit) {
+                mShowAnim = new ShowHideAnim(true, withSplit);
+            }
             if (mContentView != null) {
-                b.with(ObjectAnimator.ofFloat(mContentView, "translationY",
-                        -mContainerView.getHeight(), 0));
+                mShowAnim.setTranslation(-mContainerView.getHeight(), 0);
                 mContainerView.setTranslationY(-mContainerView.getHeight());
-                b.with(ObjectAnimator.ofFloat(mContainerView, "translationY", 0));
             }
-            if (mSplitView != null && mContextDisplayMode == CONTEXT_DISPLAY_SPLIT) {
+            if (withSplit) {
                 mSplitView.setAlpha(0);
                 mSplitView.setVisibility(View.VISIBLE);
-                b.with(ObjectAnimator.ofFloat(mSplitView, "alpha", 1));
             }
-            anim.addListener(mShowListener);
-            mCurrentShowAnim = anim;
-            anim.start();
+            mCurrentShowAnim = mShowAnim.set;
+            mShowAnim.set.start();
         } else {
             mContainerView.setAlpha(1);
             mContainerView.setTranslationY(0);
@@ -599,26 +632,121 @@ public class ActionBarImpl extends ActionBar {
         if (mShowHideAnimationEnabled) {
             mContainerView.setAlpha(1);
             mContainerView.setTransitioning(true);
-            AnimatorSet anim = new AnimatorSet();
-            AnimatorSet.Builder b = anim.play(ObjectAnimator.ofFloat(mContainerView, "alpha", 0));
+            final boolean withSplit =
+                    mSplitView != null && mSplitView.getVisibility() == View.VISIBLE;
+            if (mHideAnim == null || mHideAnim.withSplit != withSplit) {
+                mHideAnim = new ShowHideAnim(false, withSplit);
+            }
             if (mContentView != null) {
-                b.with(ObjectAnimator.ofFloat(mContentView, "translationY",
-                        0, -mContainerView.getHeight()));
-                b.with(ObjectAnimator.ofFloat(mContainerView, "translationY",
-                        -mContainerView.getHeight()));
+                mHideAnim.setTranslation(0, -mContainerView.getHeight());
             }
-            if (mSplitView != null && mSplitView.getVisibility() == View.VISIBLE) {
+            if (withSplit) {
                 mSplitView.setAlpha(1);
-                b.with(ObjectAnimator.ofFloat(mSplitView, "alpha", 0));
             }
-            anim.addListener(mHideListener);
-            mCurrentShowAnim = anim;
-            anim.start();
+            mCurrentShowAnim = mHideAnim.set;
+            mHideAnim.set.start();
         } else {
             mHideListener.onAnimationEnd(null);
         }
     }
 
+    /**
+     * The animation which shows or hides the action bar. It is kept to be played again, with
+     * only the translation updated for the current height of the bar.
+     */
+    private class ShowHideAnim {
+        final AnimatorSet set = new AnimatorSet();
+        final boolean withSplit;
+        private ObjectAnimator mContentTranslation;
+        private ObjectAnimator mContainerTranslation;
+        private float mTranslationFrom;
+        private float mTranslationTo;
+
+        ShowHideAnim(boolean show, boolean withSplit) {
+            this.withSplit = withSplit;
+            final float alphaFrom = show ? 0 : 1;
+            final float alphaTo = show ? 1 : 0;
+            AnimatorSet.Builder b = set.play(
+                    ObjectAnimator.ofFloat(mContainerView, "alpha", alphaFrom, alphaTo));
+            if (mContentView != null) {
+                mContentTranslation = ObjectAnimator.ofFloat(mContentView, "translationY", 0, 0);
+                mContainerTranslation =
+                        ObjectAnimator.ofFloat(mContainerView, "translationY", 0, 0);
+                b.with(mContentTranslation);
+                b.with(mContainerTranslation);
+            }
+            if (withSplit) {
+                b.with(ObjectAnimator.ofFloat(mSplitView, "alpha", alphaFrom, alphaTo));
+            }
+            set.addListener(show ? mShowListener : mHideListener);
+            if (mShowHideAnimationLayersEnabled) {
+                set.addListener(new HardwareLayerListener(mContainerView,
+                        mContentView, withSplit ? mSplitView : null));
+            }
+        }
+
+        void setTranslation(float from, float to) {
+            if (from != mTranslationFrom || to != mTranslationTo) {
+                mTranslationFrom = from;
+                mTranslationTo = to;
+                mContentTranslation.setFloatValues(from, to);
+                mContainerTranslation.setFloatValues(from, to);
+            }
+        }
+    }
+
+    /**
+     * Renders views into hardware layers for the duration of an animation, restoring their
+     * previous layer types once it ends. Views which are not hardware accelerated are left
+     * alone, since a software layer would only add work.
+     */
+    static class HardwareLayerListener extends AnimatorListenerAdapter {
+        private final View[] mViews;
+        private final int[] mLayerTypes;
+        private final boolean[] mLayered;
+        private boolean mActive;
+
+        HardwareLayerListener(View... views) {
+            mViews = views;
+            mLayerTypes = new int[views.length];
+            mLayered = new boolean[views.length];
+        }
+
+        @Override
+        public void onAnimationStart(Animator animation) {
+            if (mActive) {
+                return;
+            }
+            mActive = true;
+            for (int i = 0; i < mViews.length; i++) {
+                final View view = mViews[i];
+                mLayered[i] = view != null && view.isHardwareAccelerated()
+                        && view.getLayerType() != View.LAYER_TYPE_HARDWARE;
+                if (mLayered[i]) {
+                    mLayerTypes[i] = view.getLayerType();
+                    view.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+                    if (view.getWindowToken() != null) {
+                        view.buildLayer();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void onAnimationEnd(Animator animation) {
+            if (!mActive) {
+                return;
+            }
+            mActive = false;
+            for (int i = 0; i < mViews.length; i++) {
+                if (mLayered[i]) {
+                    mLayered[i] = false;
+                    mViews[i].setLayerType(mLayerTypes[i], null);
+                }
+            }
+        }
+    }
+
     public boolean isShowing() {
         return mContainerView.getVisibility() == View.VISIBLE;
     }
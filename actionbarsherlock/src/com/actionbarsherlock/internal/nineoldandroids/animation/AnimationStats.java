@@ -0,0 +1,93 @@
+package com.actionbarsherlock.internal.nineoldandroids.animation;
+
+/**
+ * Timing of a single animation frame, as processed by the animation handler of
+ * a thread. Stats are only collected while a {@link Listener} is set with
+ * {@link ValueAnimator#setAnimationStatsListener(Listener)}.
+ *
+ * <p>The same instance is reused for every frame; listeners must copy out
+ * anything they want to keep.</p>
+ */
+public final class AnimationStats {
+    /** Receives the stats of every animation frame. */
+    public interface Listener {
+        /**
+         * Called once all animations of a frame have been processed.
+         *
+         * @param stats The stats of the frame, only valid during this call.
+         */
+        void onAnimationFrame(AnimationStats stats);
+    }
+
+    final Listener mListener;
+
+    long mFrameTime;
+    long mFrameIntervalMillis;
+    long mTargetIntervalMillis;
+    long mFrameNanos;
+    long mUpdateListenerNanos;
+    long mSetterNanos;
+    int mActiveAnimations;
+    int mDelayedAnimations;
+    int mPendingAnimations;
+
+    AnimationStats(Listener listener) {
+        mListener = listener;
+    }
+
+    /** The time the animations were sampled at during the frame. */
+    public long getFrameTime() {
+        return mFrameTime;
+    }
+
+    /**
+     * The time since the previous frame, in milliseconds, or 0 for the first
+     * frame after animations were idle.
+     */
+    public long getFrameIntervalMillis() {
+        return mFrameIntervalMillis;
+    }
+
+    /** The interval the frame source aims for between frames, in milliseconds. */
+    public long getTargetIntervalMillis() {
+        return mTargetIntervalMillis;
+    }
+
+    /**
+     * How late the frame came compared to the target interval, in
+     * milliseconds, or 0 for the first frame after animations were idle.
+     */
+    public long getJitterMillis() {
+        return mFrameIntervalMillis == 0 ? 0 : mFrameIntervalMillis - mTargetIntervalMillis;
+    }
+
+    /** The wall time it took to process the frame, in nanoseconds. */
+    public long getFrameNanos() {
+        return mFrameNanos;
+    }
+
+    /** The time spent in {@link ValueAnimator.AnimatorUpdateListener}s, in nanoseconds. */
+    public long getUpdateListenerNanos() {
+        return mUpdateListenerNanos;
+    }
+
+    /** The time spent setting animated values on targets, in nanoseconds. */
+    public long getSetterNanos() {
+        return mSetterNanos;
+    }
+
+    /** The number of running animations at the start of the frame. */
+    public int getActiveAnimations() {
+        return mActiveAnimations;
+    }
+
+    /** The number of animations waiting for their start delay at the start of the frame. */
+    public int getDelayedAnimations() {
+        return mDelayedAnimations;
+    }
+
+    /** The number of animations started but not yet picked up by the handler. */
+    public int getPendingAnimations() {
+        return mPendingAnimations;
+    }
+}
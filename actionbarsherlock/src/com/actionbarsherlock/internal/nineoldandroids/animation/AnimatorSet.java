@@ -87,6 +87,12 @@ public final class AnimatorSet extends Animator {
      */
     private boolean mNeedsSort = true;
 
+    /**
+     * The nodes without dependencies, in sorted order. These are started as soon as the set
+     * starts (or its startDelay elapses); all other nodes are started by their dependencies.
+     */
+    private ArrayList<Node> mRootNodes = new ArrayList<Node>();
+
     private AnimatorSetListener mSetListener = null;
 
     /**
@@ -109,6 +115,7 @@ public final class AnimatorSet extends Animator {
 
     // Animator used for a nonzero startDelay
     private ValueAnimator mDelayAnim = null;
+    private DelayListener mDelayListener = null;
 
 
     // How long the child animations should last in ms. The default value is negative, which
@@ -459,11 +466,9 @@ public final class AnimatorSet extends Animator {
             Node node = mSortedNodes.get(i);
             // First, clear out the old listeners
             ArrayList<AnimatorListener> oldListeners = node.animation.getListeners();
-            if (oldListeners != null && oldListeners.size() > 0) {
-                final ArrayList<AnimatorListener> clonedListeners = new
-                        ArrayList<AnimatorListener>(oldListeners);
-
-                for (AnimatorListener listener : clonedListeners) {
+            if (oldListeners != null) {
+                for (int j = oldListeners.size() - 1; j >= 0; --j) {
+                    AnimatorListener listener = oldListeners.get(j);
                     if (listener instanceof DependencyListener ||
                             listener instanceof AnimatorSetListener) {
                         node.animation.removeListener(listener);
@@ -472,54 +477,44 @@ public final class AnimatorSet extends Animator {
             }
         }
 
-        // nodesToStart holds the list of nodes to be started immediately. We don't want to
-        // start the animations in the loop directly because we first need to set up
-        // dependencies on all of the nodes. For example, we don't want to start an animation
-        // when some other animation also wants to start when the first animation begins.
-        final ArrayList<Node> nodesToStart = new ArrayList<Node>();
+        // The root nodes are started once all of the dependencies are set up. We don't want
+        // to start the animations in the loop directly because, for example, we don't want to
+        // start an animation when some other animation also wants to start when the first
+        // animation begins.
+        if (mSetListener == null) {
+            mSetListener = new AnimatorSetListener(this);
+        }
         for (int i = 0; i < numSortedNodes; ++i) {
             Node node = mSortedNodes.get(i);
-            if (mSetListener == null) {
-                mSetListener = new AnimatorSetListener(this);
-            }
-            if (node.dependencies == null || node.dependencies.size() == 0) {
-                nodesToStart.add(node);
-            } else {
+            if (node.dependencies != null && node.dependencies.size() > 0) {
                 int numDependencies = node.dependencies.size();
                 for (int j = 0; j < numDependencies; ++j) {
                     Dependency dependency = node.dependencies.get(j);
-                    dependency.node.animation.addListener(
-                            new DependencyListener(this, node, dependency.rule));
+                    if (dependency.listener == null) {
+                        dependency.listener = new DependencyListener(this, node, dependency.rule);
+                    }
+                    dependency.node.animation.addListener(dependency.listener);
+                }
+                if (node.tmpDependencies == null) {
+                    node.tmpDependencies = new ArrayList<Dependency>(numDependencies);
+                } else {
+                    node.tmpDependencies.clear();
                 }
-                node.tmpDependencies = (ArrayList<Dependency>) node.dependencies.clone();
+                node.tmpDependencies.addAll(node.dependencies);
             }
             node.animation.addListener(mSetListener);
         }
         // Now that all dependencies are set up, start the animations that should be started.
         if (mStartDelay <= 0) {
-            for (Node node : nodesToStart) {
-                node.animation.start();
-                mPlayingSet.add(node.animation);
-            }
+            startRootNodes();
         } else {
-            mDelayAnim = ValueAnimator.ofFloat(0f, 1f);
+            if (mDelayAnim == null) {
+                mDelayAnim = ValueAnimator.ofFloat(0f, 1f);
+                mDelayListener = new DelayListener();
+                mDelayAnim.addListener(mDelayListener);
+            }
             mDelayAnim.setDuration(mStartDelay);
-            mDelayAnim.addListener(new AnimatorListenerAdapter() {
-                boolean canceled = false;
-                public void onAnimationCancel(Animator anim) {
-                    canceled = true;
-                }
-                public void onAnimationEnd(Animator anim) {
-                    if (!canceled) {
-                        int numNodes = nodesToStart.size();
-                        for (int i = 0; i < numNodes; ++i) {
-                            Node node = nodesToStart.get(i);
-                            node.animation.start();
-                            mPlayingSet.add(node.animation);
-                        }
-                    }
-                }
-            });
+            mDelayListener.canceled = false;
             mDelayAnim.start();
         }
         if (mListeners != null) {
@@ -545,6 +540,15 @@ public final class AnimatorSet extends Animator {
         }
     }
 
+    private void startRootNodes() {
+        int numNodes = mRootNodes.size();
+        for (int i = 0; i < numNodes; ++i) {
+            Node node = mRootNodes.get(i);
+            node.animation.start();
+            mPlayingSet.add(node.animation);
+        }
+    }
+
     @Override
     public AnimatorSet clone() {
         final AnimatorSet anim = (AnimatorSet) super.clone();
@@ -563,6 +567,10 @@ public final class AnimatorSet extends Animator {
         anim.mNodeMap = new HashMap<Animator, Node>();
         anim.mNodes = new ArrayList<Node>();
         anim.mSortedNodes = new ArrayList<Node>();
+        anim.mRootNodes = new ArrayList<Node>();
+        anim.mSetListener = null;
+        anim.mDelayAnim = null;
+        anim.mDelayListener = null;
 
         // Walk through the old nodes list, cloning each node and adding it to the new nodemap.
         // One problem is that the old node dependencies point to nodes in the old AnimatorSet.
@@ -703,6 +711,25 @@ public final class AnimatorSet extends Animator {
 
     }
 
+    /**
+     * Starts the root nodes once the startDelay of the set has elapsed.
+     */
+    private class DelayListener extends AnimatorListenerAdapter {
+        boolean canceled = false;
+
+        @Override
+        public void onAnimationCancel(Animator anim) {
+            canceled = true;
+        }
+
+        @Override
+        public void onAnimationEnd(Animator anim) {
+            if (!canceled) {
+                startRootNodes();
+            }
+        }
+    }
+
     private class AnimatorSetListener implements AnimatorListener {
 
         private AnimatorSet mAnimatorSet;
@@ -770,26 +797,31 @@ public final class AnimatorSet extends Animator {
     }
 
     /**
-     * This method sorts the current set of nodes, if needed. The sort is a simple
-     * DependencyGraph sort, which goes like this:
+     * This method sorts the current set of nodes, if needed, and readies them to be played.
+     * The sort is a simple DependencyGraph sort, which goes like this:
      * - All nodes without dependencies become 'roots'
      * - while roots list is not null
      * -   for each root r
      * -     add r to sorted list
      * -     remove r as a dependency from any other node
      * -   any nodes with no dependencies are added to the roots list
+     * The sorted order and the roots are kept until the dependencies change, so that a set
+     * which is replayed does not have to work them out again.
      */
     private void sortNodes() {
+        int numNodes = mNodes.size();
         if (mNeedsSort) {
             mSortedNodes.clear();
-            ArrayList<Node> roots = new ArrayList<Node>();
-            int numNodes = mNodes.size();
+            mRootNodes.clear();
             for (int i = 0; i < numNodes; ++i) {
                 Node node = mNodes.get(i);
+                node.numUnsortedDependencies =
+                        (node.nodeDependencies == null) ? 0 : node.nodeDependencies.size();
                 if (node.dependencies == null || node.dependencies.size() == 0) {
-                    roots.add(node);
+                    mRootNodes.add(node);
                 }
             }
+            ArrayList<Node> roots = new ArrayList<Node>(mRootNodes);
             ArrayList<Node> tmpRoots = new ArrayList<Node>();
             while (roots.size() > 0) {
                 int numRoots = roots.size();
@@ -800,8 +832,7 @@ public final class AnimatorSet extends Animator {
                         int numDependents = root.nodeDependents.size();
                         for (int j = 0; j < numDependents; ++j) {
                             Node node = root.nodeDependents.get(j);
-                            node.nodeDependencies.remove(root);
-                            if (node.nodeDependencies.size() == 0) {
+                            if (--node.numUnsortedDependencies == 0) {
                                 tmpRoots.add(node);
                             }
                         }
@@ -816,29 +847,11 @@ public final class AnimatorSet extends Animator {
                 throw new IllegalStateException("Circular dependencies cannot exist"
                         + " in AnimatorSet");
             }
-        } else {
-            // Doesn't need sorting, but still need to add in the nodeDependencies list
-            // because these get removed as the event listeners fire and the dependencies
-            // are satisfied
-            int numNodes = mNodes.size();
-            for (int i = 0; i < numNodes; ++i) {
-                Node node = mNodes.get(i);
-                if (node.dependencies != null && node.dependencies.size() > 0) {
-                    int numDependencies = node.dependencies.size();
-                    for (int j = 0; j < numDependencies; ++j) {
-                        Dependency dependency = node.dependencies.get(j);
-                        if (node.nodeDependencies == null) {
-                            node.nodeDependencies = new ArrayList<Node>();
-                        }
-                        if (!node.nodeDependencies.contains(dependency.node)) {
-                            node.nodeDependencies.add(dependency.node);
-                        }
-                    }
-                }
-                // nodes are 'done' by default; they become un-done when started, and done
-                // again when ended
-                node.done = false;
-            }
+        }
+        // nodes are 'done' by default; they become un-done when started, and done
+        // again when ended
+        for (int i = 0; i < numNodes; ++i) {
+            mNodes.get(i).done = false;
         }
     }
 
@@ -857,6 +870,9 @@ public final class AnimatorSet extends Animator {
         // The nature of the dependency (WITH or AFTER)
         public int rule;
 
+        // The listener which starts the dependent node, created when the set is first started
+        public DependencyListener listener;
+
         public Dependency(Node node, int rule) {
             this.node = node;
             this.rule = rule;
@@ -904,6 +920,9 @@ public final class AnimatorSet extends Animator {
          */
         public ArrayList<Node> nodeDependents = null;
 
+        // The number of nodeDependencies not yet placed while sorting the nodes
+        public int numUnsortedDependencies;
+
         /**
          * Flag indicating whether the animation in this node is finished. This flag
          * is used by AnimatorSet to check, as each animation ends, whether all child animations
@@ -940,7 +959,9 @@ public final class AnimatorSet extends Animator {
             if (dependencyNode.nodeDependents == null) {
                 dependencyNode.nodeDependents = new ArrayList<Node>();
             }
-            dependencyNode.nodeDependents.add(this);
+            if (!dependencyNode.nodeDependents.contains(this)) {
+                dependencyNode.nodeDependents.add(this);
+            }
         }
 
         @Override
@@ -1045,6 +1066,7 @@ public final class AnimatorSet extends Animator {
                 mNodeMap.put(anim, node);
                 mNodes.add(node);
             }
+            mNeedsSort = true;
             Dependency dependency = new Dependency(mCurrentNode, Dependency.WITH);
             node.addDependency(dependency);
             return this;
@@ -1065,6 +1087,7 @@ public final class AnimatorSet extends Animator {
                 mNodeMap.put(anim, node);
                 mNodes.add(node);
             }
+            mNeedsSort = true;
             Dependency dependency = new Dependency(mCurrentNode, Dependency.AFTER);
             node.addDependency(dependency);
             return this;
@@ -1085,6 +1108,7 @@ public final class AnimatorSet extends Animator {
                 mNodeMap.put(anim, node);
                 mNodes.add(node);
             }
+            mNeedsSort = true;
             Dependency dependency = new Dependency(node, Dependency.AFTER);
             mCurrentNode.addDependency(dependency);
             return this;
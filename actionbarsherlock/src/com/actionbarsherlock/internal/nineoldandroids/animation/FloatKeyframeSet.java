@@ -33,10 +33,8 @@ import com.actionbarsherlock.internal.nineoldandroids.animation.Keyframe.FloatKe
  */
 @SuppressWarnings("unchecked")
 class FloatKeyframeSet extends KeyframeSet {
-    private float firstValue;
-    private float lastValue;
-    private float deltaValue;
-    private boolean firstTime = true;
+    /** Values of the keyframes, captured along with their fractions by {@link #prepare()}. */
+    private float[] mValues;
 
     public FloatKeyframeSet(FloatKeyframe... keyframes) {
         super(keyframes);
@@ -59,77 +57,51 @@ class FloatKeyframeSet extends KeyframeSet {
         return newSet;
     }
 
+    @Override
+    void prepare() {
+        super.prepare();
+        final float[] values = new float[mNumKeyframes];
+        for (int i = 0; i < mNumKeyframes; ++i) {
+            values[i] = ((FloatKeyframe) mKeyframes.get(i)).getFloatValue();
+        }
+        mValues = values;
+    }
+
     public float getFloatValue(float fraction) {
+        if (mFractions == null) {
+            prepare();
+        }
+        final float[] values = mValues;
         if (mNumKeyframes == 2) {
-            if (firstTime) {
-                firstTime = false;
-                firstValue = ((FloatKeyframe) mKeyframes.get(0)).getFloatValue();
-                lastValue = ((FloatKeyframe) mKeyframes.get(1)).getFloatValue();
-                deltaValue = lastValue - firstValue;
-            }
+            final float firstValue = values[0];
+            final float lastValue = values[1];
             if (mInterpolator != null) {
                 fraction = mInterpolator.getInterpolation(fraction);
             }
             if (mEvaluator == null) {
-                return firstValue + fraction * deltaValue;
+                return firstValue + fraction * (lastValue - firstValue);
             } else {
                 return ((Number)mEvaluator.evaluate(fraction, firstValue, lastValue)).floatValue();
             }
         }
-        if (fraction <= 0f) {
-            final FloatKeyframe prevKeyframe = (FloatKeyframe) mKeyframes.get(0);
-            final FloatKeyframe nextKeyframe = (FloatKeyframe) mKeyframes.get(1);
-            float prevValue = prevKeyframe.getFloatValue();
-            float nextValue = nextKeyframe.getFloatValue();
-            float prevFraction = prevKeyframe.getFraction();
-            float nextFraction = nextKeyframe.getFraction();
-            final /*Time*/Interpolator interpolator = nextKeyframe.getInterpolator();
-            if (interpolator != null) {
-                fraction = interpolator.getInterpolation(fraction);
-            }
-            float intervalFraction = (fraction - prevFraction) / (nextFraction - prevFraction);
-            return mEvaluator == null ?
-                    prevValue + intervalFraction * (nextValue - prevValue) :
-                    ((Number)mEvaluator.evaluate(intervalFraction, prevValue, nextValue)).
-                            floatValue();
-        } else if (fraction >= 1f) {
-            final FloatKeyframe prevKeyframe = (FloatKeyframe) mKeyframes.get(mNumKeyframes - 2);
-            final FloatKeyframe nextKeyframe = (FloatKeyframe) mKeyframes.get(mNumKeyframes - 1);
-            float prevValue = prevKeyframe.getFloatValue();
-            float nextValue = nextKeyframe.getFloatValue();
-            float prevFraction = prevKeyframe.getFraction();
-            float nextFraction = nextKeyframe.getFraction();
-            final /*Time*/Interpolator interpolator = nextKeyframe.getInterpolator();
-            if (interpolator != null) {
-                fraction = interpolator.getInterpolation(fraction);
-            }
-            float intervalFraction = (fraction - prevFraction) / (nextFraction - prevFraction);
-            return mEvaluator == null ?
-                    prevValue + intervalFraction * (nextValue - prevValue) :
-                    ((Number)mEvaluator.evaluate(intervalFraction, prevValue, nextValue)).
-                            floatValue();
+        final int interval = findInterval(fraction);
+        if (interval == mNumKeyframes) {
+            // shouldn't get here
+            return values[mNumKeyframes - 1];
         }
-        FloatKeyframe prevKeyframe = (FloatKeyframe) mKeyframes.get(0);
-        for (int i = 1; i < mNumKeyframes; ++i) {
-            FloatKeyframe nextKeyframe = (FloatKeyframe) mKeyframes.get(i);
-            if (fraction < nextKeyframe.getFraction()) {
-                final /*Time*/Interpolator interpolator = nextKeyframe.getInterpolator();
-                if (interpolator != null) {
-                    fraction = interpolator.getInterpolation(fraction);
-                }
-                float intervalFraction = (fraction - prevKeyframe.getFraction()) /
-                    (nextKeyframe.getFraction() - prevKeyframe.getFraction());
-                float prevValue = prevKeyframe.getFloatValue();
-                float nextValue = nextKeyframe.getFloatValue();
-                return mEvaluator == null ?
-                        prevValue + intervalFraction * (nextValue - prevValue) :
-                        ((Number)mEvaluator.evaluate(intervalFraction, prevValue, nextValue)).
-                            floatValue();
-            }
-            prevKeyframe = nextKeyframe;
+        final /*Time*/Interpolator interpolator = mKeyframes.get(interval).getInterpolator();
+        if (interpolator != null) {
+            fraction = interpolator.getInterpolation(fraction);
         }
-        // shouldn't get here
-        return ((Number)mKeyframes.get(mNumKeyframes - 1).getValue()).floatValue();
+        final float prevFraction = mFractions[interval - 1];
+        float intervalFraction = (fraction - prevFraction) /
+            (mFractions[interval] - prevFraction);
+        final float prevValue = values[interval - 1];
+        final float nextValue = values[interval];
+        return mEvaluator == null ?
+                prevValue + intervalFraction * (nextValue - prevValue) :
+                ((Number)mEvaluator.evaluate(intervalFraction, prevValue, nextValue)).
+                        floatValue();
     }
 
 }
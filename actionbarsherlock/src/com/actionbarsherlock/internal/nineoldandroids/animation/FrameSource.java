@@ -0,0 +1,324 @@
+package com.actionbarsherlock.internal.nineoldandroids.animation;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.view.animation.AnimationUtils;
+
+/**
+ * Source of the timing pulse that drives all animations running on a thread.
+ * A frame source delivers frames to a single {@link Callback}, one at a time
+ * and only when asked to, along with the time at which the frame should be
+ * sampled.
+ *
+ * @see ValueAnimator#setFrameSource(FrameSource)
+ */
+public abstract class FrameSource {
+    /** Receives the frames of a {@link FrameSource}. */
+    public interface Callback {
+        /**
+         * Called once per requested frame.
+         *
+         * @param frameTime The time all animations should sample this frame at,
+         *            in the {@link AnimationUtils#currentAnimationTimeMillis()}
+         *            time base.
+         */
+        void doFrame(long frameTime);
+    }
+
+    /**
+     * The current animation time, used when an animation starts or is
+     * seeked outside of a frame.
+     */
+    public abstract long currentTimeMillis();
+
+    /**
+     * Requests a single frame.
+     *
+     * @param callback The callback to deliver the frame to.
+     * @param frameDelay The time until the frame is due, in milliseconds.
+     *            Sources synchronized to the display deliver the frame on the
+     *            next refresh instead.
+     */
+    public abstract void postFrame(Callback callback, long frameDelay);
+
+    /**
+     * Removes a frame request made with {@link #postFrame(Callback, long)}.
+     */
+    public abstract void removeFrame(Callback callback);
+
+    /**
+     * The interval this source aims for between frames that are requested
+     * back to back.
+     *
+     * @param frameDelay The {@link ValueAnimator#getFrameDelay() frame delay}
+     *            the frames are requested with.
+     */
+    public long getFrameIntervalMillis(long frameDelay) {
+        return frameDelay;
+    }
+
+    /**
+     * Creates the default frame source for the calling thread, which must have
+     * a looper. Frames follow the {@link ValueAnimator#getFrameDelay() frame
+     * delay} through a {@link Handler}, which does not allocate per frame.
+     */
+    static FrameSource create() {
+        return new HandlerFrameSource();
+    }
+
+    /**
+     * Creates a frame source for the calling thread, which must have a
+     * looper, that delivers frames on the vertical sync of the display. Unlike
+     * the default source it allocates a little for every frame.
+     *
+     * @return The frame source, or null if the platform does not synchronize
+     *         to the display.
+     * @see ValueAnimator#setFrameSource(FrameSource)
+     */
+    public static FrameSource createDisplaySynchronized() {
+        if (Build.VERSION.SDK_INT >= 16 /* JELLY_BEAN */) {
+            return ChoreographerFrameSource.create();
+        }
+        return null;
+    }
+
+    /** Posts frames to a {@link Handler} of the calling thread. */
+    static class HandlerFrameSource extends FrameSource implements Runnable {
+        private final Handler mHandler = new Handler();
+        private Callback mCallback;
+
+        @Override
+        public long currentTimeMillis() {
+            return AnimationUtils.currentAnimationTimeMillis();
+        }
+
+        @Override
+        public void postFrame(Callback callback, long frameDelay) {
+            if (mCallback != null) {
+                // Reschedule the pending frame.
+                mHandler.removeCallbacks(this);
+            }
+            mCallback = callback;
+            mHandler.postDelayed(this, Math.max(0, frameDelay));
+        }
+
+        @Override
+        public void removeFrame(Callback callback) {
+            if (mCallback == callback) {
+                mCallback = null;
+                mHandler.removeCallbacks(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            final Callback callback = mCallback;
+            mCallback = null;
+            if (callback != null) {
+                callback.doFrame(AnimationUtils.currentAnimationTimeMillis());
+            }
+        }
+    }
+
+    /**
+     * Delivers frames on the vertical sync of the display through
+     * {@code android.view.Choreographer}, which is looked up reflectively since
+     * it is not available on all supported platforms.
+     *
+     * <p>Since the library is built against a platform without the
+     * choreographer, its frame callback is a {@link Proxy}. Unlike the other
+     * sources, this one therefore allocates on every frame: the proxy boxes the
+     * frame time and wraps it in an argument array for each vsync. That is
+     * why it is only used when asked for. Posting and removing a frame go
+     * through {@link Method#invoke(Object, Object...)} with a preallocated
+     * argument array.</p>
+     */
+    static class ChoreographerFrameSource extends FrameSource implements InvocationHandler {
+        private static final long NANOS_PER_MS = 1000000;
+
+        /** The frame interval if the choreographer does not tell, one refresh at 60Hz. */
+        private static final long DEFAULT_FRAME_INTERVAL_MS = 16;
+
+        private final Object mChoreographer;
+        private final Method mPostFrameCallback;
+        private final Method mRemoveFrameCallback;
+        private final Field mFrameIntervalNanos;
+        private final Object mFrameCallback;
+        private final Object[] mFrameCallbackArgs;
+        private Callback mCallback;
+
+        private ChoreographerFrameSource(Class<?> choreographerClass, Class<?> callbackClass)
+                throws Exception {
+            mChoreographer = choreographerClass.getMethod("getInstance").invoke(null);
+            mPostFrameCallback = choreographerClass.getMethod("postFrameCallback", callbackClass);
+            mRemoveFrameCallback = choreographerClass.getMethod("removeFrameCallback", callbackClass);
+            mFrameCallback = Proxy.newProxyInstance(callbackClass.getClassLoader(),
+                    new Class<?>[] { callbackClass }, this);
+            mFrameCallbackArgs = new Object[] { mFrameCallback };
+            mFrameIntervalNanos = getFrameIntervalField(choreographerClass);
+        }
+
+        /**
+         * @return The field holding the refresh interval of the display the
+         *         choreographer follows, or null if it cannot be read.
+         */
+        private static Field getFrameIntervalField(Class<?> choreographerClass) {
+            try {
+                final Field field = choreographerClass.getDeclaredField("mFrameIntervalNanos");
+                if (field.getType() != long.class) {
+                    return null;
+                }
+                field.setAccessible(true);
+                return field;
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        /**
+         * @return The frame source, or null if the choreographer could not be
+         *         found.
+         */
+        static ChoreographerFrameSource create() {
+            try {
+                return new ChoreographerFrameSource(Class.forName("android.view.Choreographer"),
+                        Class.forName("android.view.Choreographer$FrameCallback"));
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return AnimationUtils.currentAnimationTimeMillis();
+        }
+
+        @Override
+        public long getFrameIntervalMillis(long frameDelay) {
+            if (mFrameIntervalNanos != null) {
+                try {
+                    // Read without boxing, this is called on every frame.
+                    final long nanos = mFrameIntervalNanos.getLong(mChoreographer);
+                    if (nanos > 0) {
+                        return (nanos + NANOS_PER_MS / 2) / NANOS_PER_MS;
+                    }
+                } catch (IllegalAccessException e) {
+                    // Fall through to the default.
+                }
+            }
+            return DEFAULT_FRAME_INTERVAL_MS;
+        }
+
+        @Override
+        public void postFrame(Callback callback, long frameDelay) {
+            if (mCallback != null) {
+                // Already waiting for the next frame.
+                mCallback = callback;
+                return;
+            }
+            mCallback = callback;
+            invoke(mPostFrameCallback);
+        }
+
+        @Override
+        public void removeFrame(Callback callback) {
+            if (mCallback == callback) {
+                mCallback = null;
+                invoke(mRemoveFrameCallback);
+            }
+        }
+
+        private void invoke(Method method) {
+            try {
+                method.invoke(mChoreographer, mFrameCallbackArgs);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (!"doFrame".equals(method.getName())) {
+                // hashCode, equals and toString of the proxy.
+                if ("equals".equals(method.getName())) {
+                    return proxy == args[0];
+                }
+                if ("hashCode".equals(method.getName())) {
+                    return System.identityHashCode(proxy);
+                }
+                return method.getDeclaringClass().getName() + "@" + System.identityHashCode(proxy);
+            }
+            final Callback callback = mCallback;
+            mCallback = null;
+            if (callback != null) {
+                callback.doFrame(((Long) args[0]).longValue() / NANOS_PER_MS);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A frame source driven by hand, for tests. Frames are only delivered by
+     * {@link #advance(long)} and time stands still in between.
+     */
+    public static class ManualFrameSource extends FrameSource {
+        private long mTime;
+        private long mFrameDue = -1;
+        private Callback mCallback;
+
+        public ManualFrameSource() {
+            this(SystemClock.uptimeMillis());
+        }
+
+        public ManualFrameSource(long startTime) {
+            mTime = startTime;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return mTime;
+        }
+
+        @Override
+        public void postFrame(Callback callback, long frameDelay) {
+            mCallback = callback;
+            mFrameDue = mTime + Math.max(0, frameDelay);
+        }
+
+        @Override
+        public void removeFrame(Callback callback) {
+            if (mCallback == callback) {
+                mCallback = null;
+            }
+        }
+
+        /** Whether a frame has been requested and not yet delivered. */
+        public boolean isFramePending() {
+            return mCallback != null;
+        }
+
+        /**
+         * Moves the clock forward and delivers a pending frame if it is due by
+         * then.
+         *
+         * @param millis The amount of time to advance by.
+         * @return Whether a frame was delivered.
+         */
+        public boolean advance(long millis) {
+            mTime += millis;
+            final Callback callback = mCallback;
+            if (callback == null || mFrameDue > mTime) {
+                return false;
+            }
+            mCallback = null;
+            callback.doFrame(mTime);
+            return true;
+        }
+    }
+}
@@ -33,10 +33,8 @@ import com.actionbarsherlock.internal.nineoldandroids.animation.Keyframe.IntKeyf
  */
 @SuppressWarnings("unchecked")
 class IntKeyframeSet extends KeyframeSet {
-    private int firstValue;
-    private int lastValue;
-    private int deltaValue;
-    private boolean firstTime = true;
+    /** Values of the keyframes, captured along with their fractions by {@link #prepare()}. */
+    private int[] mValues;
 
     public IntKeyframeSet(IntKeyframe... keyframes) {
         super(keyframes);
@@ -59,76 +57,51 @@ class IntKeyframeSet extends KeyframeSet {
         return newSet;
     }
 
+    @Override
+    void prepare() {
+        super.prepare();
+        final int[] values = new int[mNumKeyframes];
+        for (int i = 0; i < mNumKeyframes; ++i) {
+            values[i] = ((IntKeyframe) mKeyframes.get(i)).getIntValue();
+        }
+        mValues = values;
+    }
+
     public int getIntValue(float fraction) {
+        if (mFractions == null) {
+            prepare();
+        }
+        final int[] values = mValues;
         if (mNumKeyframes == 2) {
-            if (firstTime) {
-                firstTime = false;
-                firstValue = ((IntKeyframe) mKeyframes.get(0)).getIntValue();
-                lastValue = ((IntKeyframe) mKeyframes.get(1)).getIntValue();
-                deltaValue = lastValue - firstValue;
-            }
+            final int firstValue = values[0];
+            final int lastValue = values[1];
             if (mInterpolator != null) {
                 fraction = mInterpolator.getInterpolation(fraction);
             }
             if (mEvaluator == null) {
-                return firstValue + (int)(fraction * deltaValue);
+                return firstValue + (int)(fraction * (lastValue - firstValue));
             } else {
                 return ((Number)mEvaluator.evaluate(fraction, firstValue, lastValue)).intValue();
             }
         }
-        if (fraction <= 0f) {
-            final IntKeyframe prevKeyframe = (IntKeyframe) mKeyframes.get(0);
-            final IntKeyframe nextKeyframe = (IntKeyframe) mKeyframes.get(1);
-            int prevValue = prevKeyframe.getIntValue();
-            int nextValue = nextKeyframe.getIntValue();
-            float prevFraction = prevKeyframe.getFraction();
-            float nextFraction = nextKeyframe.getFraction();
-            final /*Time*/Interpolator interpolator = nextKeyframe.getInterpolator();
-            if (interpolator != null) {
-                fraction = interpolator.getInterpolation(fraction);
-            }
-            float intervalFraction = (fraction - prevFraction) / (nextFraction - prevFraction);
-            return mEvaluator == null ?
-                    prevValue + (int)(intervalFraction * (nextValue - prevValue)) :
-                    ((Number)mEvaluator.evaluate(intervalFraction, prevValue, nextValue)).
-                            intValue();
-        } else if (fraction >= 1f) {
-            final IntKeyframe prevKeyframe = (IntKeyframe) mKeyframes.get(mNumKeyframes - 2);
-            final IntKeyframe nextKeyframe = (IntKeyframe) mKeyframes.get(mNumKeyframes - 1);
-            int prevValue = prevKeyframe.getIntValue();
-            int nextValue = nextKeyframe.getIntValue();
-            float prevFraction = prevKeyframe.getFraction();
-            float nextFraction = nextKeyframe.getFraction();
-            final /*Time*/Interpolator interpolator = nextKeyframe.getInterpolator();
-            if (interpolator != null) {
-                fraction = interpolator.getInterpolation(fraction);
-            }
-            float intervalFraction = (fraction - prevFraction) / (nextFraction - prevFraction);
-            return mEvaluator == null ?
-                    prevValue + (int)(intervalFraction * (nextValue - prevValue)) :
-                    ((Number)mEvaluator.evaluate(intervalFraction, prevValue, nextValue)).intValue();
+        final int interval = findInterval(fraction);
+        if (interval == mNumKeyframes) {
+            // shouldn't get here
+            return values[mNumKeyframes - 1];
         }
-        IntKeyframe prevKeyframe = (IntKeyframe) mKeyframes.get(0);
-        for (int i = 1; i < mNumKeyframes; ++i) {
-            IntKeyframe nextKeyframe = (IntKeyframe) mKeyframes.get(i);
-            if (fraction < nextKeyframe.getFraction()) {
-                final /*Time*/Interpolator interpolator = nextKeyframe.getInterpolator();
-                if (interpolator != null) {
-                    fraction = interpolator.getInterpolation(fraction);
-                }
-                float intervalFraction = (fraction - prevKeyframe.getFraction()) /
-                    (nextKeyframe.getFraction() - prevKeyframe.getFraction());
-                int prevValue = prevKeyframe.getIntValue();
-                int nextValue = nextKeyframe.getIntValue();
-                return mEvaluator == null ?
-                        prevValue + (int)(intervalFraction * (nextValue - prevValue)) :
-                        ((Number)mEvaluator.evaluate(intervalFraction, prevValue, nextValue)).
-                                intValue();
-            }
-            prevKeyframe = nextKeyframe;
+        final /*Time*/Interpolator interpolator = mKeyframes.get(interval).getInterpolator();
+        if (interpolator != null) {
+            fraction = interpolator.getInterpolation(fraction);
         }
-        // shouldn't get here
-        return ((Number)mKeyframes.get(mNumKeyframes - 1).getValue()).intValue();
+        final float prevFraction = mFractions[interval - 1];
+        float intervalFraction = (fraction - prevFraction) /
+            (mFractions[interval] - prevFraction);
+        final int prevValue = values[interval - 1];
+        final int nextValue = values[interval];
+        return mEvaluator == null ?
+                prevValue + (int)(intervalFraction * (nextValue - prevValue)) :
+                ((Number)mEvaluator.evaluate(intervalFraction, prevValue, nextValue)).
+                        intValue();
     }
 
 }
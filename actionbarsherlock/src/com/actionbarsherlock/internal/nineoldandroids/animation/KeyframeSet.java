@@ -40,6 +40,14 @@ class KeyframeSet {
     ArrayList<Keyframe> mKeyframes; // only used when there are not 2 keyframes
     TypeEvaluator mEvaluator;
 
+    /**
+     * Fractions of the keyframes, captured by {@link #prepare()} so that intervals can be looked
+     * up without walking the keyframes each frame. Null until prepared or after
+     * {@link #invalidate()}.
+     */
+    float[] mFractions;
+    /** Index of the keyframe ending the interval found by the last {@link #findInterval(float)}. */
+    private int mInterval = 1;
 
     public KeyframeSet(Keyframe... keyframes) {
         mNumKeyframes = keyframes.length;
@@ -139,6 +147,66 @@ class KeyframeSet {
         mEvaluator = evaluator;
     }
 
+    /**
+     * Discards the data captured by {@link #prepare()}. This must be called whenever the values
+     * or fractions of the keyframes may have changed.
+     */
+    void invalidate() {
+        mFractions = null;
+    }
+
+    /**
+     * Captures the keyframe data needed to calculate animated values. Subclasses capture their
+     * values here as well.
+     */
+    void prepare() {
+        final float[] fractions = new float[mNumKeyframes];
+        for (int i = 0; i < mNumKeyframes; ++i) {
+            fractions[i] = mKeyframes.get(i).getFraction();
+        }
+        mFractions = fractions;
+    }
+
+    /**
+     * Maps the given fraction to the keyframe interval containing it. Animations mostly move
+     * forward a little each frame, so the interval of the previous call is tried before
+     * searching. As in {@link #getValue(float)}, fractions outside of [0-1] map to the interval
+     * at the appropriate end.
+     *
+     * @param fraction The elapsed fraction of the animation
+     * @return The index of the keyframe ending the interval, or the number of keyframes if the
+     * fraction lies past the last keyframe.
+     */
+    int findInterval(float fraction) {
+        if (mFractions == null) {
+            prepare();
+        }
+        if (fraction <= 0f) {
+            return 1;
+        } else if (fraction >= 1f) {
+            return mNumKeyframes - 1;
+        }
+        final float[] fractions = mFractions;
+        int interval = mInterval;
+        if (interval < mNumKeyframes && fraction < fractions[interval]
+                && fraction >= fractions[interval - 1]) {
+            return interval;
+        }
+        // First keyframe whose fraction is past the given one
+        int low = 1;
+        int high = mNumKeyframes;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (fraction < fractions[mid]) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        mInterval = low;
+        return low;
+    }
+
     @Override
     public KeyframeSet clone() {
         ArrayList<Keyframe> keyframes = mKeyframes;
@@ -173,47 +241,22 @@ class KeyframeSet {
             return mEvaluator.evaluate(fraction, mFirstKeyframe.getValue(),
                     mLastKeyframe.getValue());
         }
-        if (fraction <= 0f) {
-            final Keyframe nextKeyframe = mKeyframes.get(1);
-            final /*Time*/Interpolator interpolator = nextKeyframe.getInterpolator();
-            if (interpolator != null) {
-                fraction = interpolator.getInterpolation(fraction);
-            }
-            final float prevFraction = mFirstKeyframe.getFraction();
-            float intervalFraction = (fraction - prevFraction) /
-                (nextKeyframe.getFraction() - prevFraction);
-            return mEvaluator.evaluate(intervalFraction, mFirstKeyframe.getValue(),
-                    nextKeyframe.getValue());
-        } else if (fraction >= 1f) {
-            final Keyframe prevKeyframe = mKeyframes.get(mNumKeyframes - 2);
-            final /*Time*/Interpolator interpolator = mLastKeyframe.getInterpolator();
-            if (interpolator != null) {
-                fraction = interpolator.getInterpolation(fraction);
-            }
-            final float prevFraction = prevKeyframe.getFraction();
-            float intervalFraction = (fraction - prevFraction) /
-                (mLastKeyframe.getFraction() - prevFraction);
-            return mEvaluator.evaluate(intervalFraction, prevKeyframe.getValue(),
-                    mLastKeyframe.getValue());
+        final int interval = findInterval(fraction);
+        if (interval == mNumKeyframes) {
+            // shouldn't reach here
+            return mLastKeyframe.getValue();
         }
-        Keyframe prevKeyframe = mFirstKeyframe;
-        for (int i = 1; i < mNumKeyframes; ++i) {
-            Keyframe nextKeyframe = mKeyframes.get(i);
-            if (fraction < nextKeyframe.getFraction()) {
-                final /*Time*/Interpolator interpolator = nextKeyframe.getInterpolator();
-                if (interpolator != null) {
-                    fraction = interpolator.getInterpolation(fraction);
-                }
-                final float prevFraction = prevKeyframe.getFraction();
-                float intervalFraction = (fraction - prevFraction) /
-                    (nextKeyframe.getFraction() - prevFraction);
-                return mEvaluator.evaluate(intervalFraction, prevKeyframe.getValue(),
-                        nextKeyframe.getValue());
-            }
-            prevKeyframe = nextKeyframe;
+        final Keyframe prevKeyframe = mKeyframes.get(interval - 1);
+        final Keyframe nextKeyframe = mKeyframes.get(interval);
+        final /*Time*/Interpolator interpolator = nextKeyframe.getInterpolator();
+        if (interpolator != null) {
+            fraction = interpolator.getInterpolation(fraction);
         }
-        // shouldn't reach here
-        return mLastKeyframe.getValue();
+        final float prevFraction = mFractions[interval - 1];
+        float intervalFraction = (fraction - prevFraction) /
+            (mFractions[interval] - prevFraction);
+        return mEvaluator.evaluate(intervalFraction, prevKeyframe.getValue(),
+                nextKeyframe.getValue());
     }
 
     @Override
@@ -17,11 +17,11 @@
 package com.actionbarsherlock.internal.nineoldandroids.animation;
 
 import android.util.Log;
-//import android.util.Property;
 
-//import java.lang.reflect.Method;
 import java.util.ArrayList;
 
+import com.actionbarsherlock.internal.nineoldandroids.util.Property;
+
 /**
  * This subclass of {@link ValueAnimator} provides support for animating properties on target objects.
  * The constructors of this class take parameters to define the target object that will be animated
@@ -41,7 +41,7 @@ public final class ObjectAnimator extends ValueAnimator {
 
     private String mPropertyName;
 
-    //private Property mProperty;
+    private Property<?, ?> mProperty;
 
     /**
      * Sets the name of the property that will be animated. This name is used to derive
@@ -56,7 +56,9 @@ public final class ObjectAnimator extends ValueAnimator {
      * and make the setter function for those properties have a <code>void</code> return value. This
      * will cause the code to take an optimized path for these constrained circumstances. Other
      * property types and return types will work, but will have more overhead in processing
-     * the requests due to normal reflection mechanisms.</p>
+     * the requests due to normal reflection mechanisms. The <code>alpha</code>,
+     * <code>translationX</code>, <code>translationY</code>, <code>scaleX</code> and
+     * <code>scaleY</code> properties of views are set without reflection at all.</p>
      *
      * <p>Note that the setter function derived from this property name
      * must take the same parameter type as the
@@ -79,6 +81,9 @@ public final class ObjectAnimator extends ValueAnimator {
             mValuesMap.remove(oldName);
             mValuesMap.put(propertyName, valuesHolder);
         }
+        if (mProperty != null && !mProperty.getName().equals(propertyName)) {
+            mProperty = null;
+        }
         mPropertyName = propertyName;
         // New property/values/target should cause re-initialization prior to starting
         mInitialized = false;
@@ -91,23 +96,22 @@ public final class ObjectAnimator extends ValueAnimator {
      *
      * @param property The property being animated. Should not be null.
      */
-    //public void setProperty(Property property) {
-    //    // mValues could be null if this is being constructed piecemeal. Just record the
-    //    // propertyName to be used later when setValues() is called if so.
-    //    if (mValues != null) {
-    //        PropertyValuesHolder valuesHolder = mValues[0];
-    //        String oldName = valuesHolder.getPropertyName();
-    //        valuesHolder.setProperty(property);
-    //        mValuesMap.remove(oldName);
-    //        mValuesMap.put(mPropertyName, valuesHolder);
-    //    }
-    //    if (mProperty != null) {
-    //        mPropertyName = property.getName();
-    //    }
-    //    mProperty = property;
-    //    // New property/values/target should cause re-initialization prior to starting
-    //    mInitialized = false;
-    //}
+    public void setProperty(Property property) {
+        // mValues could be null if this is being constructed piecemeal. Just record the
+        // propertyName to be used later when setValues() is called if so.
+        if (mValues != null) {
+            PropertyValuesHolder valuesHolder = mValues[0];
+            String oldName = valuesHolder.getPropertyName();
+            valuesHolder.setPropertyName(property.getName());
+            valuesHolder.setProperty(property);
+            mValuesMap.remove(oldName);
+            mValuesMap.put(property.getName(), valuesHolder);
+        }
+        mPropertyName = property.getName();
+        mProperty = property;
+        // New property/values/target should cause re-initialization prior to starting
+        mInitialized = false;
+    }
 
     /**
      * Gets the name of the property that will be animated. This name will be used to derive
@@ -149,10 +153,10 @@ public final class ObjectAnimator extends ValueAnimator {
      * @param target The object whose property is to be animated.
      * @param property The property being animated.
      */
-    //private <T> ObjectAnimator(T target, Property<T, ?> property) {
-    //    mTarget = target;
-    //    setProperty(property);
-    //}
+    private <T> ObjectAnimator(T target, Property<T, ?> property) {
+        mTarget = target;
+        setProperty(property);
+    }
 
     /**
      * Constructs and returns an ObjectAnimator that animates between int values. A single
@@ -186,11 +190,11 @@ public final class ObjectAnimator extends ValueAnimator {
      * @param values A set of values that the animation will animate between over time.
      * @return An ObjectAnimator object that is set up to animate between the given values.
      */
-    //public static <T> ObjectAnimator ofInt(T target, Property<T, Integer> property, int... values) {
-    //    ObjectAnimator anim = new ObjectAnimator(target, property);
-    //    anim.setIntValues(values);
-    //    return anim;
-    //}
+    public static <T> ObjectAnimator ofInt(T target, Property<T, Integer> property, int... values) {
+        ObjectAnimator anim = new ObjectAnimator(target, property);
+        anim.setIntValues(values);
+        return anim;
+    }
 
     /**
      * Constructs and returns an ObjectAnimator that animates between float values. A single
@@ -224,12 +228,12 @@ public final class ObjectAnimator extends ValueAnimator {
      * @param values A set of values that the animation will animate between over time.
      * @return An ObjectAnimator object that is set up to animate between the given values.
      */
-    //public static <T> ObjectAnimator ofFloat(T target, Property<T, Float> property,
-    //        float... values) {
-    //    ObjectAnimator anim = new ObjectAnimator(target, property);
-    //    anim.setFloatValues(values);
-    //    return anim;
-    //}
+    public static <T> ObjectAnimator ofFloat(T target, Property<T, Float> property,
+            float... values) {
+        ObjectAnimator anim = new ObjectAnimator(target, property);
+        anim.setFloatValues(values);
+        return anim;
+    }
 
     /**
      * Constructs and returns an ObjectAnimator that animates between Object values. A single
@@ -271,13 +275,14 @@ public final class ObjectAnimator extends ValueAnimator {
      * @param values A set of values that the animation will animate between over time.
      * @return An ObjectAnimator object that is set up to animate between the given values.
      */
-    //public static <T, V> ObjectAnimator ofObject(T target, Property<T, V> property,
-    //        TypeEvaluator<V> evaluator, V... values) {
-    //    ObjectAnimator anim = new ObjectAnimator(target, property);
-    //    anim.setObjectValues(values);
-    //    anim.setEvaluator(evaluator);
-    //    return anim;
-    //}
+    @SuppressWarnings("unchecked")
+    public static <T, V> ObjectAnimator ofObject(T target, Property<T, V> property,
+            TypeEvaluator<V> evaluator, V... values) {
+        ObjectAnimator anim = new ObjectAnimator(target, property);
+        anim.setObjectValues(values);
+        anim.setEvaluator(evaluator);
+        return anim;
+    }
 
     /**
      * Constructs and returns an ObjectAnimator that animates between the sets of values specified
@@ -309,11 +314,13 @@ public final class ObjectAnimator extends ValueAnimator {
         if (mValues == null || mValues.length == 0) {
             // No values yet - this animator is being constructed piecemeal. Init the values with
             // whatever the current propertyName is
-            //if (mProperty != null) {
-            //    setValues(PropertyValuesHolder.ofInt(mProperty, values));
-            //} else {
+            if (mProperty != null) {
+                @SuppressWarnings("unchecked")
+                Property<?, Integer> property = (Property<?, Integer>) mProperty;
+                setValues(PropertyValuesHolder.ofInt(property, values));
+            } else {
                 setValues(PropertyValuesHolder.ofInt(mPropertyName, values));
-            //}
+            }
         } else {
             super.setIntValues(values);
         }
@@ -324,11 +331,13 @@ public final class ObjectAnimator extends ValueAnimator {
         if (mValues == null || mValues.length == 0) {
             // No values yet - this animator is being constructed piecemeal. Init the values with
             // whatever the current propertyName is
-            //if (mProperty != null) {
-            //    setValues(PropertyValuesHolder.ofFloat(mProperty, values));
-            //} else {
+            if (mProperty != null) {
+                @SuppressWarnings("unchecked")
+                Property<?, Float> property = (Property<?, Float>) mProperty;
+                setValues(PropertyValuesHolder.ofFloat(property, values));
+            } else {
                 setValues(PropertyValuesHolder.ofFloat(mPropertyName, values));
-            //}
+            }
         } else {
             super.setFloatValues(values);
         }
@@ -339,11 +348,11 @@ public final class ObjectAnimator extends ValueAnimator {
         if (mValues == null || mValues.length == 0) {
             // No values yet - this animator is being constructed piecemeal. Init the values with
             // whatever the current propertyName is
-            //if (mProperty != null) {
-            //    setValues(PropertyValuesHolder.ofObject(mProperty, (TypeEvaluator)null, values));
-            //} else {
+            if (mProperty != null) {
+                setValues(PropertyValuesHolder.ofObject(mProperty, (TypeEvaluator<Object>)null, values));
+            } else {
                 setValues(PropertyValuesHolder.ofObject(mPropertyName, (TypeEvaluator)null, values));
-            //}
+            }
         } else {
             super.setObjectValues(values);
         }
@@ -465,10 +474,15 @@ public final class ObjectAnimator extends ValueAnimator {
     @Override
     void animateValue(float fraction) {
         super.animateValue(fraction);
+        final AnimationStats stats = mStats;
+        final long start = (stats != null) ? System.nanoTime() : 0;
         int numValues = mValues.length;
         for (int i = 0; i < numValues; ++i) {
             mValues[i].setAnimatedValue(mTarget);
         }
+        if (stats != null) {
+            stats.mSetterNanos += System.nanoTime() - start;
+        }
     }
 
     @Override
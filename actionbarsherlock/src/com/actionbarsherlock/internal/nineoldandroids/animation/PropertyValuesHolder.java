@@ -16,15 +16,17 @@
 
 package com.actionbarsherlock.internal.nineoldandroids.animation;
 
-//import android.util.FloatProperty;
-//import android.util.IntProperty;
 import android.util.Log;
-//import android.util.Property;
+import android.view.View;
+
+import com.actionbarsherlock.internal.nineoldandroids.util.FloatProperty;
+import com.actionbarsherlock.internal.nineoldandroids.util.IntProperty;
+import com.actionbarsherlock.internal.nineoldandroids.util.Property;
+import com.actionbarsherlock.internal.nineoldandroids.view.ViewProperties;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.HashMap;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class holds information about a property and the values that that property
@@ -45,7 +47,7 @@ public class PropertyValuesHolder implements Cloneable {
     /**
      * @hide
      */
-    //protected Property mProperty;
+    protected Property mProperty;
 
     /**
      * The setter function, if needed. ObjectAnimator hands off this functionality to
@@ -94,21 +96,26 @@ public class PropertyValuesHolder implements Cloneable {
     private static Class[] DOUBLE_VARIANTS = {double.class, Double.class, float.class, int.class,
             Float.class, Integer.class};
 
-    // These maps hold all property entries for a particular class. This map
-    // is used to speed up property/setter/getter lookups for a given class/property
-    // combination. No need to use reflection on the combination more than once.
-    private static final HashMap<Class, HashMap<String, Method>> sSetterPropertyMap =
-            new HashMap<Class, HashMap<String, Method>>();
-    private static final HashMap<Class, HashMap<String, Method>> sGetterPropertyMap =
-            new HashMap<Class, HashMap<String, Method>>();
-
-    // This lock is used to ensure that only one thread is accessing the property maps
-    // at a time.
-    final ReentrantReadWriteLock mPropertyMapLock = new ReentrantReadWriteLock();
+    // These maps hold the setters and getters found so far, including the ones that don't
+    // exist, by class, property and value type. They are used to speed up setter/getter
+    // lookups. No need to use reflection on the combination more than once.
+    private static final ConcurrentHashMap<MethodKey, MethodEntry> sSetterMethods =
+            new ConcurrentHashMap<MethodKey, MethodEntry>();
+    private static final ConcurrentHashMap<MethodKey, MethodEntry> sGetterMethods =
+            new ConcurrentHashMap<MethodKey, MethodEntry>();
 
     // Used to pass single value to varargs parameter in setter invocation
     final Object[] mTmpValueArray = new Object[1];
 
+    /**
+     * Drops all setters and getters found so far, so that they are looked up
+     * again. Used by tests.
+     */
+    static void clearMethodCaches() {
+        sSetterMethods.clear();
+        sGetterMethods.clear();
+    }
+
     /**
      * The type evaluator used to calculate the animated values. This evaluator is determined
      * automatically based on the type of the start/end objects passed into the constructor,
@@ -136,12 +143,12 @@ public class PropertyValuesHolder implements Cloneable {
      * Internal utility constructor, used by the factory methods to set the property.
      * @param property The property for this holder.
      */
-    //private PropertyValuesHolder(Property property) {
-    //    mProperty = property;
-    //    if (property != null) {
-    //        mPropertyName = property.getName();
-    //    }
-    //}
+    private PropertyValuesHolder(Property property) {
+        mProperty = property;
+        if (property != null) {
+            mPropertyName = property.getName();
+        }
+    }
 
     /**
      * Constructs and returns a PropertyValuesHolder with a given property name and
@@ -161,9 +168,9 @@ public class PropertyValuesHolder implements Cloneable {
      * @param values The values that the property will animate between.
      * @return PropertyValuesHolder The constructed PropertyValuesHolder object.
      */
-    //public static PropertyValuesHolder ofInt(Property<?, Integer> property, int... values) {
-    //    return new IntPropertyValuesHolder(property, values);
-    //}
+    public static PropertyValuesHolder ofInt(Property<?, Integer> property, int... values) {
+        return new IntPropertyValuesHolder(property, values);
+    }
 
     /**
      * Constructs and returns a PropertyValuesHolder with a given property name and
@@ -183,9 +190,9 @@ public class PropertyValuesHolder implements Cloneable {
      * @param values The values that the property will animate between.
      * @return PropertyValuesHolder The constructed PropertyValuesHolder object.
      */
-    //public static PropertyValuesHolder ofFloat(Property<?, Float> property, float... values) {
-    //    return new FloatPropertyValuesHolder(property, values);
-    //}
+    public static PropertyValuesHolder ofFloat(Property<?, Float> property, float... values) {
+        return new FloatPropertyValuesHolder(property, values);
+    }
 
     /**
      * Constructs and returns a PropertyValuesHolder with a given property name and
@@ -219,13 +226,13 @@ public class PropertyValuesHolder implements Cloneable {
      * @param values The values that the property will animate between.
      * @return PropertyValuesHolder The constructed PropertyValuesHolder object.
      */
-    //public static <V> PropertyValuesHolder ofObject(Property property,
-    //        TypeEvaluator<V> evaluator, V... values) {
-    //    PropertyValuesHolder pvh = new PropertyValuesHolder(property);
-    //    pvh.setObjectValues(values);
-    //    pvh.setEvaluator(evaluator);
-    //    return pvh;
-    //}
+    public static <V> PropertyValuesHolder ofObject(Property property,
+            TypeEvaluator<V> evaluator, V... values) {
+        PropertyValuesHolder pvh = new PropertyValuesHolder(property);
+        pvh.setObjectValues(values);
+        pvh.setEvaluator(evaluator);
+        return pvh;
+    }
 
     /**
      * Constructs and returns a PropertyValuesHolder object with the specified property name and set
@@ -277,20 +284,20 @@ public class PropertyValuesHolder implements Cloneable {
      * @param property The property associated with this set of values. Should not be null.
      * @param values The set of values to animate between.
      */
-    //public static PropertyValuesHolder ofKeyframe(Property property, Keyframe... values) {
-    //    KeyframeSet keyframeSet = KeyframeSet.ofKeyframe(values);
-    //    if (keyframeSet instanceof IntKeyframeSet) {
-    //        return new IntPropertyValuesHolder(property, (IntKeyframeSet) keyframeSet);
-    //    } else if (keyframeSet instanceof FloatKeyframeSet) {
-    //        return new FloatPropertyValuesHolder(property, (FloatKeyframeSet) keyframeSet);
-    //    }
-    //    else {
-    //        PropertyValuesHolder pvh = new PropertyValuesHolder(property);
-    //        pvh.mKeyframeSet = keyframeSet;
-    //        pvh.mValueType = ((Keyframe)values[0]).getType();
-    //        return pvh;
-    //    }
-    //}
+    public static PropertyValuesHolder ofKeyframe(Property property, Keyframe... values) {
+        KeyframeSet keyframeSet = KeyframeSet.ofKeyframe(values);
+        if (keyframeSet instanceof IntKeyframeSet) {
+            return new IntPropertyValuesHolder(property, (IntKeyframeSet) keyframeSet);
+        } else if (keyframeSet instanceof FloatKeyframeSet) {
+            return new FloatPropertyValuesHolder(property, (FloatKeyframeSet) keyframeSet);
+        }
+        else {
+            PropertyValuesHolder pvh = new PropertyValuesHolder(property);
+            pvh.mKeyframeSet = keyframeSet;
+            pvh.mValueType = values[0].getType();
+            return pvh;
+        }
+    }
 
     /**
      * Set the animated values for this object to this set of ints.
@@ -425,39 +432,33 @@ public class PropertyValuesHolder implements Cloneable {
 
     /**
      * Returns the setter or getter requested. This utility function checks whether the
-     * requested method exists in the propertyMapMap cache. If not, it calls another
+     * requested method has been looked up before. If not, it calls another
      * utility function to request the Method from the targetClass directly.
      * @param targetClass The Class on which the requested method should exist.
-     * @param propertyMapMap The cache of setters/getters derived so far.
+     * @param methods The cache of setters/getters derived so far.
      * @param prefix "set" or "get", for the setter or getter.
      * @param valueType The type of parameter passed into the method (null for getter).
-     * @return Method the method associated with mPropertyName.
+     * @return Method the method associated with mPropertyName, or null if there is none.
      */
     private Method setupSetterOrGetter(Class targetClass,
-            HashMap<Class, HashMap<String, Method>> propertyMapMap,
+            ConcurrentHashMap<MethodKey, MethodEntry> methods,
             String prefix, Class valueType) {
-        Method setterOrGetter = null;
-        try {
-            // Have to lock property map prior to reading it, to guard against
-            // another thread putting something in there after we've checked it
-            // but before we've added an entry to it
-            mPropertyMapLock.writeLock().lock();
-            HashMap<String, Method> propertyMap = propertyMapMap.get(targetClass);
-            if (propertyMap != null) {
-                setterOrGetter = propertyMap.get(mPropertyName);
-            }
-            if (setterOrGetter == null) {
-                setterOrGetter = getPropertyFunction(targetClass, prefix, valueType);
-                if (propertyMap == null) {
-                    propertyMap = new HashMap<String, Method>();
-                    propertyMapMap.put(targetClass, propertyMap);
-                }
-                propertyMap.put(mPropertyName, setterOrGetter);
+        final MethodKey key = new MethodKey(targetClass, mPropertyName, valueType);
+        MethodEntry entry = methods.get(key);
+        if (entry == null) {
+            // Two threads may both look the method up, they find the same one.
+            final Method setterOrGetter = getPropertyFunction(targetClass, prefix, valueType);
+            entry = new MethodEntry(setterOrGetter, mValueType);
+            final MethodEntry existing = methods.putIfAbsent(key, entry);
+            if (existing != null) {
+                entry = existing;
             }
-        } finally {
-            mPropertyMapLock.writeLock().unlock();
         }
-        return setterOrGetter;
+        if (valueType != null) {
+            // The setter may take a variant of the requested type.
+            mValueType = entry.valueType;
+        }
+        return entry.method;
     }
 
     /**
@@ -465,14 +466,14 @@ public class PropertyValuesHolder implements Cloneable {
      * @param targetClass The Class on which the requested method should exist.
      */
     void setupSetter(Class targetClass) {
-        mSetter = setupSetterOrGetter(targetClass, sSetterPropertyMap, "set", mValueType);
+        mSetter = setupSetterOrGetter(targetClass, sSetterMethods, "set", mValueType);
     }
 
     /**
      * Utility function to get the getter from targetClass
      */
     private void setupGetter(Class targetClass) {
-        mGetter = setupSetterOrGetter(targetClass, sGetterPropertyMap, "get", null);
+        mGetter = setupSetterOrGetter(targetClass, sGetterMethods, "get", null);
     }
 
     /**
@@ -486,22 +487,22 @@ public class PropertyValuesHolder implements Cloneable {
      * @param target The object on which the setter (and possibly getter) exist.
      */
     void setupSetterAndGetter(Object target) {
-        //if (mProperty != null) {
-        //    // check to make sure that mProperty is on the class of target
-        //    try {
-        //        Object testValue = mProperty.get(target);
-        //        for (Keyframe kf : mKeyframeSet.mKeyframes) {
-        //            if (!kf.hasValue()) {
-        //                kf.setValue(mProperty.get(target));
-        //            }
-        //        }
-        //        return;
-        //    } catch (ClassCastException e) {
-        //        Log.e("PropertyValuesHolder","No such property (" + mProperty.getName() +
-        //                ") on target object " + target + ". Trying reflection instead");
-        //        mProperty = null;
-        //    }
-        //}
+        if (mProperty != null) {
+            // check to make sure that mProperty is on the class of target
+            try {
+                Object testValue = mProperty.get(target);
+                for (Keyframe kf : mKeyframeSet.mKeyframes) {
+                    if (!kf.hasValue()) {
+                        kf.setValue(mProperty.get(target));
+                    }
+                }
+                return;
+            } catch (ClassCastException e) {
+                Log.e("PropertyValuesHolder","No such property (" + mProperty.getName() +
+                        ") on target object " + target + ". Trying reflection instead");
+                setProperty(null);
+            }
+        }
         Class targetClass = target.getClass();
         if (mSetter == null) {
             setupSetter(targetClass);
@@ -530,9 +531,11 @@ public class PropertyValuesHolder implements Cloneable {
      * @param kf The keyframe which holds the property name and value.
      */
     private void setupValue(Object target, Keyframe kf) {
-        //if (mProperty != null) {
-        //    kf.setValue(mProperty.get(target));
-        //}
+        mKeyframeSet.invalidate();
+        if (mProperty != null) {
+            kf.setValue(mProperty.get(target));
+            return;
+        }
         try {
             if (mGetter == null) {
                 Class targetClass = target.getClass();
@@ -575,7 +578,7 @@ public class PropertyValuesHolder implements Cloneable {
         try {
             PropertyValuesHolder newPVH = (PropertyValuesHolder) super.clone();
             newPVH.mPropertyName = mPropertyName;
-            //newPVH.mProperty = mProperty;
+            newPVH.mProperty = mProperty;
             newPVH.mKeyframeSet = mKeyframeSet.clone();
             newPVH.mEvaluator = mEvaluator;
             return newPVH;
@@ -593,9 +596,10 @@ public class PropertyValuesHolder implements Cloneable {
      * @param target The target object on which the value is set
      */
     void setAnimatedValue(Object target) {
-        //if (mProperty != null) {
-        //    mProperty.set(target, getAnimatedValue());
-        //}
+        if (mProperty != null) {
+            mProperty.set(target, getAnimatedValue());
+            return;
+        }
         if (mSetter != null) {
             try {
                 mTmpValueArray[0] = getAnimatedValue();
@@ -613,6 +617,8 @@ public class PropertyValuesHolder implements Cloneable {
      * to calculate animated values.
      */
     void init() {
+        // The keyframes may have been given values since they were last used
+        mKeyframeSet.invalidate();
         if (mEvaluator == null) {
             // We already handle int and float automatically, but not their Object
             // equivalents
@@ -668,6 +674,9 @@ public class PropertyValuesHolder implements Cloneable {
      * @param propertyName The name of the property being animated.
      */
     public void setPropertyName(String propertyName) {
+        if (mProperty != null && !mProperty.getName().equals(propertyName)) {
+            setProperty(null);
+        }
         mPropertyName = propertyName;
     }
 
@@ -679,9 +688,9 @@ public class PropertyValuesHolder implements Cloneable {
      *
      * @param property The property being animated.
      */
-    //public void setProperty(Property property) {
-    //    mProperty = property;
-    //}
+    public void setProperty(Property property) {
+        mProperty = property;
+    }
 
     /**
      * Gets the name of the property that will be animated. This name will be used to derive
@@ -732,13 +741,62 @@ public class PropertyValuesHolder implements Cloneable {
         return prefix + firstLetter + theRest;
     }
 
+    /**
+     * Identifies a setter or getter lookup.
+     */
+    static final class MethodKey {
+        private final Class mTargetClass;
+        private final String mPropertyName;
+        private final Class mValueType;
+
+        MethodKey(Class targetClass, String propertyName, Class valueType) {
+            mTargetClass = targetClass;
+            mPropertyName = propertyName;
+            mValueType = valueType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof MethodKey)) {
+                return false;
+            }
+            final MethodKey other = (MethodKey) o;
+            return mTargetClass == other.mTargetClass && mValueType == other.mValueType
+                    && (mPropertyName == null ? other.mPropertyName == null
+                            : mPropertyName.equals(other.mPropertyName));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mTargetClass.hashCode();
+            result = 31 * result + (mPropertyName != null ? mPropertyName.hashCode() : 0);
+            result = 31 * result + (mValueType != null ? mValueType.hashCode() : 0);
+            return result;
+        }
+    }
+
+    /**
+     * The result of a setter or getter lookup.
+     */
+    static final class MethodEntry {
+        /** The method found, or null if there is none. */
+        final Method method;
+        /** The value type the method takes. */
+        final Class valueType;
+
+        MethodEntry(Method method, Class valueType) {
+            this.method = method;
+            this.valueType = valueType;
+        }
+    }
+
     static class IntPropertyValuesHolder extends PropertyValuesHolder {
 
         // Cache JNI functions to avoid looking them up twice
         //private static final HashMap<Class, HashMap<String, Integer>> sJNISetterPropertyMap =
         //        new HashMap<Class, HashMap<String, Integer>>();
         //int mJniSetter;
-        //private IntProperty mIntProperty;
+        private IntProperty mIntProperty;
 
         IntKeyframeSet mIntKeyframeSet;
         int mIntAnimatedValue;
@@ -750,28 +808,34 @@ public class PropertyValuesHolder implements Cloneable {
             mIntKeyframeSet = (IntKeyframeSet) mKeyframeSet;
         }
 
-        //public IntPropertyValuesHolder(Property property, IntKeyframeSet keyframeSet) {
-        //    super(property);
-        //    mValueType = int.class;
-        //    mKeyframeSet = keyframeSet;
-        //    mIntKeyframeSet = (IntKeyframeSet) mKeyframeSet;
-        //    if (property instanceof  IntProperty) {
-        //        mIntProperty = (IntProperty) mProperty;
-        //    }
-        //}
+        public IntPropertyValuesHolder(Property property, IntKeyframeSet keyframeSet) {
+            super(property);
+            mValueType = int.class;
+            mKeyframeSet = keyframeSet;
+            mIntKeyframeSet = (IntKeyframeSet) mKeyframeSet;
+            if (property instanceof  IntProperty) {
+                mIntProperty = (IntProperty) mProperty;
+            }
+        }
 
         public IntPropertyValuesHolder(String propertyName, int... values) {
             super(propertyName);
             setIntValues(values);
         }
 
-        //public IntPropertyValuesHolder(Property property, int... values) {
-        //    super(property);
-        //    setIntValues(values);
-        //    if (property instanceof  IntProperty) {
-        //        mIntProperty = (IntProperty) mProperty;
-        //    }
-        //}
+        public IntPropertyValuesHolder(Property property, int... values) {
+            super(property);
+            setIntValues(values);
+            if (property instanceof  IntProperty) {
+                mIntProperty = (IntProperty) mProperty;
+            }
+        }
+
+        @Override
+        public void setProperty(Property property) {
+            super.setProperty(property);
+            mIntProperty = property instanceof IntProperty ? (IntProperty) property : null;
+        }
 
         @Override
         public void setIntValues(int... values) {
@@ -805,14 +869,14 @@ public class PropertyValuesHolder implements Cloneable {
          */
         @Override
         void setAnimatedValue(Object target) {
-            //if (mIntProperty != null) {
-            //    mIntProperty.setValue(target, mIntAnimatedValue);
-            //    return;
-            //}
-            //if (mProperty != null) {
-            //    mProperty.set(target, mIntAnimatedValue);
-            //    return;
-            //}
+            if (mIntProperty != null) {
+                mIntProperty.setValue(target, mIntAnimatedValue);
+                return;
+            }
+            if (mProperty != null) {
+                mProperty.set(target, mIntAnimatedValue);
+                return;
+            }
             //if (mJniSetter != 0) {
             //    nCallIntMethod(target, mJniSetter, mIntAnimatedValue);
             //    return;
@@ -831,9 +895,9 @@ public class PropertyValuesHolder implements Cloneable {
 
         @Override
         void setupSetter(Class targetClass) {
-            //if (mProperty != null) {
-            //    return;
-            //}
+            if (mProperty != null) {
+                return;
+            }
             // Check new static hashmap<propName, int> for setter method
             //try {
             //    mPropertyMapLock.writeLock().lock();
@@ -874,7 +938,7 @@ public class PropertyValuesHolder implements Cloneable {
         //private static final HashMap<Class, HashMap<String, Integer>> sJNISetterPropertyMap =
         //        new HashMap<Class, HashMap<String, Integer>>();
         //int mJniSetter;
-        //private FloatProperty mFloatProperty;
+        private FloatProperty mFloatProperty;
 
         FloatKeyframeSet mFloatKeyframeSet;
         float mFloatAnimatedValue;
@@ -886,28 +950,34 @@ public class PropertyValuesHolder implements Cloneable {
             mFloatKeyframeSet = (FloatKeyframeSet) mKeyframeSet;
         }
 
-        //public FloatPropertyValuesHolder(Property property, FloatKeyframeSet keyframeSet) {
-        //    super(property);
-        //    mValueType = float.class;
-        //    mKeyframeSet = keyframeSet;
-        //    mFloatKeyframeSet = (FloatKeyframeSet) mKeyframeSet;
-        //    if (property instanceof FloatProperty) {
-        //        mFloatProperty = (FloatProperty) mProperty;
-        //    }
-        //}
+        public FloatPropertyValuesHolder(Property property, FloatKeyframeSet keyframeSet) {
+            super(property);
+            mValueType = float.class;
+            mKeyframeSet = keyframeSet;
+            mFloatKeyframeSet = (FloatKeyframeSet) mKeyframeSet;
+            if (property instanceof FloatProperty) {
+                mFloatProperty = (FloatProperty) mProperty;
+            }
+        }
 
         public FloatPropertyValuesHolder(String propertyName, float... values) {
             super(propertyName);
             setFloatValues(values);
         }
 
-        //public FloatPropertyValuesHolder(Property property, float... values) {
-        //    super(property);
-        //    setFloatValues(values);
-        //    if (property instanceof  FloatProperty) {
-        //        mFloatProperty = (FloatProperty) mProperty;
-        //    }
-        //}
+        public FloatPropertyValuesHolder(Property property, float... values) {
+            super(property);
+            setFloatValues(values);
+            if (property instanceof  FloatProperty) {
+                mFloatProperty = (FloatProperty) mProperty;
+            }
+        }
+
+        @Override
+        public void setProperty(Property property) {
+            super.setProperty(property);
+            mFloatProperty = property instanceof FloatProperty ? (FloatProperty) property : null;
+        }
 
         @Override
         public void setFloatValues(float... values) {
@@ -941,14 +1011,14 @@ public class PropertyValuesHolder implements Cloneable {
          */
         @Override
         void setAnimatedValue(Object target) {
-            //if (mFloatProperty != null) {
-            //    mFloatProperty.setValue(target, mFloatAnimatedValue);
-            //    return;
-            //}
-            //if (mProperty != null) {
-            //    mProperty.set(target, mFloatAnimatedValue);
-            //    return;
-            //}
+            if (mFloatProperty != null) {
+                mFloatProperty.setValue(target, mFloatAnimatedValue);
+                return;
+            }
+            if (mProperty != null) {
+                mProperty.set(target, mFloatAnimatedValue);
+                return;
+            }
             //if (mJniSetter != 0) {
             //    nCallFloatMethod(target, mJniSetter, mFloatAnimatedValue);
             //    return;
@@ -965,11 +1035,23 @@ public class PropertyValuesHolder implements Cloneable {
             }
         }
 
+        @Override
+        void setupSetterAndGetter(Object target) {
+            if (mProperty == null && target instanceof View) {
+                // The common view properties are set without reflection.
+                final FloatProperty<View> property = ViewProperties.get(mPropertyName);
+                if (property != null) {
+                    setProperty(property);
+                }
+            }
+            super.setupSetterAndGetter(target);
+        }
+
         @Override
         void setupSetter(Class targetClass) {
-            //if (mProperty != null) {
-            //    return;
-            //}
+            if (mProperty != null) {
+                return;
+            }
             // Check new static hashmap<propName, int> for setter method
             //try {
             //    mPropertyMapLock.writeLock().lock();
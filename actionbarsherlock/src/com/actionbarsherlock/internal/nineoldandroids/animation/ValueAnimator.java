@@ -53,11 +53,10 @@ public class ValueAnimator extends Animator {
     private static final long DEFAULT_FRAME_DELAY = 10;
 
     /**
-     * Messages sent to timing handler: START is sent when an animation first begins, FRAME is sent
-     * by the handler to itself to process the next animation frame
+     * Message sent to timing handler when an animation first begins. Frames are requested from
+     * the {@link FrameSource} of the handler.
      */
     static final int ANIMATION_START = 0;
-    static final int ANIMATION_FRAME = 1;
 
     /**
      * Values used with internal variable mPlayingState to indicate the current state of an
@@ -85,59 +84,18 @@ public class ValueAnimator extends Animator {
      */
     long mSeekTime = -1;
 
-    // TODO: We access the following ThreadLocal variables often, some of them on every update.
-    // If ThreadLocal access is significantly expensive, we may want to put all of these
-    // fields into a structure sot hat we just access ThreadLocal once to get the reference
-    // to that structure, then access the structure directly for each field.
-
-    // The static sAnimationHandler processes the internal timing loop on which all animations
-    // are based
-    private static ThreadLocal<AnimationHandler> sAnimationHandler =
-            new ThreadLocal<AnimationHandler>();
-
-    // The per-thread list of all active animations
-    private static final ThreadLocal<ArrayList<ValueAnimator>> sAnimations =
-            new ThreadLocal<ArrayList<ValueAnimator>>() {
-                @Override
-                protected ArrayList<ValueAnimator> initialValue() {
-                    return new ArrayList<ValueAnimator>();
-                }
-            };
-
-    // The per-thread set of animations to be started on the next animation frame
-    private static final ThreadLocal<ArrayList<ValueAnimator>> sPendingAnimations =
-            new ThreadLocal<ArrayList<ValueAnimator>>() {
-                @Override
-                protected ArrayList<ValueAnimator> initialValue() {
-                    return new ArrayList<ValueAnimator>();
-                }
-            };
-
     /**
-     * Internal per-thread collections used to avoid set collisions as animations start and end
-     * while being processed.
+     * The stats of the frame this animation is being processed in, set by the handler before
+     * each frame. Null unless stats are being collected.
      */
-    private static final ThreadLocal<ArrayList<ValueAnimator>> sDelayedAnims =
-            new ThreadLocal<ArrayList<ValueAnimator>>() {
-                @Override
-                protected ArrayList<ValueAnimator> initialValue() {
-                    return new ArrayList<ValueAnimator>();
-                }
-            };
+    AnimationStats mStats;
 
-    private static final ThreadLocal<ArrayList<ValueAnimator>> sEndingAnims =
-            new ThreadLocal<ArrayList<ValueAnimator>>() {
+    // The per-thread animation state, see AnimationContext
+    private static final ThreadLocal<AnimationContext> sAnimationContext =
+            new ThreadLocal<AnimationContext>() {
                 @Override
-                protected ArrayList<ValueAnimator> initialValue() {
-                    return new ArrayList<ValueAnimator>();
-                }
-            };
-
-    private static final ThreadLocal<ArrayList<ValueAnimator>> sReadyAnims =
-            new ThreadLocal<ArrayList<ValueAnimator>>() {
-                @Override
-                protected ArrayList<ValueAnimator> initialValue() {
-                    return new ArrayList<ValueAnimator>();
+                protected AnimationContext initialValue() {
+                    return new AnimationContext();
                 }
             };
 
@@ -537,7 +495,7 @@ public class ValueAnimator extends Animator {
      */
     public void setCurrentPlayTime(long playTime) {
         initAnimation();
-        long currentTime = AnimationUtils.currentAnimationTimeMillis();
+        long currentTime = currentAnimationTimeMillis();
         if (mPlayingState != RUNNING) {
             mSeekTime = playTime;
             mPlayingState = SEEKED;
@@ -557,7 +515,52 @@ public class ValueAnimator extends Animator {
         if (!mInitialized || mPlayingState == STOPPED) {
             return 0;
         }
-        return AnimationUtils.currentAnimationTimeMillis() - mStartTime;
+        return currentAnimationTimeMillis() - mStartTime;
+    }
+
+    /**
+     * The animations of a thread along with the handler that drives them. All of the
+     * per-thread state lives here so that it takes a single ThreadLocal lookup to reach, and
+     * none from the handler, which keeps its own reference.
+     */
+    private static class AnimationContext {
+        // The list of all active animations
+        final ArrayList<ValueAnimator> mAnimations = new ArrayList<ValueAnimator>();
+
+        // The set of animations to be started on the next animation frame. This is swapped
+        // with mStartingAnims while the pending animations are started, so that animations
+        // requested in the meantime are kept for the next pass.
+        ArrayList<ValueAnimator> mPendingAnimations = new ArrayList<ValueAnimator>();
+        ArrayList<ValueAnimator> mStartingAnims = new ArrayList<ValueAnimator>();
+
+        /**
+         * Internal collections used to avoid set collisions as animations start and end
+         * while being processed.
+         */
+        final ArrayList<ValueAnimator> mDelayedAnims = new ArrayList<ValueAnimator>();
+        final ArrayList<ValueAnimator> mEndingAnims = new ArrayList<ValueAnimator>();
+        final ArrayList<ValueAnimator> mReadyAnims = new ArrayList<ValueAnimator>();
+
+        // Whether the handler is processing the animations of a frame, and the work deferred
+        // until it is done with them
+        boolean mInFrame;
+        final ArrayList<Runnable> mEndOfFrameRunnables = new ArrayList<Runnable>();
+
+        // The stats collected for each frame, if anyone is listening for them, and the time
+        // of the previous frame or -1 if animations were idle
+        AnimationStats mStats;
+        long mLastFrameTime = -1;
+
+        // The handler processes the internal timing loop on which all animations are based.
+        // It is only created once needed since it requires a Looper.
+        AnimationHandler mHandler;
+
+        AnimationHandler getHandler() {
+            if (mHandler == null) {
+                mHandler = new AnimationHandler(this);
+            }
+            return mHandler;
+        }
     }
 
     /**
@@ -565,123 +568,246 @@ public class ValueAnimator extends Animator {
      * all active animations. This approach ensures that the setting of animation
      * values will happen on the UI thread and that all animations will share
      * the same times for calculating their values, which makes synchronizing
-     * animations possible.
+     * animations possible. The frames themselves come from a {@link FrameSource}.
      *
      */
-    private static class AnimationHandler extends Handler {
+    private static class AnimationHandler extends Handler implements FrameSource.Callback {
+        private final AnimationContext mContext;
+        FrameSource mFrameSource = FrameSource.create();
+
+        /**
+         * Whether a frame has been requested from the frame source and not yet
+         * delivered.
+         */
+        boolean mFrameScheduled;
+
+        AnimationHandler(AnimationContext context) {
+            mContext = context;
+        }
+
         /**
-         * There are only two messages that we care about: ANIMATION_START and
-         * ANIMATION_FRAME. The START message is sent when an animation's start()
-         * method is called. It cannot start synchronously when start() is called
-         * because the call may be on the wrong thread, and it would also not be
-         * synchronized with other animations because it would not start on a common
-         * timing pulse. So each animation sends a START message to the handler, which
-         * causes the handler to place the animation on the active animations queue and
-         * start processing frames for that animation.
-         * The FRAME message is the one that is sent over and over while there are any
-         * active animations to process.
+         * The START message is sent when an animation's start() method is called.
+         * It cannot start synchronously when start() is called because the call may
+         * be on the wrong thread, and it would also not be synchronized with other
+         * animations because it would not start on a common timing pulse. So each
+         * animation sends a START message to the handler, which causes the handler
+         * to place the animation on the active animations queue and start
+         * processing frames for that animation.
          */
         @Override
-        @SuppressWarnings("fallthrough")
         public void handleMessage(Message msg) {
-            boolean callAgain = true;
-            ArrayList<ValueAnimator> animations = sAnimations.get();
-            ArrayList<ValueAnimator> delayedAnims = sDelayedAnims.get();
-            switch (msg.what) {
-                // TODO: should we avoid sending frame message when starting if we
-                // were already running?
-                case ANIMATION_START:
-                    ArrayList<ValueAnimator> pendingAnimations = sPendingAnimations.get();
-                    if (animations.size() > 0 || delayedAnims.size() > 0) {
-                        callAgain = false;
-                    }
-                    // pendingAnims holds any animations that have requested to be started
-                    // We're going to clear sPendingAnimations, but starting animation may
-                    // cause more to be added to the pending list (for example, if one animation
-                    // starting triggers another starting). So we loop until sPendingAnimations
-                    // is empty.
-                    while (pendingAnimations.size() > 0) {
-                        ArrayList<ValueAnimator> pendingCopy =
-                                (ArrayList<ValueAnimator>) pendingAnimations.clone();
-                        pendingAnimations.clear();
-                        int count = pendingCopy.size();
-                        for (int i = 0; i < count; ++i) {
-                            ValueAnimator anim = pendingCopy.get(i);
-                            // If the animation has a startDelay, place it on the delayed list
-                            if (anim.mStartDelay == 0) {
-                                anim.startAnimation();
-                            } else {
-                                delayedAnims.add(anim);
-                            }
-                        }
-                    }
-                    // fall through to process first frame of new animations
-                case ANIMATION_FRAME:
-                    // currentTime holds the common time for all animations processed
-                    // during this frame
-                    long currentTime = AnimationUtils.currentAnimationTimeMillis();
-                    ArrayList<ValueAnimator> readyAnims = sReadyAnims.get();
-                    ArrayList<ValueAnimator> endingAnims = sEndingAnims.get();
-
-                    // First, process animations currently sitting on the delayed queue, adding
-                    // them to the active animations if they are ready
-                    int numDelayedAnims = delayedAnims.size();
-                    for (int i = 0; i < numDelayedAnims; ++i) {
-                        ValueAnimator anim = delayedAnims.get(i);
-                        if (anim.delayedAnimationFrame(currentTime)) {
-                            readyAnims.add(anim);
-                        }
-                    }
-                    int numReadyAnims = readyAnims.size();
-                    if (numReadyAnims > 0) {
-                        for (int i = 0; i < numReadyAnims; ++i) {
-                            ValueAnimator anim = readyAnims.get(i);
-                            anim.startAnimation();
-                            anim.mRunning = true;
-                            delayedAnims.remove(anim);
-                        }
-                        readyAnims.clear();
+            if (msg.what != ANIMATION_START) {
+                return;
+            }
+            final AnimationContext context = mContext;
+            ArrayList<ValueAnimator> animations = context.mAnimations;
+            ArrayList<ValueAnimator> delayedAnims = context.mDelayedAnims;
+            // The pending list holds any animations that have requested to be started.
+            // Starting an animation may cause more to be added to the pending list (for
+            // example, if one animation starting triggers another starting), so the lists are
+            // swapped for each pass and we loop until the pending list is empty.
+            while (context.mPendingAnimations.size() > 0) {
+                ArrayList<ValueAnimator> startingAnims = context.mPendingAnimations;
+                context.mPendingAnimations = context.mStartingAnims;
+                context.mStartingAnims = startingAnims;
+                int count = startingAnims.size();
+                for (int i = 0; i < count; ++i) {
+                    ValueAnimator anim = startingAnims.get(i);
+                    // If the animation has a startDelay, place it on the delayed list
+                    if (anim.mStartDelay == 0) {
+                        anim.startAnimation();
+                    } else {
+                        delayedAnims.add(anim);
                     }
+                }
+                startingAnims.clear();
+            }
+            // The new animations start on the next frame, together with any running ones.
+            if (!mFrameScheduled && (!animations.isEmpty() || !delayedAnims.isEmpty())) {
+                mFrameScheduled = true;
+                mFrameSource.postFrame(this, 0);
+            }
+        }
 
-                    // Now process all active animations. The return value from animationFrame()
-                    // tells the handler whether it should now be ended
-                    int numAnims = animations.size();
-                    int i = 0;
-                    while (i < numAnims) {
-                        ValueAnimator anim = animations.get(i);
-                        if (anim.animationFrame(currentTime)) {
-                            endingAnims.add(anim);
-                        }
-                        if (animations.size() == numAnims) {
-                            ++i;
-                        } else {
-                            // An animation might be canceled or ended by client code
-                            // during the animation frame. Check to see if this happened by
-                            // seeing whether the current index is the same as it was before
-                            // calling animationFrame(). Another approach would be to copy
-                            // animations to a temporary list and process that list instead,
-                            // but that entails garbage and processing overhead that would
-                            // be nice to avoid.
-                            --numAnims;
-                            endingAnims.remove(anim);
-                        }
-                    }
-                    if (endingAnims.size() > 0) {
-                        for (i = 0; i < endingAnims.size(); ++i) {
-                            endingAnims.get(i).endAnimation();
-                        }
-                        endingAnims.clear();
-                    }
+        /**
+         * Processes one frame of all delayed and active animations.
+         *
+         * @param currentTime The common time for all animations processed during
+         *            this frame.
+         */
+        public void doFrame(long currentTime) {
+            mFrameScheduled = false;
+            final AnimationContext context = mContext;
+            context.mInFrame = true;
+            ArrayList<ValueAnimator> animations = context.mAnimations;
+            ArrayList<ValueAnimator> delayedAnims = context.mDelayedAnims;
+            ArrayList<ValueAnimator> readyAnims = context.mReadyAnims;
+            ArrayList<ValueAnimator> endingAnims = context.mEndingAnims;
+
+            final AnimationStats stats = context.mStats;
+            long frameStart = 0;
+            if (stats != null) {
+                frameStart = System.nanoTime();
+                stats.mFrameTime = currentTime;
+                stats.mFrameIntervalMillis = (context.mLastFrameTime < 0) ? 0 :
+                        currentTime - context.mLastFrameTime;
+                stats.mTargetIntervalMillis = mFrameSource.getFrameIntervalMillis(sFrameDelay);
+                stats.mUpdateListenerNanos = 0;
+                stats.mSetterNanos = 0;
+                stats.mActiveAnimations = animations.size();
+                stats.mDelayedAnimations = delayedAnims.size();
+                stats.mPendingAnimations = context.mPendingAnimations.size();
+            }
+            context.mLastFrameTime = currentTime;
+
+            // First, process animations currently sitting on the delayed queue, adding
+            // them to the active animations if they are ready
+            int numDelayedAnims = delayedAnims.size();
+            for (int i = 0; i < numDelayedAnims; ++i) {
+                ValueAnimator anim = delayedAnims.get(i);
+                if (anim.delayedAnimationFrame(currentTime)) {
+                    readyAnims.add(anim);
+                }
+            }
+            int numReadyAnims = readyAnims.size();
+            if (numReadyAnims > 0) {
+                for (int i = 0; i < numReadyAnims; ++i) {
+                    ValueAnimator anim = readyAnims.get(i);
+                    anim.startAnimation();
+                    anim.mRunning = true;
+                    delayedAnims.remove(anim);
+                }
+                readyAnims.clear();
+            }
 
-                    // If there are still active or delayed animations, call the handler again
-                    // after the frameDelay
-                    if (callAgain && (!animations.isEmpty() || !delayedAnims.isEmpty())) {
-                        sendEmptyMessageDelayed(ANIMATION_FRAME, Math.max(0, sFrameDelay -
-                            (AnimationUtils.currentAnimationTimeMillis() - currentTime)));
-                    }
-                    break;
+            // Now process all active animations. The return value from animationFrame()
+            // tells the handler whether it should now be ended
+            int numAnims = animations.size();
+            int i = 0;
+            while (i < numAnims) {
+                ValueAnimator anim = animations.get(i);
+                // Only hand out the stats for the frame, so that they are not kept alive.
+                anim.mStats = stats;
+                final boolean finished = anim.animationFrame(currentTime);
+                anim.mStats = null;
+                if (finished) {
+                    endingAnims.add(anim);
+                }
+                if (animations.size() == numAnims) {
+                    ++i;
+                } else {
+                    // An animation might be canceled or ended by client code
+                    // during the animation frame. Check to see if this happened by
+                    // seeing whether the current index is the same as it was before
+                    // calling animationFrame(). Another approach would be to copy
+                    // animations to a temporary list and process that list instead,
+                    // but that entails garbage and processing overhead that would
+                    // be nice to avoid.
+                    --numAnims;
+                    endingAnims.remove(anim);
+                }
+            }
+            if (endingAnims.size() > 0) {
+                for (i = 0; i < endingAnims.size(); ++i) {
+                    endingAnims.get(i).endAnimation();
+                }
+                endingAnims.clear();
+            }
+
+            context.mInFrame = false;
+            ArrayList<Runnable> endOfFrameRunnables = context.mEndOfFrameRunnables;
+            if (endOfFrameRunnables.size() > 0) {
+                for (i = 0; i < endOfFrameRunnables.size(); ++i) {
+                    endOfFrameRunnables.get(i).run();
+                }
+                endOfFrameRunnables.clear();
+            }
+
+            if (stats != null) {
+                stats.mFrameNanos = System.nanoTime() - frameStart;
+                stats.mListener.onAnimationFrame(stats);
             }
+
+            // If there are still active or delayed animations, request the next frame
+            // after the frameDelay
+            if (!mFrameScheduled && (!animations.isEmpty() || !delayedAnims.isEmpty())) {
+                mFrameScheduled = true;
+                mFrameSource.postFrame(this,
+                        sFrameDelay - (mFrameSource.currentTimeMillis() - currentTime));
+            }
+            if (!mFrameScheduled) {
+                context.mLastFrameTime = -1;
+            }
+        }
+
+        void setFrameSource(FrameSource frameSource) {
+            if (mFrameScheduled) {
+                mFrameSource.removeFrame(this);
+                frameSource.postFrame(this, sFrameDelay);
+            }
+            mFrameSource = frameSource;
+        }
+    }
+
+
+    /**
+     * The current time of the frame source of the calling thread.
+     */
+    private static long currentAnimationTimeMillis() {
+        AnimationHandler animationHandler = sAnimationContext.get().mHandler;
+        if (animationHandler == null) {
+            return AnimationUtils.currentAnimationTimeMillis();
+        }
+        return animationHandler.mFrameSource.currentTimeMillis();
+    }
+
+    /**
+     * Defers work until all animations of the current frame have been processed, when called
+     * while the calling thread is processing an animation frame. This allows the effects of
+     * several animated properties to be applied at once.
+     *
+     * @param runnable The work to run once the frame has been processed.
+     * @return true if the runnable will be run at the end of the current frame, false if the
+     * calling thread is not processing a frame and the work should be done right away.
+     */
+    public static boolean runAtEndOfFrame(Runnable runnable) {
+        final AnimationContext context = sAnimationContext.get();
+        if (!context.mInFrame) {
+            return false;
+        }
+        context.mEndOfFrameRunnables.add(runnable);
+        return true;
+    }
+
+    /**
+     * Sets a listener to receive the {@link AnimationStats} of every animation frame on the
+     * calling thread. Stats are only collected while a listener is set.
+     *
+     * @param listener The listener to receive frame stats, or null to stop collecting them.
+     */
+    public static void setAnimationStatsListener(AnimationStats.Listener listener) {
+        sAnimationContext.get().mStats = (listener != null) ? new AnimationStats(listener) : null;
+    }
+
+    /**
+     * Sets the source of the timing pulse for all animations running on the
+     * calling thread, which must have a looper. By default frames follow the
+     * {@link #setFrameDelay(long) frame delay}. Frames synchronized to the
+     * display are available from {@link FrameSource#createDisplaySynchronized()}.
+     *
+     * <p>Running animations do not allocate per frame, with one exception:
+     * the display synchronized source allocates a little for each frame it
+     * delivers.</p>
+     *
+     * @param frameSource The frame source to use, or null to restore the
+     *            default.
+     */
+    public static void setFrameSource(FrameSource frameSource) {
+        if (Looper.myLooper() == null) {
+            throw new AndroidRuntimeException("Animators may only be run on Looper threads");
         }
+        sAnimationContext.get().getHandler().setFrameSource(
+                frameSource != null ? frameSource : FrameSource.create());
     }
 
     /**
@@ -722,7 +848,7 @@ public class ValueAnimator extends Animator {
      * requested time that the animation will attempt to honor, but the actual delay between
      * frames may be different, depending on system load and capabilities. This is a static
      * function because the same delay will be applied to all animations, since they are all
-     * run off of a single timing loop.
+     * run off of a single timing loop. Frame sources synchronized to the display ignore it.
      *
      * @param frameDelay the requested time between frames, in milliseconds
      */
@@ -924,7 +1050,8 @@ public class ValueAnimator extends Animator {
         mPlayingState = STOPPED;
         mStarted = true;
         mStartedDelay = false;
-        sPendingAnimations.get().add(this);
+        final AnimationContext context = sAnimationContext.get();
+        context.mPendingAnimations.add(this);
         if (mStartDelay == 0) {
             // This sets the initial value of the animation, prior to actually starting it running
             setCurrentPlayTime(getCurrentPlayTime());
@@ -940,12 +1067,7 @@ public class ValueAnimator extends Animator {
                 }
             }
         }
-        AnimationHandler animationHandler = sAnimationHandler.get();
-        if (animationHandler == null) {
-            animationHandler = new AnimationHandler();
-            sAnimationHandler.set(animationHandler);
-        }
-        animationHandler.sendEmptyMessage(ANIMATION_START);
+        context.getHandler().sendEmptyMessage(ANIMATION_START);
     }
 
     @Override
@@ -956,9 +1078,10 @@ public class ValueAnimator extends Animator {
     @Override
     public void cancel() {
         // Only cancel if the animation is actually running or has been started and is about
-        // to run
-        if (mPlayingState != STOPPED || sPendingAnimations.get().contains(this) ||
-                sDelayedAnims.get().contains(this)) {
+        // to run, which includes waiting for its first frame
+        final AnimationContext context = sAnimationContext.get();
+        if (mPlayingState != STOPPED || context.mPendingAnimations.contains(this) ||
+                context.mAnimations.contains(this) || context.mDelayedAnims.contains(this)) {
             // Only notify listeners if the animator has actually started
             if (mRunning && mListeners != null) {
                 ArrayList<AnimatorListener> tmpListeners =
@@ -973,7 +1096,8 @@ public class ValueAnimator extends Animator {
 
     @Override
     public void end() {
-        if (!sAnimations.get().contains(this) && !sPendingAnimations.get().contains(this)) {
+        final AnimationContext context = sAnimationContext.get();
+        if (!context.mAnimations.contains(this) && !context.mPendingAnimations.contains(this)) {
             // Special case if the animation has not yet started; get it ready for ending
             mStartedDelay = false;
             startAnimation();
@@ -1010,7 +1134,7 @@ public class ValueAnimator extends Animator {
     public void reverse() {
         mPlayingBackwards = !mPlayingBackwards;
         if (mPlayingState == RUNNING) {
-            long currentTime = AnimationUtils.currentAnimationTimeMillis();
+            long currentTime = currentAnimationTimeMillis();
             long currentPlayTime = currentTime - mStartTime;
             long timeLeft = mDuration - currentPlayTime;
             mStartTime = currentTime - timeLeft;
@@ -1024,9 +1148,10 @@ public class ValueAnimator extends Animator {
      * called on the UI thread.
      */
     private void endAnimation() {
-        sAnimations.get().remove(this);
-        sPendingAnimations.get().remove(this);
-        sDelayedAnims.get().remove(this);
+        final AnimationContext context = sAnimationContext.get();
+        context.mAnimations.remove(this);
+        context.mPendingAnimations.remove(this);
+        context.mDelayedAnims.remove(this);
         mPlayingState = STOPPED;
         if (mRunning && mListeners != null) {
             ArrayList<AnimatorListener> tmpListeners =
@@ -1046,7 +1171,7 @@ public class ValueAnimator extends Animator {
      */
     private void startAnimation() {
         initAnimation();
-        sAnimations.get().add(this);
+        sAnimationContext.get().mAnimations.add(this);
         if (mStartDelay > 0 && mListeners != null) {
             // Listeners were already notified in start() if startDelay is 0; this is
             // just for delayed animations
@@ -1175,10 +1300,15 @@ public class ValueAnimator extends Animator {
             mValues[i].calculateValue(fraction);
         }
         if (mUpdateListeners != null) {
+            final AnimationStats stats = mStats;
+            final long start = (stats != null) ? System.nanoTime() : 0;
             int numListeners = mUpdateListeners.size();
             for (int i = 0; i < numListeners; ++i) {
                 mUpdateListeners.get(i).onAnimationUpdate(this);
             }
+            if (stats != null) {
+                stats.mUpdateListenerNanos += System.nanoTime() - start;
+            }
         }
     }
 
@@ -1238,7 +1368,7 @@ public class ValueAnimator extends Animator {
      * @hide
      */
     public static int getCurrentAnimationsCount() {
-        return sAnimations.get().size();
+        return sAnimationContext.get().mAnimations.size();
     }
 
     /**
@@ -1248,9 +1378,10 @@ public class ValueAnimator extends Animator {
      * @hide
      */
     public static void clearAllAnimations() {
-        sAnimations.get().clear();
-        sPendingAnimations.get().clear();
-        sDelayedAnims.get().clear();
+        final AnimationContext context = sAnimationContext.get();
+        context.mAnimations.clear();
+        context.mPendingAnimations.clear();
+        context.mDelayedAnims.clear();
     }
 
     @Override
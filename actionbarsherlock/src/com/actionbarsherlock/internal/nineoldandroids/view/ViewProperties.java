@@ -0,0 +1,116 @@
+package com.actionbarsherlock.internal.nineoldandroids.view;
+
+import java.util.HashMap;
+
+import android.view.View;
+
+import com.actionbarsherlock.internal.nineoldandroids.util.FloatProperty;
+import com.actionbarsherlock.internal.nineoldandroids.view.animation.AnimatorProxy;
+
+/**
+ * The view properties animated by the action bar. They set the value on the
+ * view directly where the platform supports it and on the view's
+ * {@link AnimatorProxy} otherwise, without reflection or boxing.
+ */
+public final class ViewProperties {
+    public static final FloatProperty<View> ALPHA = new FloatProperty<View>("alpha") {
+        @Override
+        public void setValue(View view, float value) {
+            if (AnimatorProxy.NEEDS_PROXY) {
+                AnimatorProxy.wrap(view).setAlpha(value);
+            } else {
+                view.setAlpha(value);
+            }
+        }
+
+        @Override
+        public Float get(View view) {
+            return AnimatorProxy.NEEDS_PROXY ? AnimatorProxy.wrap(view).getAlpha() : view.getAlpha();
+        }
+    };
+
+    public static final FloatProperty<View> TRANSLATION_X = new FloatProperty<View>("translationX") {
+        @Override
+        public void setValue(View view, float value) {
+            if (AnimatorProxy.NEEDS_PROXY) {
+                AnimatorProxy.wrap(view).setTranslationX(value);
+            } else {
+                view.setTranslationX(value);
+            }
+        }
+
+        @Override
+        public Float get(View view) {
+            return AnimatorProxy.NEEDS_PROXY ? AnimatorProxy.wrap(view).getTranslationX() : view.getTranslationX();
+        }
+    };
+
+    public static final FloatProperty<View> TRANSLATION_Y = new FloatProperty<View>("translationY") {
+        @Override
+        public void setValue(View view, float value) {
+            if (AnimatorProxy.NEEDS_PROXY) {
+                AnimatorProxy.wrap(view).setTranslationY(value);
+            } else {
+                view.setTranslationY(value);
+            }
+        }
+
+        @Override
+        public Float get(View view) {
+            return AnimatorProxy.NEEDS_PROXY ? AnimatorProxy.wrap(view).getTranslationY() : view.getTranslationY();
+        }
+    };
+
+    public static final FloatProperty<View> SCALE_X = new FloatProperty<View>("scaleX") {
+        @Override
+        public void setValue(View view, float value) {
+            if (AnimatorProxy.NEEDS_PROXY) {
+                AnimatorProxy.wrap(view).setScaleX(value);
+            } else {
+                view.setScaleX(value);
+            }
+        }
+
+        @Override
+        public Float get(View view) {
+            return AnimatorProxy.NEEDS_PROXY ? AnimatorProxy.wrap(view).getScaleX() : view.getScaleX();
+        }
+    };
+
+    public static final FloatProperty<View> SCALE_Y = new FloatProperty<View>("scaleY") {
+        @Override
+        public void setValue(View view, float value) {
+            if (AnimatorProxy.NEEDS_PROXY) {
+                AnimatorProxy.wrap(view).setScaleY(value);
+            } else {
+                view.setScaleY(value);
+            }
+        }
+
+        @Override
+        public Float get(View view) {
+            return AnimatorProxy.NEEDS_PROXY ? AnimatorProxy.wrap(view).getScaleY() : view.getScaleY();
+        }
+    };
+
+    private static final HashMap<String, FloatProperty<View>> PROPERTIES =
+            new HashMap<String, FloatProperty<View>>();
+    static {
+        PROPERTIES.put(ALPHA.getName(), ALPHA);
+        PROPERTIES.put(TRANSLATION_X.getName(), TRANSLATION_X);
+        PROPERTIES.put(TRANSLATION_Y.getName(), TRANSLATION_Y);
+        PROPERTIES.put(SCALE_X.getName(), SCALE_X);
+        PROPERTIES.put(SCALE_Y.getName(), SCALE_Y);
+    }
+
+    /**
+     * @return The built-in property with the given name, or null if there is
+     *         none and the property has to be found by reflection.
+     */
+    public static FloatProperty<View> get(String name) {
+        return PROPERTIES.get(name);
+    }
+
+    private ViewProperties() {
+    }
+}
@@ -10,6 +10,8 @@ import android.view.View;
 import android.view.animation.Animation;
 import android.view.animation.Transformation;
 
+import com.actionbarsherlock.internal.nineoldandroids.animation.ValueAnimator;
+
 public final class AnimatorProxy extends Animation {
     public static final boolean NEEDS_PROXY = Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB;
 
@@ -17,6 +19,13 @@ public final class AnimatorProxy extends Animation {
             new WeakHashMap<View, AnimatorProxy>();
 
     public static AnimatorProxy wrap(View view) {
+        // The proxy is installed as the animation of its view, which makes for a cheap lookup
+        // unless the view's animation has been cleared or replaced since.
+        Animation animation = view.getAnimation();
+        if (animation instanceof AnimatorProxy
+                && ((AnimatorProxy) animation).mView.get() == view) {
+            return (AnimatorProxy) animation;
+        }
         AnimatorProxy proxy = PROXIES.get(view);
         if (proxy == null) {
             proxy = new AnimatorProxy(view);
@@ -37,6 +46,17 @@ public final class AnimatorProxy extends Animation {
     private final RectF mAfter = new RectF();
     private final Matrix mTempMatrix = new Matrix();
 
+    // Changes made during an animation frame are only invalidated once the frame is done
+    private boolean mInvalidatePending;
+    private boolean mAlphaChanged;
+    private boolean mTransformChanged;
+    private final Runnable mInvalidate = new Runnable() {
+        @Override
+        public void run() {
+            invalidate();
+        }
+    };
+
     private AnimatorProxy(View view) {
         setDuration(0); //perform transformation immediately
         setFillAfter(true); //persist transformation beyond duration
@@ -50,10 +70,8 @@ public final class AnimatorProxy extends Animation {
     public void setAlpha(float alpha) {
         if (mAlpha != alpha) {
             mAlpha = alpha;
-            View view = mView.get();
-            if (view != null) {
-                view.invalidate();
-            }
+            mAlphaChanged = true;
+            scheduleInvalidate();
         }
     }
     public float getScaleX() {
@@ -125,21 +143,48 @@ public final class AnimatorProxy extends Animation {
     }
 
     private void prepareForUpdate() {
+        if (mTransformChanged) {
+            // The rect from before the first change of this frame is what needs redrawing
+            return;
+        }
         View view = mView.get();
         if (view != null) {
             computeRect(mBefore, view);
         }
     }
     private void invalidateAfterUpdate() {
+        mTransformChanged = true;
+        scheduleInvalidate();
+    }
+    private void scheduleInvalidate() {
+        if (mInvalidatePending) {
+            return;
+        }
+        if (ValueAnimator.runAtEndOfFrame(mInvalidate)) {
+            mInvalidatePending = true;
+        } else {
+            invalidate();
+        }
+    }
+    private void invalidate() {
+        final boolean alphaChanged = mAlphaChanged;
+        final boolean transformChanged = mTransformChanged;
+        mInvalidatePending = false;
+        mAlphaChanged = false;
+        mTransformChanged = false;
+
         View view = mView.get();
         if (view == null) {
             return;
         }
         View parent = (View)view.getParent();
-        if (parent == null) {
+        if (!transformChanged || parent == null) {
+            if (alphaChanged) {
+                view.invalidate();
+            }
             return;
         }
-
+        // The area invalidated for the transformation also covers a change of alpha
         view.setAnimation(this);
 
         final RectF after = mAfter;
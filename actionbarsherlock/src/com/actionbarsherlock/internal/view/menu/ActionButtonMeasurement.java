@@ -0,0 +1,52 @@
+package com.actionbarsherlock.internal.view.menu;
+
+/**
+ * Measured size of an item's action button along with the space it was
+ * measured for. The owning {@link MenuItemImpl} invalidates it whenever
+ * something shown by the button changes, and all measurements are dropped
+ * on configuration changes.
+ */
+final class ActionButtonMeasurement {
+    /** Bumped to invalidate every measurement at once. */
+    private static int sGeneration;
+
+    private int mGeneration = -1;
+    private int mCellSize;
+    private int mWidthSpec;
+    private int mHeightSpec;
+
+    int cellsUsed;
+    int measuredWidth;
+    boolean expandable;
+
+    /**
+     * Invalidate the measurements of all items, e.g. because the
+     * configuration changed.
+     */
+    static void invalidateAll() {
+        sGeneration++;
+    }
+
+    void invalidate() {
+        mGeneration = -1;
+    }
+
+    /**
+     * Whether this holds a valid measurement for the given space.
+     */
+    boolean matches(int cellSize, int widthSpec, int heightSpec) {
+        return mGeneration == sGeneration && mCellSize == cellSize
+                && mWidthSpec == widthSpec && mHeightSpec == heightSpec;
+    }
+
+    void set(int cellSize, int widthSpec, int heightSpec, int cellsUsed, int measuredWidth,
+            boolean expandable) {
+        mGeneration = sGeneration;
+        mCellSize = cellSize;
+        mWidthSpec = widthSpec;
+        mHeightSpec = heightSpec;
+        this.cellsUsed = cellsUsed;
+        this.measuredWidth = measuredWidth;
+        this.expandable = expandable;
+    }
+}
@@ -40,6 +40,9 @@ public class ActionMenu implements Menu {
 
     private ArrayList<ActionMenuItem> mItems;
 
+    /** Nesting depth of {@link #beginBatch()} calls. */
+    private int mBatchDepth;
+
     public ActionMenu(Context context) {
         mContext = context;
         mItems = new ArrayList<ActionMenuItem>();
@@ -261,4 +264,18 @@ public class ActionMenu implements Menu {
     public int size() {
         return mItems.size();
     }
+
+    @Override
+    public void beginBatch() {
+        // No presenters to update, only track the nesting.
+        mBatchDepth++;
+    }
+
+    @Override
+    public void commitBatch() {
+        if (mBatchDepth == 0) {
+            throw new IllegalStateException("commitBatch() called without beginBatch().");
+        }
+        mBatchDepth--;
+    }
 }
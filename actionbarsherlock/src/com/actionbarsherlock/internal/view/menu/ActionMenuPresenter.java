@@ -26,7 +26,7 @@ import android.content.res.Resources;
 import android.os.Build;
 import android.os.Parcel;
 import android.os.Parcelable;
-import android.util.SparseBooleanArray;
+import android.util.SparseArray;
 import android.view.SoundEffectConstants;
 import android.view.View;
 import android.view.View.MeasureSpec;
@@ -61,7 +61,10 @@ public class ActionMenuPresenter extends BaseMenuPresenter
     private int mMinCellSize;
 
     // Group IDs that have been added as actions - used temporarily, allocated here for reuse.
-    private final SparseBooleanArray mActionButtonGroups = new SparseBooleanArray();
+    private final SparseArray<ActionButtonGroup> mActionButtonGroups =
+            new SparseArray<ActionButtonGroup>();
+
+    private final ActionButtonMeasurement mScrapMeasurement = new ActionButtonMeasurement();
 
     private View mScrapActionButtonView;
 
@@ -115,6 +118,7 @@ public class ActionMenuPresenter extends BaseMenuPresenter
 
         // Drop a scrap view as it may no longer reflect the proper context/config.
         mScrapActionButtonView = null;
+        ActionButtonMeasurement.invalidateAll();
     }
 
     public static boolean reserveOverflow(Context context) {
@@ -132,6 +136,7 @@ public class ActionMenuPresenter extends BaseMenuPresenter
     }
 
     public void onConfigurationChanged(Configuration newConfig) {
+        ActionButtonMeasurement.invalidateAll();
         if (!mMaxItemsSet) {
             mMaxItems = getResources_getInteger(mContext,
                     R.integer.abs__max_action_buttons);
@@ -403,8 +408,12 @@ public class ActionMenuPresenter extends BaseMenuPresenter
         }
         maxActions -= requiredItems;
 
-        final SparseBooleanArray seenGroups = mActionButtonGroups;
-        seenGroups.clear();
+        final SparseArray<ActionButtonGroup> seenGroups = mActionButtonGroups;
+        for (int i = seenGroups.size() - 1; i >= 0; i--) {
+            final ActionButtonGroup group = seenGroups.valueAt(i);
+            group.hasActionButton = false;
+            group.members.clear();
+        }
 
         int cellSize = 0;
         int cellsRemaining = 0;
@@ -417,52 +426,49 @@ public class ActionMenuPresenter extends BaseMenuPresenter
         // Flag as many more requested items as will fit.
         for (int i = 0; i < itemsSize; i++) {
             MenuItemImpl item = visibleItems.get(i);
+            final int groupId = item.getGroupId();
+            ActionButtonGroup group = null;
+            if (groupId != 0) {
+                group = seenGroups.get(groupId);
+                if (group == null) {
+                    group = new ActionButtonGroup();
+                    seenGroups.put(groupId, group);
+                }
+            }
 
             if (item.requiresActionButton()) {
-                View v = getItemView(item, mScrapActionButtonView, parent);
-                if (mScrapActionButtonView == null) {
-                    mScrapActionButtonView = v;
-                }
+                final ActionButtonMeasurement measurement =
+                        measureActionButton(item, parent, cellSize, cellsRemaining, querySpec);
                 if (mStrictWidthLimit) {
-                    cellsRemaining -= ActionMenuView.measureChildForCells(v,
-                            cellSize, cellsRemaining, querySpec, 0);
-                } else {
-                    v.measure(querySpec, querySpec);
+                    cellsRemaining -= measurement.cellsUsed;
                 }
-                final int measuredWidth = v.getMeasuredWidth();
+                final int measuredWidth = measurement.measuredWidth;
                 widthLimit -= measuredWidth;
                 if (firstActionWidth == 0) {
                     firstActionWidth = measuredWidth;
                 }
-                final int groupId = item.getGroupId();
-                if (groupId != 0) {
-                    seenGroups.put(groupId, true);
+                if (group != null) {
+                    group.hasActionButton = true;
                 }
                 item.setIsActionButton(true);
             } else if (item.requestsActionButton()) {
                 // Items in a group with other items that already have an action slot
                 // can break the max actions rule, but not the width limit.
-                final int groupId = item.getGroupId();
-                final boolean inGroup = seenGroups.get(groupId);
+                final boolean inGroup = group != null && group.hasActionButton;
                 boolean isAction = (maxActions > 0 || inGroup) && widthLimit > 0 &&
                         (!mStrictWidthLimit || cellsRemaining > 0);
 
                 if (isAction) {
-                    View v = getItemView(item, mScrapActionButtonView, parent);
-                    if (mScrapActionButtonView == null) {
-                        mScrapActionButtonView = v;
-                    }
+                    final ActionButtonMeasurement measurement =
+                            measureActionButton(item, parent, cellSize, cellsRemaining, querySpec);
                     if (mStrictWidthLimit) {
-                        final int cells = ActionMenuView.measureChildForCells(v,
-                                cellSize, cellsRemaining, querySpec, 0);
+                        final int cells = measurement.cellsUsed;
                         cellsRemaining -= cells;
                         if (cells == 0) {
                             isAction = false;
                         }
-                    } else {
-                        v.measure(querySpec, querySpec);
                     }
-                    final int measuredWidth = v.getMeasuredWidth();
+                    final int measuredWidth = measurement.measuredWidth;
                     widthLimit -= measuredWidth;
                     if (firstActionWidth == 0) {
                         firstActionWidth = measuredWidth;
@@ -476,29 +482,69 @@ public class ActionMenuPresenter extends BaseMenuPresenter
                     }
                 }
 
-                if (isAction && groupId != 0) {
-                    seenGroups.put(groupId, true);
+                if (isAction && group != null) {
+                    group.hasActionButton = true;
                 } else if (inGroup) {
                     // We broke the width limit. Demote the whole group, they all overflow now.
-                    seenGroups.put(groupId, false);
-                    for (int j = 0; j < i; j++) {
-                        MenuItemImpl areYouMyGroupie = visibleItems.get(j);
-                        if (areYouMyGroupie.getGroupId() == groupId) {
-                            // Give back the action slot
-                            if (areYouMyGroupie.isActionButton()) maxActions++;
-                            areYouMyGroupie.setIsActionButton(false);
-                        }
+                    group.hasActionButton = false;
+                    final ArrayList<MenuItemImpl> groupies = group.members;
+                    for (int j = 0, count = groupies.size(); j < count; j++) {
+                        MenuItemImpl areYouMyGroupie = groupies.get(j);
+                        // Give back the action slot
+                        if (areYouMyGroupie.isActionButton()) maxActions++;
+                        areYouMyGroupie.setIsActionButton(false);
                     }
+                    // They stay overflowed, no need to visit them again.
+                    groupies.clear();
                 }
 
                 if (isAction) maxActions--;
 
                 item.setIsActionButton(isAction);
             }
+
+            if (group != null) {
+                group.members.add(item);
+            }
         }
         return true;
     }
 
+    /**
+     * Measures the action button of an item the way {@link ActionMenuView}
+     * will. Buttons showing the item's title and icon keep their measurement
+     * on the item until it changes. Custom action views are measured every
+     * time.
+     */
+    private ActionButtonMeasurement measureActionButton(MenuItemImpl item, ViewGroup parent,
+            int cellSize, int cellsRemaining, int querySpec) {
+        final boolean isButton = item.getActionView() == null || item.hasCollapsibleActionView();
+        final int widthSpec = mStrictWidthLimit
+                ? MeasureSpec.makeMeasureSpec(cellSize * cellsRemaining, MeasureSpec.AT_MOST)
+                : querySpec;
+
+        final ActionButtonMeasurement measurement = isButton
+                ? item.getActionButtonMeasurement(false) : mScrapMeasurement;
+        if (isButton && measurement.matches(cellSize, widthSpec, querySpec)) {
+            return measurement;
+        }
+
+        View v = getItemView(item, mScrapActionButtonView, parent);
+        if (mScrapActionButtonView == null) {
+            mScrapActionButtonView = v;
+        }
+        int cellsUsed = 0;
+        if (mStrictWidthLimit) {
+            cellsUsed = ActionMenuView.measureChildForCells(v,
+                    cellSize, cellsRemaining, querySpec, 0);
+        } else {
+            v.measure(querySpec, querySpec);
+        }
+
+        measurement.set(cellSize, widthSpec, querySpec, cellsUsed, v.getMeasuredWidth(), false);
+        return measurement;
+    }
+
     @Override
     public void onCloseMenu(MenuBuilder menu, boolean allMenusAreClosing) {
         dismissPopupMenus();
@@ -534,6 +580,15 @@ public class ActionMenuPresenter extends BaseMenuPresenter
         }
     }
 
+    /**
+     * Flagging state of a menu group: whether one of its items got an action
+     * button and the items of the group flagged so far.
+     */
+    private static class ActionButtonGroup {
+        boolean hasActionButton;
+        final ArrayList<MenuItemImpl> members = new ArrayList<MenuItemImpl>();
+    }
+
     private static class SavedState implements Parcelable {
         public int openSubMenuId;
 
@@ -74,6 +74,7 @@ public class ActionMenuView extends IcsLinearLayout implements MenuBuilder.ItemI
         if (IS_FROYO) {
             super.onConfigurationChanged(newConfig);
         }
+        ActionButtonMeasurement.invalidateAll();
         mPresenter.updateMenuView(false);
 
         if (mPresenter != null && mPresenter.isOverflowMenuShowing()) {
@@ -179,7 +180,7 @@ public class ActionMenuView extends IcsLinearLayout implements MenuBuilder.ItemI
             // Overflow always gets 1 cell. No more, no less.
             final int cellsAvailable = lp.isOverflowButton ? 1 : cellsRemaining;
 
-            final int cellsUsed = measureChildForCells(child, cellSize, cellsAvailable,
+            final int cellsUsed = measureChildForCellsCached(child, cellSize, cellsAvailable,
                     heightMeasureSpec, heightPadding);
 
             maxCellsUsed = Math.max(maxCellsUsed, cellsUsed);
@@ -309,17 +310,20 @@ public class ActionMenuView extends IcsLinearLayout implements MenuBuilder.ItemI
             cellsRemaining = 0;
         }
 
-        // Remeasure any items that have had extra space allocated to them.
-        if (needsExpansion) {
-            int heightSpec = MeasureSpec.makeMeasureSpec(heightSize - heightPadding, heightMode);
-            for (int i = 0; i < childCount; i++) {
-                final View child = getChildAt(i);
-                final LayoutParams lp = (LayoutParams) child.getLayoutParams();
-
-                if (!lp.expanded) continue;
+        // Remeasure any items that have had extra space allocated to them, and
+        // items measured earlier at a size they no longer have.
+        final int heightSpec = MeasureSpec.makeMeasureSpec(heightSize - heightPadding, heightMode);
+        for (int i = 0; i < childCount; i++) {
+            final View child = getChildAt(i);
+            final LayoutParams lp = (LayoutParams) child.getLayoutParams();
 
+            if (lp.expanded) {
                 final int width = lp.cellsUsed * cellSize + lp.extraPixels;
                 child.measure(MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY), heightSpec);
+            } else if (child.getVisibility() != GONE && child instanceof ActionMenuItemView
+                    && child.getMeasuredWidth() != lp.cellsUsed * cellSize) {
+                child.measure(MeasureSpec.makeMeasureSpec(lp.cellsUsed * cellSize,
+                        MeasureSpec.EXACTLY), heightSpec);
             }
         }
 
@@ -331,6 +335,41 @@ public class ActionMenuView extends IcsLinearLayout implements MenuBuilder.ItemI
         //UNUSED mMeasuredExtraWidth = cellsRemaining * cellSize;
     }
 
+    /**
+     * Like {@link #measureChildForCells} but skips measuring generated item
+     * views whose item and available space are the same as when they were
+     * last measured. Their measured width may still be the one of an earlier
+     * expansion, which is corrected after all cells are distributed.
+     */
+    private static int measureChildForCellsCached(View child, int cellSize, int cellsRemaining,
+            int parentHeightMeasureSpec, int parentHeightPadding) {
+        final MenuItemImpl item = child instanceof ActionMenuItemView ?
+                ((ActionMenuItemView) child).getItemData() : null;
+        if (item == null) {
+            return measureChildForCells(child, cellSize, cellsRemaining,
+                    parentHeightMeasureSpec, parentHeightPadding);
+        }
+
+        final int widthSpec = MeasureSpec.makeMeasureSpec(cellSize * cellsRemaining,
+                MeasureSpec.AT_MOST);
+        final int heightSpec = MeasureSpec.makeMeasureSpec(
+                MeasureSpec.getSize(parentHeightMeasureSpec) - parentHeightPadding,
+                MeasureSpec.getMode(parentHeightMeasureSpec));
+        final ActionButtonMeasurement measurement = item.getActionButtonMeasurement(true);
+        final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+        if (!child.isLayoutRequested() && measurement.matches(cellSize, widthSpec, heightSpec)) {
+            lp.expandable = measurement.expandable;
+            lp.cellsUsed = measurement.cellsUsed;
+            return measurement.cellsUsed;
+        }
+
+        final int cellsUsed = measureChildForCells(child, cellSize, cellsRemaining,
+                parentHeightMeasureSpec, parentHeightPadding);
+        measurement.set(cellSize, widthSpec, heightSpec, cellsUsed, child.getMeasuredWidth(),
+                lp.expandable);
+        return cellsUsed;
+    }
+
     /**
      * Measure a child view to fit within cell-based formatting. The child's width
      * will be measured to a whole multiple of cellSize.
@@ -84,6 +84,14 @@ public abstract class BaseMenuPresenter implements MenuPresenter {
         final ViewGroup parent = (ViewGroup) mMenuView;
         if (parent == null) return;
 
+        if (!cleared && mMenu != null) {
+            final ArrayList<MenuItemImpl> changedItems = mMenu.getChangedItems();
+            if (changedItems != null) {
+                rebindItemViews(parent, changedItems);
+                return;
+            }
+        }
+
         int childIndex = 0;
         if (mMenu != null) {
             mMenu.flagActionItems();
@@ -117,6 +125,26 @@ public abstract class BaseMenuPresenter implements MenuPresenter {
         }
     }
 
+    /**
+     * Rebinds only the item views presenting the given items. Used when nothing but
+     * properties of these items changed, so every view is already in place.
+     *
+     * @param parent Menu view holding the item views
+     * @param changedItems Items whose views should be rebound
+     */
+    private void rebindItemViews(ViewGroup parent, ArrayList<MenuItemImpl> changedItems) {
+        final int childCount = parent.getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            final View child = parent.getChildAt(i);
+            if (child instanceof MenuView.ItemView) {
+                final MenuItemImpl item = ((MenuView.ItemView) child).getItemData();
+                if (item != null && changedItems.contains(item)) {
+                    getItemView(item, child, parent);
+                }
+            }
+        }
+    }
+
     /**
      * Add an item view at the given index.
      *
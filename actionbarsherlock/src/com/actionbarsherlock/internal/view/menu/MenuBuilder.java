@@ -19,6 +19,7 @@ package com.actionbarsherlock.internal.view.menu;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -34,7 +35,9 @@ import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Parcelable;
+import android.text.TextUtils;
 import android.util.SparseArray;
+import android.util.SparseIntArray;
 import android.view.ContextMenu.ContextMenuInfo;
 import android.view.KeyCharacterMap;
 import android.view.KeyEvent;
@@ -98,6 +101,11 @@ public class MenuBuilder implements Menu {
      * fetched from {@link #getVisibleItems()}
      */
     private boolean mIsVisibleItemsStale;
+    /**
+     * Items whose visibility changed since {@link #mVisibleItems} was last fetched. These are
+     * patched into the existing list instead of rebuilding it, unless it is stale anyway.
+     */
+    private ArrayList<MenuItemImpl> mPendingVisibilityChanges;
 
     /**
      * Contains only the items that should appear in the Action Bar, if present.
@@ -114,6 +122,21 @@ public class MenuBuilder implements Menu {
      */
     private boolean mIsActionItemsStale;
 
+    /**
+     * Maps each id to the first item (in menu order) that has it, including the
+     * items of any sub menus. This is what {@link #findItem(int)} returns.
+     */
+    private SparseArray<MenuItemImpl> mItemIdIndex;
+    /** Spare id index, reused when the items are replaced all at once. */
+    private SparseArray<MenuItemImpl> mRebuiltItemIdIndex;
+
+    /** Maps each id to the position of the first item in {@link #mItems} that has it. */
+    private final SparseIntArray mItemPositionIndex = new SparseIntArray();
+    /** Maps each group to the position of its first item in {@link #mItems}. */
+    private final SparseIntArray mGroupStartIndex = new SparseIntArray();
+    /** Maps each group to the position of its last item in {@link #mItems}. */
+    private final SparseIntArray mGroupEndIndex = new SparseIntArray();
+
     /**
      * Default value for how added items should show in the action list.
      */
@@ -146,12 +169,49 @@ public class MenuBuilder implements Menu {
     private boolean mPreventDispatchingItemsChanged = false;
     private boolean mItemsChangedWhileDispatchPrevented = false;
 
+    /** Nesting depth of {@link #beginBatch()} calls. */
+    private int mBatchDepth;
+    /** Whether dispatching should resume once the outermost batch is committed. */
+    private boolean mResumeDispatchAfterBatch;
+
+    /**
+     * Items whose properties changed since presenters were last updated. When nothing
+     * else changed, presenters only need to rebind the views of these items.
+     */
+    private ArrayList<MenuItemImpl> mChangedItems = new ArrayList<MenuItemImpl>();
+    /**
+     * The changed items of the presenter update currently being dispatched, or null when
+     * presenters must update every view. Swapped with {@link #mChangedItems} on dispatch.
+     */
+    private ArrayList<MenuItemImpl> mDispatchedChangedItems = new ArrayList<MenuItemImpl>();
+    private boolean mIsDispatchingChangedItems;
+    /**
+     * Whether a change since presenters were last updated cannot be described by
+     * {@link #mChangedItems} alone, such as a structural or menu-wide change.
+     */
+    private boolean mAllItemsChanged;
+    /** Whether items moved between the action partitions since presenters were last updated. */
+    private boolean mActionItemsMoved;
+
     private boolean mOptionalIconsVisible = false;
 
     private boolean mIsClosing = false;
 
     private ArrayList<MenuItemImpl> mTempShortcutItemList = new ArrayList<MenuItemImpl>();
 
+    /** Items reachable from this menu with a shortcut in the current keyboard mode, in menu order. */
+    private final ArrayList<MenuItemImpl> mShortcutItems = new ArrayList<MenuItemImpl>();
+    /** The same items by shortcut character. */
+    private final SparseArray<ArrayList<MenuItemImpl>> mShortcutIndex =
+            new SparseArray<ArrayList<MenuItemImpl>>();
+    private boolean mIsShortcutIndexStale = true;
+    private boolean mShortcutIndexQwerty;
+    /** Reused to look up the chars of a key event. */
+    @SuppressWarnings("deprecation")
+    private final KeyCharacterMap.KeyData mShortcutKeyData = new KeyCharacterMap.KeyData();
+    /** The virtual keyboard, loaded by the first {@link #setQwertyModeFromKeyboard()}. */
+    private KeyCharacterMap mVirtualKeyCharacterMap;
+
     private CopyOnWriteArrayList<WeakReference<MenuPresenter>> mPresenters =
             new CopyOnWriteArrayList<WeakReference<MenuPresenter>>();
 
@@ -195,11 +255,14 @@ public class MenuBuilder implements Menu {
 
         mVisibleItems = new ArrayList<MenuItemImpl>();
         mIsVisibleItemsStale = true;
+        mPendingVisibilityChanges = new ArrayList<MenuItemImpl>();
 
         mActionItems = new ArrayList<MenuItemImpl>();
         mNonActionItems = new ArrayList<MenuItemImpl>();
         mIsActionItemsStale = true;
 
+        mItemIdIndex = new SparseArray<MenuItemImpl>();
+
         setShortcutsVisibleInner(true);
     }
 
@@ -237,9 +300,27 @@ public class MenuBuilder implements Menu {
     }
 
     private void dispatchPresenterUpdate(boolean cleared) {
-        if (mPresenters.isEmpty()) return;
+        if (mPresenters.isEmpty()) {
+            mChangedItems.clear();
+            mAllItemsChanged = false;
+            return;
+        }
 
         stopDispatchingItemsChanged();
+
+        // Only offer the changed items when they are the sole difference to what
+        // presenters currently show. Re-flagging first reveals any partition moves.
+        if (!cleared && !mAllItemsChanged) {
+            flagActionItems();
+        }
+        cleared |= mAllItemsChanged || mActionItemsMoved;
+
+        final ArrayList<MenuItemImpl> changedItems = mChangedItems;
+        mChangedItems = mDispatchedChangedItems;
+        mDispatchedChangedItems = changedItems;
+        mIsDispatchingChangedItems = !cleared;
+        mAllItemsChanged = false;
+
         for (WeakReference<MenuPresenter> ref : mPresenters) {
             final MenuPresenter presenter = ref.get();
             if (presenter == null) {
@@ -248,9 +329,23 @@ public class MenuBuilder implements Menu {
                 presenter.updateMenuView(cleared);
             }
         }
+
+        // Presenters have now caught up with the current partitions.
+        mActionItemsMoved = false;
+        mIsDispatchingChangedItems = false;
+        changedItems.clear();
         startDispatchingItemsChanged();
     }
 
+    /**
+     * Returns the items whose properties changed when presenters are being updated
+     * only because of those changes, so that they can rebind just the views of these
+     * items. Returns null if every item view must be updated.
+     */
+    ArrayList<MenuItemImpl> getChangedItems() {
+        return mIsDispatchingChangedItems ? mDispatchedChangedItems : null;
+    }
+
     private boolean dispatchSubMenuSelected(SubMenuBuilder subMenu) {
         if (mPresenters.isEmpty()) return false;
 
@@ -403,7 +498,9 @@ public class MenuBuilder implements Menu {
             item.setMenuInfo(mCurrentMenuInfo);
         }
 
-        mItems.add(findInsertIndex(mItems, ordering), item);
+        final int index = findInsertIndex(mItems, ordering);
+        mItems.add(index, item);
+        onItemAdded(item, index);
         onItemsChanged(true);
 
         return item;
@@ -507,7 +604,8 @@ public class MenuBuilder implements Menu {
     private void removeItemAtInt(int index, boolean updateChildrenOnMenuViews) {
         if ((index < 0) || (index >= mItems.size())) return;
 
-        mItems.remove(index);
+        final MenuItemImpl item = mItems.remove(index);
+        onItemRemoved(item, index);
 
         if (updateChildrenOnMenuViews) onItemsChanged(true);
     }
@@ -531,9 +629,366 @@ public class MenuBuilder implements Menu {
         }
         mItems.clear();
 
+        mItemPositionIndex.clear();
+        mGroupStartIndex.clear();
+        mGroupEndIndex.clear();
+        final SparseArray<MenuItemImpl> idIndex = mItemIdIndex;
+        for (int i = idIndex.size() - 1; i >= 0; i--) {
+            final int id = idIndex.keyAt(i);
+            idIndex.delete(id);
+            onItemIdChanged(id);
+        }
+        onItemIndexChanged();
+
+        onItemsChanged(true);
+    }
+
+    /**
+     * Updates the item indices after an item has been inserted into {@link #mItems}.
+     * Items after it move up by one, the entries of its id and group are updated
+     * in place.
+     *
+     * @param item The item that was inserted.
+     * @param index The position at which it was inserted.
+     */
+    private void onItemAdded(MenuItemImpl item, int index) {
+        shiftPositions(index, 1);
+
+        final int id = item.getItemId();
+        final int firstOfId = mItemPositionIndex.get(id, -1);
+        if (firstOfId < 0 || index < firstOfId) {
+            mItemPositionIndex.put(id, index);
+        }
+        final int group = item.getGroupId();
+        final int groupStart = mGroupStartIndex.get(group, -1);
+        if (groupStart < 0) {
+            mGroupStartIndex.put(group, index);
+            mGroupEndIndex.put(group, index);
+        } else if (index < groupStart) {
+            mGroupStartIndex.put(group, index);
+        } else if (index > mGroupEndIndex.get(group)) {
+            mGroupEndIndex.put(group, index);
+        }
+
+        if (mItemIdIndex.get(id) == null) {
+            mItemIdIndex.put(id, item);
+            onItemIdChanged(id);
+        } else if (index != mItems.size() - 1) {
+            // May come before the item that currently has the id.
+            reindexItemId(id);
+        }
+        if (item.hasSubMenu()) {
+            final SparseArray<MenuItemImpl> subIndex = ((MenuBuilder) item.getSubMenu()).mItemIdIndex;
+            for (int i = 0; i < subIndex.size(); i++) {
+                reindexItemId(subIndex.keyAt(i));
+            }
+        }
+        onItemIndexChanged();
+    }
+
+    /**
+     * Updates the item indices after an item has been removed from {@link #mItems}.
+     * Items after it move down by one, the entries of its id and group, and of
+     * the ids it held in its sub menu, are updated in place.
+     *
+     * @param item The item that was removed.
+     * @param index The position it was removed from.
+     */
+    private void onItemRemoved(MenuItemImpl item, int index) {
+        final int id = item.getItemId();
+        final int group = item.getGroupId();
+        final boolean wasFirstOfId = mItemPositionIndex.get(id, -1) == index;
+        final int groupStart = mGroupStartIndex.get(group);
+        final int groupEnd = mGroupEndIndex.get(group);
+
+        shiftPositions(index + 1, -1);
+
+        if (wasFirstOfId) {
+            final int next = indexOfItemId(id, index);
+            if (next >= 0) {
+                mItemPositionIndex.put(id, next);
+            } else {
+                mItemPositionIndex.delete(id);
+            }
+        }
+        if (groupStart == groupEnd) {
+            mGroupStartIndex.delete(group);
+            mGroupEndIndex.delete(group);
+        } else if (groupStart == index) {
+            int first = index;
+            while (mItems.get(first).getGroupId() != group) {
+                first++;
+            }
+            mGroupStartIndex.put(group, first);
+        } else if (groupEnd == index) {
+            int last = index - 1;
+            while (mItems.get(last).getGroupId() != group) {
+                last--;
+            }
+            mGroupEndIndex.put(group, last);
+        }
+
+        if (mItemIdIndex.get(id) == item) {
+            reindexItemId(id);
+        }
+        if (item.hasSubMenu()) {
+            final SparseArray<MenuItemImpl> subIndex = ((MenuBuilder) item.getSubMenu()).mItemIdIndex;
+            for (int i = 0; i < subIndex.size(); i++) {
+                final int subId = subIndex.keyAt(i);
+                if (mItemIdIndex.get(subId) == subIndex.valueAt(i)) {
+                    reindexItemId(subId);
+                }
+            }
+        }
+        onItemIndexChanged();
+    }
+
+    /**
+     * Moves the indexed positions at or after a position.
+     *
+     * @param start The first position to move.
+     * @param delta The amount to move by.
+     */
+    private void shiftPositions(int start, int delta) {
+        shiftPositions(mItemPositionIndex, start, delta);
+        shiftPositions(mGroupStartIndex, start, delta);
+        shiftPositions(mGroupEndIndex, start, delta);
+    }
+
+    private static void shiftPositions(SparseIntArray positions, int start, int delta) {
+        final int size = positions.size();
+        for (int i = 0; i < size; i++) {
+            final int position = positions.valueAt(i);
+            if (position >= start) {
+                positions.put(positions.keyAt(i), position + delta);
+            }
+        }
+    }
+
+    private int indexOfItemId(int id, int start) {
+        final int itemsSize = mItems.size();
+        for (int i = start; i < itemsSize; i++) {
+            if (mItems.get(i).getItemId() == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Recomputes the id index entry of a single id, after an item with it was
+     * added to or removed from this menu or one of its sub menus. Sub menus are
+     * looked up through their own index rather than walked.
+     *
+     * @param id The id.
+     */
+    private void reindexItemId(int id) {
+        MenuItemImpl first = null;
+        final int itemsSize = mItems.size();
+        for (int i = 0; i < itemsSize && first == null; i++) {
+            final MenuItemImpl item = mItems.get(i);
+            if (item.getItemId() == id) {
+                first = item;
+            } else if (item.hasSubMenu()) {
+                first = ((MenuBuilder) item.getSubMenu()).mItemIdIndex.get(id);
+            }
+        }
+
+        if (first == mItemIdIndex.get(id)) return;
+        if (first != null) {
+            mItemIdIndex.put(id, first);
+        } else {
+            mItemIdIndex.delete(id);
+        }
+        onItemIdChanged(id);
+    }
+
+    /**
+     * Updates the id index entry of an id whose entry changed in a sub menu.
+     *
+     * @param subMenuItem The item of the sub menu.
+     * @param id The id.
+     */
+    void onSubMenuItemIdChanged(MenuItemImpl subMenuItem, int id) {
+        final int position = mItemPositionIndex.get(subMenuItem.getItemId(), -1);
+        final boolean attached = position >= 0 && mItems.get(position) == subMenuItem;
+        if (attached && mItemIdIndex.get(id) == null) {
+            // Nothing else here has the id, no need to look for an earlier item.
+            final MenuItemImpl item = ((MenuBuilder) subMenuItem.getSubMenu()).mItemIdIndex.get(id);
+            if (item != null) {
+                mItemIdIndex.put(id, item);
+                onItemIdChanged(id);
+            }
+        } else {
+            // Also covers sub menus which have been removed from this menu.
+            reindexItemId(id);
+        }
+    }
+
+    /**
+     * Called when the item the id index holds for an id has changed. Sub menus
+     * pass the id on to their parent.
+     *
+     * @param id The id.
+     */
+    void onItemIdChanged(int id) {
+    }
+
+    /**
+     * Called when the set of items reachable from this menu has changed. Sub menus
+     * pass it on to their parent.
+     */
+    void onItemIndexChanged() {
+        mIsShortcutIndexStale = true;
+    }
+
+    /**
+     * Rebuilds the item indices after the items of this menu were replaced all
+     * at once, passing the ids whose entry changed on to the parent menu.
+     */
+    private void rebuildItemIndex() {
+        mItemPositionIndex.clear();
+        mGroupStartIndex.clear();
+        mGroupEndIndex.clear();
+
+        SparseArray<MenuItemImpl> index = mRebuiltItemIdIndex;
+        if (index == null) {
+            index = new SparseArray<MenuItemImpl>();
+        }
+        final int itemsSize = mItems.size();
+        for (int i = 0; i < itemsSize; i++) {
+            final MenuItemImpl item = mItems.get(i);
+            indexPosition(item, i);
+            if (index.indexOfKey(item.getItemId()) < 0) {
+                index.put(item.getItemId(), item);
+            }
+            if (item.hasSubMenu()) {
+                final SparseArray<MenuItemImpl> subIndex = ((MenuBuilder) item.getSubMenu()).mItemIdIndex;
+                final int subSize = subIndex.size();
+                for (int j = 0; j < subSize; j++) {
+                    final int id = subIndex.keyAt(j);
+                    if (index.indexOfKey(id) < 0) {
+                        index.put(id, subIndex.valueAt(j));
+                    }
+                }
+            }
+        }
+
+        final SparseArray<MenuItemImpl> previous = mItemIdIndex;
+        mItemIdIndex = index;
+        for (int i = 0; i < previous.size(); i++) {
+            final int id = previous.keyAt(i);
+            if (index.get(id) != previous.valueAt(i)) {
+                onItemIdChanged(id);
+            }
+        }
+        for (int i = 0; i < index.size(); i++) {
+            final int id = index.keyAt(i);
+            if (previous.indexOfKey(id) < 0) {
+                onItemIdChanged(id);
+            }
+        }
+        previous.clear();
+        mRebuiltItemIdIndex = previous;
+        onItemIndexChanged();
+    }
+
+    /**
+     * Records the position of an item. Items must be indexed in increasing
+     * position order so that the first item of each id and group wins.
+     */
+    private void indexPosition(MenuItemImpl item, int position) {
+        final int id = item.getItemId();
+        if (mItemPositionIndex.get(id, -1) < 0) {
+            mItemPositionIndex.put(id, position);
+        }
+        final int group = item.getGroupId();
+        if (mGroupStartIndex.get(group, -1) < 0) {
+            mGroupStartIndex.put(group, position);
+        }
+        mGroupEndIndex.put(group, position);
+    }
+
+    /**
+     * Updates this menu to match another one, typically built by running the
+     * code that created this menu again. Items that match by id, group, order
+     * and whether they have a sub menu are kept and take over the state of
+     * their counterpart, keeping action views and action providers of the
+     * same type alive. Items without a match are moved over from the other
+     * menu or removed from this one.
+     *
+     * @param source Menu to match. Its items are taken over, it must not be
+     *            used afterwards.
+     */
+    public void applyDiff(MenuBuilder source) {
+        final ArrayList<MenuItemImpl> sourceItems = source.mItems;
+        final int sourceSize = sourceItems.size();
+        final int liveSize = mItems.size();
+        final boolean[] matched = new boolean[liveSize];
+        final ArrayList<MenuItemImpl> newItems = new ArrayList<MenuItemImpl>(sourceSize);
+        boolean structureChanged = sourceSize != liveSize;
+
+        int cursor = 0;
+        for (int i = 0; i < sourceSize; i++) {
+            final MenuItemImpl sourceItem = sourceItems.get(i);
+            final int match = findDiffMatch(sourceItem, matched, cursor);
+            if (match >= 0) {
+                final MenuItemImpl item = mItems.get(match);
+                matched[match] = true;
+                cursor = match + 1;
+                structureChanged |= match != i;
+
+                item.updateFrom(sourceItem);
+                if (item.hasSubMenu()) {
+                    ((MenuBuilder) item.getSubMenu()).applyDiff(
+                            (MenuBuilder) sourceItem.getSubMenu());
+                }
+                newItems.add(item);
+            } else {
+                sourceItem.setMenu(this);
+                if (sourceItem.hasSubMenu()) {
+                    ((SubMenuBuilder) sourceItem.getSubMenu()).setParentMenu(this);
+                }
+                newItems.add(sourceItem);
+                structureChanged = true;
+            }
+        }
+
+        if (!structureChanged) return;
+
+        for (int i = 0; i < liveSize; i++) {
+            if (!matched[i] && mItems.get(i) == mExpandedItem) {
+                collapseItemActionView(mExpandedItem);
+            }
+        }
+        mItems.clear();
+        mItems.addAll(newItems);
+        rebuildItemIndex();
         onItemsChanged(true);
     }
 
+    /**
+     * Finds the first unmatched item of this menu which is equivalent to the
+     * given one, starting at a position hint. Items of menus that did not
+     * change match at the hint right away.
+     */
+    private int findDiffMatch(MenuItemImpl sourceItem, boolean[] matched, int start) {
+        final int size = mItems.size();
+        for (int n = 0; n < size; n++) {
+            final int i = (start + n) % size;
+            if (matched[i]) continue;
+
+            final MenuItemImpl item = mItems.get(i);
+            if (item.getItemId() == sourceItem.getItemId()
+                    && item.getGroupId() == sourceItem.getGroupId()
+                    && item.getOrder() == sourceItem.getOrder()
+                    && item.hasSubMenu() == sourceItem.hasSubMenu()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     void setExclusiveItemChecked(MenuItem item) {
         final int group = item.getGroupId();
 
@@ -572,11 +1027,14 @@ public class MenuBuilder implements Menu {
         for (int i = 0; i < N; i++) {
             MenuItemImpl item = mItems.get(i);
             if (item.getGroupId() == group) {
-                if (item.setVisibleInt(visible)) changedAtLeastOneItem = true;
+                if (item.setVisibleInt(visible)) {
+                    markItemVisibleChanged(item);
+                    changedAtLeastOneItem = true;
+                }
             }
         }
 
-        if (changedAtLeastOneItem) onItemsChanged(true);
+        if (changedAtLeastOneItem) dispatchItemsChanged(true);
     }
 
     public void setGroupEnabled(int group, boolean enabled) {
@@ -604,34 +1062,11 @@ public class MenuBuilder implements Menu {
     }
 
     public MenuItem findItem(int id) {
-        final int size = size();
-        for (int i = 0; i < size; i++) {
-            MenuItemImpl item = mItems.get(i);
-            if (item.getItemId() == id) {
-                return item;
-            } else if (item.hasSubMenu()) {
-                MenuItem possibleItem = item.getSubMenu().findItem(id);
-
-                if (possibleItem != null) {
-                    return possibleItem;
-                }
-            }
-        }
-
-        return null;
+        return mItemIdIndex.get(id);
     }
 
     public int findItemIndex(int id) {
-        final int size = size();
-
-        for (int i = 0; i < size; i++) {
-            MenuItemImpl item = mItems.get(i);
-            if (item.getItemId() == id) {
-                return i;
-            }
-        }
-
-        return -1;
+        return mItemPositionIndex.get(id, -1);
     }
 
     public int findGroupIndex(int group) {
@@ -639,13 +1074,17 @@ public class MenuBuilder implements Menu {
     }
 
     public int findGroupIndex(int group, int start) {
-        final int size = size();
-
-        if (start < 0) {
-            start = 0;
+        final int first = mGroupStartIndex.get(group, -1);
+        if (first < 0) {
+            return -1;
+        }
+        if (start <= first) {
+            return first;
         }
 
-        for (int i = start; i < size; i++) {
+        // Groups need not be contiguous so only the span of this group is searched.
+        final int last = mGroupEndIndex.get(group);
+        for (int i = start; i <= last; i++) {
             final MenuItemImpl item = mItems.get(i);
 
             if (item.getGroupId() == group) {
@@ -670,11 +1109,23 @@ public class MenuBuilder implements Menu {
     }
 
     public void setQwertyMode(boolean isQwerty) {
+        if (mQwertyMode == isQwerty) return;
         mQwertyMode = isQwerty;
 
         onItemsChanged(false);
     }
 
+    /**
+     * Sets the qwerty mode to match the virtual keyboard. Its key character
+     * map is loaded once and kept, the virtual keyboard does not change.
+     */
+    public void setQwertyModeFromKeyboard() {
+        if (mVirtualKeyCharacterMap == null) {
+            mVirtualKeyCharacterMap = KeyCharacterMap.load(KeyCharacterMap.VIRTUAL_KEYBOARD);
+        }
+        setQwertyMode(mVirtualKeyCharacterMap.getKeyboardType() != KeyCharacterMap.NUMERIC);
+    }
+
     /**
      * Returns the ordering across all items. This will grab the category from
      * the upper bits, find out how to order the category with respect to other
@@ -790,34 +1241,119 @@ public class MenuBuilder implements Menu {
     void findItemsWithShortcutForKey(List<MenuItemImpl> items, int keyCode, KeyEvent event) {
         final boolean qwerty = isQwertyMode();
         final int metaState = event.getMetaState();
-        final KeyCharacterMap.KeyData possibleChars = new KeyCharacterMap.KeyData();
+        final KeyCharacterMap.KeyData possibleChars = mShortcutKeyData;
         // Get the chars associated with the keyCode (i.e using any chording combo)
         final boolean isKeyCodeMapped = event.getKeyData(possibleChars);
         // The delete key is not mapped to '\b' so we treat it specially
         if (!isKeyCodeMapped && (keyCode != KeyEvent.KEYCODE_DEL)) {
             return;
         }
+        if (!isKeyCodeMapped) {
+            // Don't match the chars of an earlier key.
+            Arrays.fill(possibleChars.meta, (char) 0);
+        }
+        if ((metaState & (KeyEvent.META_SHIFT_ON | KeyEvent.META_SYM_ON)) != 0) {
+            return;
+        }
 
-        // Look for an item whose shortcut is this key.
-        final int N = mItems.size();
+        // Look up the items whose shortcut is this key.
+        ensureShortcutIndex();
+        final char directChar = possibleChars.meta[0];
+        final char altChar = possibleChars.meta[2];
+        final boolean isDelete = qwerty && keyCode == KeyEvent.KEYCODE_DEL;
+        final ArrayList<MenuItemImpl> directItems = getShortcutItems(directChar);
+        final ArrayList<MenuItemImpl> altItems = altChar != directChar ? getShortcutItems(altChar) : null;
+        final ArrayList<MenuItemImpl> deleteItems = isDelete && directChar != '\b' && altChar != '\b'
+                ? getShortcutItems('\b') : null;
+
+        final ArrayList<MenuItemImpl> matches;
+        if (altItems == null && deleteItems == null) {
+            matches = directItems;
+        } else if (directItems == null && deleteItems == null) {
+            matches = altItems;
+        } else if (directItems == null && altItems == null) {
+            matches = deleteItems;
+        } else {
+            // Several characters match, keep the items in menu order.
+            matches = mShortcutItems;
+        }
+        if (matches == null) {
+            return;
+        }
+
+        final int N = matches.size();
         for (int i = 0; i < N; i++) {
-            MenuItemImpl item = mItems.get(i);
-            if (item.hasSubMenu()) {
-                ((MenuBuilder)item.getSubMenu()).findItemsWithShortcutForKey(items, keyCode, event);
-            }
+            final MenuItemImpl item = matches.get(i);
             final char shortcutChar = qwerty ? item.getAlphabeticShortcut() : item.getNumericShortcut();
-            if (((metaState & (KeyEvent.META_SHIFT_ON | KeyEvent.META_SYM_ON)) == 0) &&
-                  (shortcutChar != 0) &&
-                  (shortcutChar == possibleChars.meta[0]
-                      || shortcutChar == possibleChars.meta[2]
-                      || (qwerty && shortcutChar == '\b' &&
-                          keyCode == KeyEvent.KEYCODE_DEL)) &&
+            if ((shortcutChar == directChar
+                      || shortcutChar == altChar
+                      || (isDelete && shortcutChar == '\b')) &&
                   item.isEnabled()) {
                 items.add(item);
             }
         }
     }
 
+    /**
+     * Returns the items with the given shortcut character, or null if there
+     * are none.
+     */
+    private ArrayList<MenuItemImpl> getShortcutItems(char shortcutChar) {
+        if (shortcutChar == 0) {
+            return null;
+        }
+        final ArrayList<MenuItemImpl> items = mShortcutIndex.get(shortcutChar);
+        return items == null || items.isEmpty() ? null : items;
+    }
+
+    /**
+     * Rebuilds the shortcut index for the current keyboard mode if items or
+     * their shortcuts changed since it was built.
+     */
+    private void ensureShortcutIndex() {
+        final boolean qwerty = isQwertyMode();
+        if (!mIsShortcutIndexStale && mShortcutIndexQwerty == qwerty) return;
+
+        mShortcutItems.clear();
+        for (int i = mShortcutIndex.size() - 1; i >= 0; i--) {
+            mShortcutIndex.valueAt(i).clear();
+        }
+        indexShortcuts(this, qwerty);
+
+        mShortcutIndexQwerty = qwerty;
+        mIsShortcutIndexStale = false;
+    }
+
+    private void indexShortcuts(MenuBuilder menu, boolean qwerty) {
+        final ArrayList<MenuItemImpl> items = menu.mItems;
+        final int N = items.size();
+        for (int i = 0; i < N; i++) {
+            final MenuItemImpl item = items.get(i);
+            if (item.hasSubMenu()) {
+                indexShortcuts((MenuBuilder) item.getSubMenu(), qwerty);
+            }
+            final char shortcutChar = qwerty ? item.getAlphabeticShortcut() : item.getNumericShortcut();
+            if (shortcutChar == 0) {
+                continue;
+            }
+
+            mShortcutItems.add(item);
+            ArrayList<MenuItemImpl> charItems = mShortcutIndex.get(shortcutChar);
+            if (charItems == null) {
+                charItems = new ArrayList<MenuItemImpl>();
+                mShortcutIndex.put(shortcutChar, charItems);
+            }
+            charItems.add(item);
+        }
+    }
+
+    /**
+     * Called when the shortcut of an item reachable from this menu changed.
+     */
+    void onItemShortcutChanged() {
+        mIsShortcutIndexStale = true;
+    }
+
     /*
      * We want to return the menu item associated with the key, but if there is no
      * ambiguity (i.e. there is only one menu item corresponding to the key) we want
@@ -841,9 +1377,8 @@ public class MenuBuilder implements Menu {
         }
 
         final int metaState = event.getMetaState();
-        final KeyCharacterMap.KeyData possibleChars = new KeyCharacterMap.KeyData();
-        // Get the chars associated with the keyCode (i.e using any chording combo)
-        event.getKeyData(possibleChars);
+        // Filled in with the chars of the key above.
+        final KeyCharacterMap.KeyData possibleChars = mShortcutKeyData;
 
         // If we have only one element, we can safely returns it
         final int size = items.size();
@@ -943,13 +1478,40 @@ public class MenuBuilder implements Menu {
      *                         (Visibility is a structural property since it affects layout.)
      */
     void onItemsChanged(boolean structureChanged) {
-        if (!mPreventDispatchingItemsChanged) {
-            if (structureChanged) {
-                mIsVisibleItemsStale = true;
-                mIsActionItemsStale = true;
-            }
+        if (structureChanged) {
+            mIsVisibleItemsStale = true;
+            mIsActionItemsStale = true;
+        }
 
-            dispatchPresenterUpdate(structureChanged);
+        mAllItemsChanged = true;
+        dispatchItemsChanged(structureChanged);
+    }
+
+    /**
+     * Called by {@link MenuItemImpl} when one of its properties that does not
+     * affect the menu structure (title, icon, checked state, ...) is changed.
+     * @param item The item that has changed.
+     */
+    void onItemPropertiesChanged(MenuItemImpl item) {
+        if (!mChangedItems.contains(item)) {
+            mChangedItems.add(item);
+        }
+        dispatchItemsChanged(false);
+    }
+
+    /**
+     * Notifies presenters of a change without touching the item lists, or
+     * defers it while dispatching is prevented.
+     *
+     * @param cleared Whether presenters should fully rebuild their views.
+     */
+    private void dispatchItemsChanged(boolean cleared) {
+        if (cleared) {
+            mAllItemsChanged = true;
+        }
+
+        if (!mPreventDispatchingItemsChanged) {
+            dispatchPresenterUpdate(cleared);
         } else {
             mItemsChangedWhileDispatchPrevented = true;
         }
@@ -968,11 +1530,39 @@ public class MenuBuilder implements Menu {
     }
 
     public void startDispatchingItemsChanged() {
+        if (mBatchDepth > 0) {
+            // The outermost batch will resume dispatching when it is committed.
+            mResumeDispatchAfterBatch = true;
+            return;
+        }
+
         mPreventDispatchingItemsChanged = false;
 
         if (mItemsChangedWhileDispatchPrevented) {
             mItemsChangedWhileDispatchPrevented = false;
-            onItemsChanged(true);
+            // Any batched change may affect item widths, so re-flag action items. Visible
+            // items were already invalidated or queued for patching by the changes themselves.
+            mIsActionItemsStale = true;
+            dispatchPresenterUpdate(false);
+        }
+    }
+
+    @Override
+    public void beginBatch() {
+        if (mBatchDepth++ == 0) {
+            mResumeDispatchAfterBatch = !mPreventDispatchingItemsChanged;
+            stopDispatchingItemsChanged();
+        }
+    }
+
+    @Override
+    public void commitBatch() {
+        if (mBatchDepth == 0) {
+            throw new IllegalStateException("commitBatch() called without beginBatch().");
+        }
+        if (--mBatchDepth == 0 && mResumeDispatchAfterBatch) {
+            mResumeDispatchAfterBatch = false;
+            startDispatchingItemsChanged();
         }
     }
 
@@ -981,9 +1571,17 @@ public class MenuBuilder implements Menu {
      * @param item The item that has gone through a visibility change.
      */
     void onItemVisibleChanged(MenuItemImpl item) {
+        markItemVisibleChanged(item);
+
         // Notify of items being changed
-        mIsVisibleItemsStale = true;
-        onItemsChanged(true);
+        dispatchItemsChanged(true);
+    }
+
+    private void markItemVisibleChanged(MenuItemImpl item) {
+        if (!mIsVisibleItemsStale) {
+            mPendingVisibilityChanges.add(item);
+        }
+        mIsActionItemsStale = true;
     }
 
     /**
@@ -993,14 +1591,20 @@ public class MenuBuilder implements Menu {
     void onItemActionRequestChanged(MenuItemImpl item) {
         // Notify of items being changed
         mIsActionItemsStale = true;
-        onItemsChanged(true);
+        dispatchItemsChanged(true);
     }
 
     ArrayList<MenuItemImpl> getVisibleItems() {
-        if (!mIsVisibleItemsStale) return mVisibleItems;
+        if (!mIsVisibleItemsStale) {
+            if (!mPendingVisibilityChanges.isEmpty()) {
+                patchVisibleItems();
+            }
+            return mVisibleItems;
+        }
 
         // Refresh the visible items
         mVisibleItems.clear();
+        mPendingVisibilityChanges.clear();
 
         final int itemsSize = mItems.size();
         MenuItemImpl item;
@@ -1009,12 +1613,52 @@ public class MenuBuilder implements Menu {
             if (item.isVisible()) mVisibleItems.add(item);
         }
 
+        // The action partitions may hold removed items, let flagActionItems refill them.
+        mActionItems.clear();
+        mNonActionItems.clear();
+        mActionItemsMoved = true;
+
         mIsVisibleItemsStale = false;
         mIsActionItemsStale = true;
 
         return mVisibleItems;
     }
 
+    /**
+     * Applies pending single item visibility changes to the visible items and the action
+     * partitions in place. Only valid while the menu structure is unchanged since the last
+     * full refresh, as every list is then still an ordered subsequence of {@link #mItems}.
+     */
+    private void patchVisibleItems() {
+        final ArrayList<MenuItemImpl> pending = mPendingVisibilityChanges;
+        final int pendingSize = pending.size();
+        for (int i = 0; i < pendingSize; i++) {
+            final MenuItemImpl item = pending.get(i);
+            if (item.isVisible()) {
+                // Find the first visible item that follows it in the full list.
+                final int itemsSize = mItems.size();
+                final int visibleSize = mVisibleItems.size();
+                int position = 0;
+                for (int j = 0; j < itemsSize; j++) {
+                    final MenuItemImpl current = mItems.get(j);
+                    if (current == item) break;
+                    if (position < visibleSize && mVisibleItems.get(position) == current) {
+                        position++;
+                    }
+                }
+                if (position == visibleSize || mVisibleItems.get(position) != item) {
+                    mVisibleItems.add(position, item);
+                }
+            } else {
+                mVisibleItems.remove(item);
+                mActionItemsMoved |= mActionItems.remove(item) | mNonActionItems.remove(item);
+            }
+        }
+        pending.clear();
+
+        mIsActionItemsStale = true;
+    }
+
     /**
      * This method determines which menu items get to be 'action items' that will appear
      * in an action bar and which items should be 'overflow items' in a secondary menu.
@@ -1055,25 +1699,43 @@ public class MenuBuilder implements Menu {
             }
         }
 
-        if (flagged) {
-            mActionItems.clear();
-            mNonActionItems.clear();
-            ArrayList<MenuItemImpl> visibleItems = getVisibleItems();
-            final int itemsSize = visibleItems.size();
-            for (int i = 0; i < itemsSize; i++) {
-                MenuItemImpl item = visibleItems.get(i);
-                if (item.isActionButton()) {
-                    mActionItems.add(item);
-                } else {
-                    mNonActionItems.add(item);
+        // If nobody flagged anything, everything is a non-action item.
+        // (This happens during a first pass with no action-item presenters.)
+        //
+        // Both partitions are ordered subsequences of the visible items, so they are
+        // patched in place by moving only the items whose action state flipped. After
+        // a structural change they start out empty and are simply refilled.
+        final ArrayList<MenuItemImpl> visibleItems = getVisibleItems();
+        final ArrayList<MenuItemImpl> actionItems = mActionItems;
+        final ArrayList<MenuItemImpl> nonActionItems = mNonActionItems;
+        int actionIndex = 0;
+        int nonActionIndex = 0;
+        final int itemsSize = visibleItems.size();
+        for (int i = 0; i < itemsSize; i++) {
+            final MenuItemImpl item = visibleItems.get(i);
+            if (flagged && item.isActionButton()) {
+                if (actionIndex < actionItems.size() && actionItems.get(actionIndex) == item) {
+                    actionIndex++;
+                    continue;
+                }
+                actionItems.add(actionIndex++, item);
+                mActionItemsMoved = true;
+                if (nonActionIndex < nonActionItems.size()
+                        && nonActionItems.get(nonActionIndex) == item) {
+                    nonActionItems.remove(nonActionIndex);
+                }
+            } else {
+                if (nonActionIndex < nonActionItems.size()
+                        && nonActionItems.get(nonActionIndex) == item) {
+                    nonActionIndex++;
+                    continue;
+                }
+                nonActionItems.add(nonActionIndex++, item);
+                mActionItemsMoved = true;
+                if (actionIndex < actionItems.size() && actionItems.get(actionIndex) == item) {
+                    actionItems.remove(actionIndex);
                 }
             }
-        } else {
-            // Nobody flagged anything, everything is a non-action item.
-            // (This happens during a first pass with no action-item presenters.)
-            mActionItems.clear();
-            mNonActionItems.clear();
-            mNonActionItems.addAll(getVisibleItems());
         }
         mIsActionItemsStale = false;
     }
@@ -1274,68 +1936,145 @@ public class MenuBuilder implements Menu {
         return mExpandedItem;
     }
 
+    /**
+     * Binds the visible overflow items to a native menu. Native items still
+     * bound to the same items are kept and only the properties that changed
+     * are written, the native menu is rebuilt only when its items differ.
+     *
+     * @param menu Native menu to bind to.
+     * @param listener Listener for clicks on native items.
+     * @param map Native items with the items they are bound to. It must be
+     *            kept along with the native menu between calls.
+     * @return Whether any item is visible.
+     */
     public boolean bindNativeOverflow(android.view.Menu menu, android.view.MenuItem.OnMenuItemClickListener listener, HashMap<android.view.MenuItem, MenuItemImpl> map) {
         final List<MenuItemImpl> nonActionItems = getNonActionItems();
         if (nonActionItems == null || nonActionItems.size() == 0) {
             return false;
         }
 
-        boolean visible = false;
-        menu.clear();
+        int visibleCount = 0;
+        boolean bound = true;
         for (MenuItemImpl nonActionItem : nonActionItems) {
             if (!nonActionItem.isVisible()) {
                 continue;
             }
-            visible = true;
-
-            android.view.MenuItem nativeItem;
-            if (nonActionItem.hasSubMenu()) {
-                android.view.SubMenu nativeSub = menu.addSubMenu(nonActionItem.getGroupId(), nonActionItem.getItemId(),
-                        nonActionItem.getOrder(), nonActionItem.getTitle());
+            bound &= visibleCount < menu.size()
+                    && isNativeItemBound(menu.getItem(visibleCount), nonActionItem, map);
+            visibleCount++;
+        }
 
-                SubMenuBuilder subMenu = (SubMenuBuilder)nonActionItem.getSubMenu();
-                for (MenuItemImpl subItem : subMenu.getVisibleItems()) {
-                    android.view.MenuItem nativeSubItem = nativeSub.add(subItem.getGroupId(), subItem.getItemId(),
-                            subItem.getOrder(), subItem.getTitle());
-
-                    nativeSubItem.setIcon(subItem.getIcon());
-                    nativeSubItem.setOnMenuItemClickListener(listener);
-                    nativeSubItem.setEnabled(subItem.isEnabled());
-                    nativeSubItem.setIntent(subItem.getIntent());
-                    nativeSubItem.setNumericShortcut(subItem.getNumericShortcut());
-                    nativeSubItem.setAlphabeticShortcut(subItem.getAlphabeticShortcut());
-                    nativeSubItem.setTitleCondensed(subItem.getTitleCondensed());
-                    nativeSubItem.setCheckable(subItem.isCheckable());
-                    nativeSubItem.setChecked(subItem.isChecked());
-
-                    if (subItem.isExclusiveCheckable()) {
-                        nativeSub.setGroupCheckable(subItem.getGroupId(), true, true);
-                    }
+        final boolean rebuild = !bound || visibleCount != menu.size();
+        if (rebuild) {
+            menu.clear();
+            map.clear();
+        }
 
-                    map.put(nativeSubItem, subItem);
-                }
+        int index = 0;
+        for (MenuItemImpl nonActionItem : nonActionItems) {
+            if (!nonActionItem.isVisible()) {
+                continue;
+            }
 
-                nativeItem = nativeSub.getItem();
+            android.view.MenuItem nativeItem;
+            if (!rebuild) {
+                nativeItem = menu.getItem(index);
+            } else if (nonActionItem.hasSubMenu()) {
+                nativeItem = menu.addSubMenu(nonActionItem.getGroupId(), nonActionItem.getItemId(),
+                        nonActionItem.getOrder(), nonActionItem.getTitle()).getItem();
             } else {
                 nativeItem = menu.add(nonActionItem.getGroupId(), nonActionItem.getItemId(),
                         nonActionItem.getOrder(), nonActionItem.getTitle());
             }
-            nativeItem.setIcon(nonActionItem.getIcon());
-            nativeItem.setOnMenuItemClickListener(listener);
-            nativeItem.setEnabled(nonActionItem.isEnabled());
-            nativeItem.setIntent(nonActionItem.getIntent());
-            nativeItem.setNumericShortcut(nonActionItem.getNumericShortcut());
-            nativeItem.setAlphabeticShortcut(nonActionItem.getAlphabeticShortcut());
-            nativeItem.setTitleCondensed(nonActionItem.getTitleCondensed());
-            nativeItem.setCheckable(nonActionItem.isCheckable());
-            nativeItem.setChecked(nonActionItem.isChecked());
-
-            if (nonActionItem.isExclusiveCheckable()) {
-                menu.setGroupCheckable(nonActionItem.getGroupId(), true, true);
+            if (rebuild) {
+                nativeItem.setOnMenuItemClickListener(listener);
+                map.put(nativeItem, nonActionItem);
+            }
+            bindNativeItem(menu, nativeItem, nonActionItem, rebuild);
+
+            if (nonActionItem.hasSubMenu()) {
+                bindNativeSubMenu(nativeItem.getSubMenu(), (SubMenuBuilder) nonActionItem.getSubMenu(),
+                        listener, map);
+            }
+            index++;
+        }
+        return visibleCount > 0;
+    }
+
+    private static void bindNativeSubMenu(android.view.SubMenu nativeSub, SubMenuBuilder subMenu,
+            android.view.MenuItem.OnMenuItemClickListener listener, HashMap<android.view.MenuItem, MenuItemImpl> map) {
+        final ArrayList<MenuItemImpl> subItems = subMenu.getVisibleItems();
+        final int count = subItems.size();
+
+        boolean bound = nativeSub.size() == count;
+        for (int i = 0; bound && i < count; i++) {
+            bound = isNativeItemBound(nativeSub.getItem(i), subItems.get(i), map);
+        }
+
+        if (bound) {
+            for (int i = 0; i < count; i++) {
+                bindNativeItem(nativeSub, nativeSub.getItem(i), subItems.get(i), false);
             }
+            return;
+        }
+
+        for (int i = nativeSub.size() - 1; i >= 0; i--) {
+            map.remove(nativeSub.getItem(i));
+        }
+        nativeSub.clear();
+        for (int i = 0; i < count; i++) {
+            final MenuItemImpl subItem = subItems.get(i);
+            android.view.MenuItem nativeSubItem = nativeSub.add(subItem.getGroupId(), subItem.getItemId(),
+                    subItem.getOrder(), subItem.getTitle());
+            nativeSubItem.setOnMenuItemClickListener(listener);
+            map.put(nativeSubItem, subItem);
+            bindNativeItem(nativeSub, nativeSubItem, subItem, true);
+        }
+    }
+
+    private static boolean isNativeItemBound(android.view.MenuItem nativeItem, MenuItemImpl item,
+            HashMap<android.view.MenuItem, MenuItemImpl> map) {
+        return map.get(nativeItem) == item && nativeItem.hasSubMenu() == item.hasSubMenu();
+    }
+
+    /**
+     * Copies the properties of an item to its native item. Unless the native
+     * item was just created, only the properties that differ are written.
+     */
+    private static void bindNativeItem(android.view.Menu menu, android.view.MenuItem nativeItem,
+            MenuItemImpl item, boolean created) {
+        if (!created && !TextUtils.equals(nativeItem.getTitle(), item.getTitle())) {
+            nativeItem.setTitle(item.getTitle());
+        }
+        final Drawable icon = item.getIcon();
+        if (created || nativeItem.getIcon() != icon) {
+            nativeItem.setIcon(icon);
+        }
+        if (created || nativeItem.isEnabled() != item.isEnabled()) {
+            nativeItem.setEnabled(item.isEnabled());
+        }
+        if (created || nativeItem.getIntent() != item.getIntent()) {
+            nativeItem.setIntent(item.getIntent());
+        }
+        if (created || nativeItem.getNumericShortcut() != item.getNumericShortcut()) {
+            nativeItem.setNumericShortcut(item.getNumericShortcut());
+        }
+        if (created || nativeItem.getAlphabeticShortcut() != item.getAlphabeticShortcut()) {
+            nativeItem.setAlphabeticShortcut(item.getAlphabeticShortcut());
+        }
+        if (created || !TextUtils.equals(nativeItem.getTitleCondensed(), item.getTitleCondensed())) {
+            nativeItem.setTitleCondensed(item.getTitleCondensed());
+        }
+        final boolean checkableChanged = created || nativeItem.isCheckable() != item.isCheckable();
+        if (checkableChanged) {
+            nativeItem.setCheckable(item.isCheckable());
+        }
+        if (created || nativeItem.isChecked() != item.isChecked()) {
+            nativeItem.setChecked(item.isChecked());
+        }
 
-            map.put(nativeItem, nonActionItem);
+        if (checkableChanged && item.isExclusiveCheckable()) {
+            menu.setGroupCheckable(item.getGroupId(), true, true);
         }
-        return visible;
     }
 }
@@ -20,6 +20,7 @@ import android.content.ActivityNotFoundException;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.drawable.Drawable;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.ContextMenu.ContextMenuInfo;
 import android.view.LayoutInflater;
@@ -51,12 +52,15 @@ public final class MenuItemImpl implements MenuItem {
     private char mShortcutNumericChar;
     private char mShortcutAlphabeticChar;
 
-    /** The icon's drawable which is only created as needed */
+    /**
+     * The icon's drawable, either set directly or loaded from
+     * {@link #mIconResId} when it is first needed
+     */
     private Drawable mIconDrawable;
     /**
      * The icon's resource ID which is used to get the Drawable when it is
-     * needed (if the Drawable isn't already obtained--only one of the two is
-     * needed).
+     * needed. It is kept after the Drawable was loaded so that an item built
+     * again from the same resource can be matched.
      */
     private int mIconResId = NO_ICON;
 
@@ -83,6 +87,10 @@ public final class MenuItemImpl implements MenuItem {
     private OnActionExpandListener mOnActionExpandListener;
     private boolean mIsActionViewExpanded = false;
 
+    /** Measurements of the action button when flagging and during layout. */
+    private ActionButtonMeasurement mFlaggingMeasurement;
+    private ActionButtonMeasurement mLayoutMeasurement;
+
     /** Used for the icon resource ID if this item does not have an icon */
     static final int NO_ICON = 0;
 
@@ -134,6 +142,93 @@ public final class MenuItemImpl implements MenuItem {
         mShowAsAction = showAsAction;
     }
 
+    /**
+     * Moves this item to another menu. Only used when an item created in a
+     * temporary menu is taken over by the menu it was diffed against.
+     */
+    void setMenu(MenuBuilder menu) {
+        mMenu = menu;
+    }
+
+    /**
+     * Takes over the state of an equivalent item that was created when the menu
+     * was built again. Action views and action providers of the same type are
+     * kept so that they do not have to be created and measured again.
+     *
+     * @param other The item created in place of this one.
+     */
+    void updateFrom(MenuItemImpl other) {
+        if (mShortcutNumericChar != other.mShortcutNumericChar
+                || mShortcutAlphabeticChar != other.mShortcutAlphabeticChar) {
+            mMenu.onItemShortcutChanged();
+        }
+        final boolean titleChanged = !TextUtils.equals(mTitle, other.mTitle);
+        // Icons from resources are compared by ID, the other item has not loaded its drawable yet.
+        final boolean iconChanged = (mIconResId != NO_ICON || other.mIconResId != NO_ICON)
+                ? mIconResId != other.mIconResId
+                : mIconDrawable != other.mIconDrawable;
+        boolean changed = titleChanged
+                || !TextUtils.equals(mTitleCondensed, other.mTitleCondensed)
+                || iconChanged
+                || mShortcutNumericChar != other.mShortcutNumericChar
+                || mShortcutAlphabeticChar != other.mShortcutAlphabeticChar;
+
+        mTitle = other.mTitle;
+        mTitleCondensed = other.mTitleCondensed;
+        if (iconChanged) {
+            mIconDrawable = other.mIconDrawable;
+            mIconResId = other.mIconResId;
+        }
+        mShortcutNumericChar = other.mShortcutNumericChar;
+        mShortcutAlphabeticChar = other.mShortcutAlphabeticChar;
+        mIntent = other.mIntent;
+        mItemCallback = other.mItemCallback;
+        mClickListener = other.mClickListener;
+        mOnActionExpandListener = other.mOnActionExpandListener;
+        mMenuInfo = other.mMenuInfo;
+
+        // The action button flag is owned by the presenters, take everything else.
+        final int stateFlags = CHECKABLE | CHECKED | EXCLUSIVE | ENABLED;
+        final int newFlags = (mFlags & IS_ACTION) | (other.mFlags & ~IS_ACTION);
+        changed |= (mFlags & stateFlags) != (newFlags & stateFlags);
+        final boolean visibilityChanged = (mFlags & HIDDEN) != (newFlags & HIDDEN);
+        mFlags = newFlags;
+
+        boolean actionChanged = mShowAsAction != other.mShowAsAction;
+        mShowAsAction = other.mShowAsAction;
+
+        final boolean keepActionView;
+        if (other.mActionProvider != null) {
+            keepActionView = mActionProvider != null
+                    && mActionProvider.getClass() == other.mActionProvider.getClass();
+        } else if (other.mActionView != null) {
+            keepActionView = mActionProvider == null && mActionView != null
+                    && mActionView.getClass() == other.mActionView.getClass();
+        } else {
+            keepActionView = mActionProvider == null && mActionView == null;
+        }
+        if (!keepActionView) {
+            if (mIsActionViewExpanded) {
+                mMenu.collapseItemActionView(this);
+            }
+            mActionProvider = other.mActionProvider;
+            mActionView = other.mActionView;
+            actionChanged = true;
+        }
+
+        if (titleChanged && mSubMenu != null) {
+            mSubMenu.setHeaderTitle(mTitle);
+        }
+
+        if (changed || actionChanged) {
+            invalidateActionButtonMeasurements();
+        }
+
+        if (visibilityChanged) mMenu.onItemVisibleChanged(this);
+        if (actionChanged) mMenu.onItemActionRequestChanged(this);
+        if (changed) mMenu.onItemPropertiesChanged(this);
+    }
+
     /**
      * Invokes the item by calling various listeners or callbacks.
      *
@@ -181,7 +276,7 @@ public final class MenuItemImpl implements MenuItem {
             mFlags &= ~ENABLED;
         }
 
-        mMenu.onItemsChanged(false);
+        mMenu.onItemPropertiesChanged(this);
 
         return this;
     }
@@ -230,7 +325,8 @@ public final class MenuItemImpl implements MenuItem {
 
         mShortcutAlphabeticChar = Character.toLowerCase(alphaChar);
 
-        mMenu.onItemsChanged(false);
+        mMenu.onItemShortcutChanged();
+        mMenu.onItemPropertiesChanged(this);
 
         return this;
     }
@@ -244,7 +340,8 @@ public final class MenuItemImpl implements MenuItem {
 
         mShortcutNumericChar = numericChar;
 
-        mMenu.onItemsChanged(false);
+        mMenu.onItemShortcutChanged();
+        mMenu.onItemPropertiesChanged(this);
 
         return this;
     }
@@ -253,7 +350,8 @@ public final class MenuItemImpl implements MenuItem {
         mShortcutNumericChar = numericChar;
         mShortcutAlphabeticChar = Character.toLowerCase(alphaChar);
 
-        mMenu.onItemsChanged(false);
+        mMenu.onItemShortcutChanged();
+        mMenu.onItemPropertiesChanged(this);
 
         return this;
     }
@@ -344,8 +442,9 @@ public final class MenuItemImpl implements MenuItem {
 
     public MenuItem setTitle(CharSequence title) {
         mTitle = title;
+        invalidateActionButtonMeasurements();
 
-        mMenu.onItemsChanged(false);
+        mMenu.onItemPropertiesChanged(this);
 
         if (mSubMenu != null) {
             mSubMenu.setHeaderTitle(title);
@@ -364,13 +463,14 @@ public final class MenuItemImpl implements MenuItem {
 
     public MenuItem setTitleCondensed(CharSequence title) {
         mTitleCondensed = title;
+        invalidateActionButtonMeasurements();
 
         // Could use getTitle() in the loop below, but just cache what it would do here
         if (title == null) {
             title = mTitle;
         }
 
-        mMenu.onItemsChanged(false);
+        mMenu.onItemPropertiesChanged(this);
 
         return this;
     }
@@ -381,7 +481,9 @@ public final class MenuItemImpl implements MenuItem {
         }
 
         if (mIconResId != NO_ICON) {
-            return mMenu.getResources().getDrawable(mIconResId);
+            // Keep the drawable so that views showing it can tell it did not change.
+            mIconDrawable = mMenu.getResources().getDrawable(mIconResId);
+            return mIconDrawable;
         }
 
         return null;
@@ -390,7 +492,8 @@ public final class MenuItemImpl implements MenuItem {
     public MenuItem setIcon(Drawable icon) {
         mIconResId = NO_ICON;
         mIconDrawable = icon;
-        mMenu.onItemsChanged(false);
+        invalidateActionButtonMeasurements();
+        mMenu.onItemPropertiesChanged(this);
 
         return this;
     }
@@ -398,9 +501,10 @@ public final class MenuItemImpl implements MenuItem {
     public MenuItem setIcon(int iconResId) {
         mIconDrawable = null;
         mIconResId = iconResId;
+        invalidateActionButtonMeasurements();
 
         // If we have a view, we need to push the Drawable to them
-        mMenu.onItemsChanged(false);
+        mMenu.onItemPropertiesChanged(this);
 
         return this;
     }
@@ -413,7 +517,7 @@ public final class MenuItemImpl implements MenuItem {
         final int oldFlags = mFlags;
         mFlags = (mFlags & ~CHECKABLE) | (checkable ? CHECKABLE : 0);
         if (oldFlags != mFlags) {
-            mMenu.onItemsChanged(false);
+            mMenu.onItemPropertiesChanged(this);
         }
 
         return this;
@@ -447,7 +551,7 @@ public final class MenuItemImpl implements MenuItem {
         final int oldFlags = mFlags;
         mFlags = (mFlags & ~CHECKED) | (checked ? CHECKED : 0);
         if (oldFlags != mFlags) {
-            mMenu.onItemsChanged(false);
+            mMenu.onItemPropertiesChanged(this);
         }
     }
 
@@ -498,9 +602,34 @@ public final class MenuItemImpl implements MenuItem {
     }
 
     public void actionFormatChanged() {
+        invalidateActionButtonMeasurements();
         mMenu.onItemActionRequestChanged(this);
     }
 
+    /**
+     * Returns the cached measurement of this item's action button.
+     *
+     * @param forLayout Whether the measurement is the one of the laid out
+     *            button rather than the one used to flag action items.
+     */
+    ActionButtonMeasurement getActionButtonMeasurement(boolean forLayout) {
+        if (forLayout) {
+            if (mLayoutMeasurement == null) {
+                mLayoutMeasurement = new ActionButtonMeasurement();
+            }
+            return mLayoutMeasurement;
+        }
+        if (mFlaggingMeasurement == null) {
+            mFlaggingMeasurement = new ActionButtonMeasurement();
+        }
+        return mFlaggingMeasurement;
+    }
+
+    private void invalidateActionButtonMeasurements() {
+        if (mFlaggingMeasurement != null) mFlaggingMeasurement.invalidate();
+        if (mLayoutMeasurement != null) mLayoutMeasurement.invalidate();
+    }
+
     /**
      * @return Whether the menu should show icons for menu items.
      */
@@ -546,12 +675,14 @@ public final class MenuItemImpl implements MenuItem {
                         + " and SHOW_AS_ACTION_NEVER are mutually exclusive.");
         }
         mShowAsAction = actionEnum;
+        invalidateActionButtonMeasurements();
         mMenu.onItemActionRequestChanged(this);
     }
 
     public MenuItem setActionView(View view) {
         mActionView = view;
         mActionProvider = null;
+        invalidateActionButtonMeasurements();
         if (view != null && view.getId() == View.NO_ID && mId > 0) {
             view.setId(mId);
         }
@@ -584,6 +715,7 @@ public final class MenuItemImpl implements MenuItem {
     public MenuItem setActionProvider(ActionProvider actionProvider) {
         mActionView = null;
         mActionProvider = actionProvider;
+        invalidateActionButtonMeasurements();
         mMenu.onItemsChanged(true); // Measurement can be changed
         return this;
     }
@@ -638,7 +770,7 @@ public final class MenuItemImpl implements MenuItem {
 
     public void setActionViewExpanded(boolean isExpanded) {
         mIsActionViewExpanded = isExpanded;
-        mMenu.onItemsChanged(false);
+        mMenu.onItemPropertiesChanged(this);
     }
 
     public boolean isActionViewExpanded() {
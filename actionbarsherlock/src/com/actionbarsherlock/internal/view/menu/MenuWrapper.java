@@ -14,6 +14,9 @@ public class MenuWrapper implements Menu {
     private final WeakHashMap<android.view.MenuItem, MenuItem> mNativeMap =
             new WeakHashMap<android.view.MenuItem, MenuItem>();
 
+    /** Nesting depth of {@link #beginBatch()} calls. */
+    private int mBatchDepth;
+
 
     public MenuWrapper(android.view.Menu nativeMenu) {
         mNativeMenu = nativeMenu;
@@ -203,4 +206,18 @@ public class MenuWrapper implements Menu {
     public void setQwertyMode(boolean isQwerty) {
         mNativeMenu.setQwertyMode(isQwerty);
     }
+
+    @Override
+    public void beginBatch() {
+        // Native menus schedule their own view updates, only track the nesting.
+        mBatchDepth++;
+    }
+
+    @Override
+    public void commitBatch() {
+        if (mBatchDepth == 0) {
+            throw new IllegalStateException("commitBatch() called without beginBatch().");
+        }
+        mBatchDepth--;
+    }
 }
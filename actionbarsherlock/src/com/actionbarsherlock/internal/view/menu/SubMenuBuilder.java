@@ -59,6 +59,10 @@ public class SubMenuBuilder extends MenuBuilder implements SubMenu {
         return mParentMenu.isShortcutsVisible();
     }
 
+    void setParentMenu(MenuBuilder parentMenu) {
+        mParentMenu = parentMenu;
+    }
+
     public Menu getParentMenu() {
         return mParentMenu;
     }
@@ -72,6 +76,23 @@ public class SubMenuBuilder extends MenuBuilder implements SubMenu {
         mParentMenu.setCallback(callback);
     }
 
+    @Override
+    void onItemIdChanged(int id) {
+        mParentMenu.onSubMenuItemIdChanged(mItem, id);
+    }
+
+    @Override
+    void onItemIndexChanged() {
+        super.onItemIndexChanged();
+        mParentMenu.onItemIndexChanged();
+    }
+
+    @Override
+    void onItemShortcutChanged() {
+        super.onItemShortcutChanged();
+        mParentMenu.onItemShortcutChanged();
+    }
+
     @Override
     public MenuBuilder getRootMenu() {
         return mParentMenu;
@@ -443,5 +443,27 @@ public interface Menu {
      *                 will use numeric shortcuts.
      */
     public void setQwertyMode(boolean isQwerty);
+
+    /**
+     * Start a batch of changes to this menu. Until the matching
+     * {@link #commitBatch()}, item and group changes are not shown right away
+     * but merged into a single update of the views presenting this menu. Only
+     * the views of the items that changed are rebound if the batch does not
+     * add, remove, show or hide any item.
+     * <p>
+     * Batches may be nested, the update happens when the outermost batch is
+     * committed. Changes made while the menu is being prepared are already
+     * batched.
+     */
+    public void beginBatch();
+
+    /**
+     * Finish a batch of changes started with {@link #beginBatch()} and update
+     * the views presenting this menu with all of its changes at once.
+     *
+     * @exception IllegalStateException
+     *                when no batch was started
+     */
+    public void commitBatch();
 }
 
@@ -20,13 +20,22 @@ package com.actionbarsherlock.view;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.content.res.XmlResourceParser;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.util.SparseArray;
 import android.util.TypedValue;
 import android.util.Xml;
 import android.view.InflateException;
@@ -58,6 +67,32 @@ public class MenuInflater {
 
     private static final int NO_ID = 0;
 
+    /** Marks the end of a group in a compiled menu. */
+    private static final Object END_GROUP = new Object();
+
+    /** Marks the end of an item in a compiled menu. */
+    private static final Object END_ITEM = new Object();
+
+    /**
+     * Compiled menu resources of the process, by the resources they were
+     * loaded from. Resource IDs are only unique within one package, so each
+     * resources instance gets its own cache.
+     */
+    private static final WeakHashMap<Resources, CompiledMenus> sCompiledMenus =
+            new WeakHashMap<Resources, CompiledMenus>();
+
+    /** Maximum number of resolved constructors and methods kept. */
+    private static final int REFLECTION_CACHE_SIZE = 64;
+
+    private static final MemberCache<Constructor<?>> sConstructorCache =
+            new MemberCache<Constructor<?>>(REFLECTION_CACHE_SIZE);
+
+    private static final MemberCache<Method> sMethodCache =
+            new MemberCache<Method>(REFLECTION_CACHE_SIZE);
+
+    /** Registered factories, by the class name they create. */
+    private static final HashMap<String, Factory> sFactories = new HashMap<String, Factory>();
+
     private static final Class<?>[] ACTION_VIEW_CONSTRUCTOR_SIGNATURE = new Class[] {Context.class};
 
     private static final Class<?>[] ACTION_PROVIDER_CONSTRUCTOR_SIGNATURE = ACTION_VIEW_CONSTRUCTOR_SIGNATURE;
@@ -69,6 +104,9 @@ public class MenuInflater {
     private Context mContext;
     private Object mRealOwner;
 
+    /** Whether the menu currently being compiled may be cached. */
+    private boolean mCompiledMenuCacheable;
+
     /**
      * Constructs a menu inflater.
      *
@@ -94,6 +132,93 @@ public class MenuInflater {
         mActionProviderConstructorArguments = mActionViewConstructorArguments;
     }
 
+    /**
+     * Creates action views or action providers named in menu XML without
+     * going through reflection.
+     *
+     * @see MenuInflater#registerFactory(String, Factory)
+     */
+    public interface Factory {
+        /**
+         * Create a new instance of the class this factory is registered for.
+         *
+         * @param context Context of the inflating menu inflater.
+         * @return A new action view or action provider.
+         */
+        public Object newInstance(Context context);
+    }
+
+    /**
+     * Register a factory for a class named in an {@code actionViewClass} or
+     * {@code actionProviderClass} attribute. Inflation then uses the factory
+     * instead of looking up and invoking the constructor reflectively.
+     *
+     * @param className Fully qualified name of the class, as in the menu XML.
+     * @param factory Factory to use, or {@code null} to remove it.
+     */
+    public static void registerFactory(String className, Factory factory) {
+        synchronized (sFactories) {
+            if (factory != null) {
+                sFactories.put(className, factory);
+            } else {
+                sFactories.remove(className);
+            }
+        }
+    }
+
+    /**
+     * Returns the constructor of a class with the given signature, resolving
+     * it only if it is not cached for the class loader yet.
+     */
+    private static Constructor<?> getConstructor(ClassLoader classLoader, String className,
+            Class<?>[] signature) throws ClassNotFoundException, NoSuchMethodException {
+        final MemberKey key = new MemberKey(classLoader, className, signature);
+        Constructor<?> constructor;
+        synchronized (sConstructorCache) {
+            constructor = sConstructorCache.get(key);
+        }
+        if (constructor == null) {
+            constructor = classLoader.loadClass(className).getConstructor(signature);
+            synchronized (sConstructorCache) {
+                sConstructorCache.put(key, constructor);
+            }
+        }
+        return constructor;
+    }
+
+    /**
+     * Returns a public method of a class with the given signature, resolving
+     * it only if it is not cached yet.
+     */
+    private static Method getMethod(Class<?> c, String methodName, Class<?>[] signature)
+            throws NoSuchMethodException {
+        final MemberKey key = new MemberKey(c, methodName, signature);
+        Method method;
+        synchronized (sMethodCache) {
+            method = sMethodCache.get(key);
+        }
+        if (method == null) {
+            method = c.getMethod(methodName, signature);
+            synchronized (sMethodCache) {
+                sMethodCache.put(key, method);
+            }
+        }
+        return method;
+    }
+
+    /**
+     * Drops all resolved constructors and methods, so that they are looked up
+     * again. Used by tests.
+     */
+    static void clearReflectionCaches() {
+        synchronized (sConstructorCache) {
+            sConstructorCache.clear();
+        }
+        synchronized (sMethodCache) {
+            sMethodCache.clear();
+        }
+    }
+
     /**
      * Inflate a menu hierarchy from the specified XML resource. Throws
      * {@link InflateException} if there is an error.
@@ -104,12 +229,49 @@ public class MenuInflater {
      *            added to this Menu.
      */
     public void inflate(int menuRes, Menu menu) {
+        replayMenu(getCompiledMenu(menuRes), menu);
+    }
+
+    /**
+     * Returns the compiled form of a menu resource, parsing it only if it is
+     * not cached yet for the resources of the context. The cache of the
+     * resources is dropped whenever their configuration, and with it possibly
+     * the resolved values, changes.
+     */
+    private CompiledMenu getCompiledMenu(int menuRes) {
+        final Resources resources = mContext.getResources();
+        final Configuration config = resources.getConfiguration();
+        CompiledMenus compiledMenus;
+        synchronized (sCompiledMenus) {
+            compiledMenus = sCompiledMenus.get(resources);
+            if (compiledMenus == null || !compiledMenus.config.equals(config)) {
+                compiledMenus = new CompiledMenus(config);
+                sCompiledMenus.put(resources, compiledMenus);
+            }
+            CompiledMenu compiledMenu = compiledMenus.menus.get(menuRes);
+            if (compiledMenu != null) {
+                return compiledMenu;
+            }
+        }
+
         XmlResourceParser parser = null;
         try {
-            parser = mContext.getResources().getLayout(menuRes);
+            parser = resources.getLayout(menuRes);
             AttributeSet attrs = Xml.asAttributeSet(parser);
 
-            parseMenu(parser, attrs, menu);
+            mCompiledMenuCacheable = true;
+            CompiledMenu compiledMenu = parseMenu(parser, attrs);
+
+            // Attributes that reference the theme can resolve differently
+            // for the next context so they are parsed every time.
+            if (mCompiledMenuCacheable) {
+                synchronized (sCompiledMenus) {
+                    if (sCompiledMenus.get(resources) == compiledMenus) {
+                        compiledMenus.menus.put(menuRes, compiledMenu);
+                    }
+                }
+            }
+            return compiledMenu;
         } catch (XmlPullParserException e) {
             throw new InflateException("Error inflating menu XML", e);
         } catch (IOException e) {
@@ -120,12 +282,12 @@ public class MenuInflater {
     }
 
     /**
-     * Called internally to fill the given menu. If a sub menu is seen, it will
-     * call this recursively.
+     * Called internally to compile the given menu. If a sub menu is seen, it
+     * will call this recursively.
      */
-    private void parseMenu(XmlPullParser parser, AttributeSet attrs, Menu menu)
+    private CompiledMenu parseMenu(XmlPullParser parser, AttributeSet attrs)
             throws XmlPullParserException, IOException {
-        MenuState menuState = new MenuState(menu);
+        ArrayList<Object> entries = new ArrayList<Object>();
 
         int eventType = parser.getEventType();
         String tagName;
@@ -157,15 +319,12 @@ public class MenuInflater {
 
                     tagName = parser.getName();
                     if (tagName.equals(XML_GROUP)) {
-                        menuState.readGroup(attrs);
+                        entries.add(readGroup(attrs));
                     } else if (tagName.equals(XML_ITEM)) {
-                        menuState.readItem(attrs);
+                        entries.add(readItem(attrs));
                     } else if (tagName.equals(XML_MENU)) {
                         // A menu start tag denotes a submenu for an item
-                        SubMenu subMenu = menuState.addSubMenuItem();
-
-                        // Parse the submenu into returned SubMenu
-                        parseMenu(parser, attrs, subMenu);
+                        entries.add(parseMenu(parser, attrs));
                     } else {
                         lookingForEndOfUnknownTag = true;
                         unknownTagName = tagName;
@@ -178,18 +337,9 @@ public class MenuInflater {
                         lookingForEndOfUnknownTag = false;
                         unknownTagName = null;
                     } else if (tagName.equals(XML_GROUP)) {
-                        menuState.resetGroup();
+                        entries.add(END_GROUP);
                     } else if (tagName.equals(XML_ITEM)) {
-                        // Add the item if it hasn't been added (if the item was
-                        // a submenu, it would have been added already)
-                        if (!menuState.hasAddedItem()) {
-                            if (menuState.itemActionProvider != null &&
-                                    menuState.itemActionProvider.hasSubMenu()) {
-                                menuState.addSubMenuItem();
-                            } else {
-                                menuState.addItem();
-                            }
-                        }
+                        entries.add(END_ITEM);
                     } else if (tagName.equals(XML_MENU)) {
                         reachedEndOfMenu = true;
                     }
@@ -201,6 +351,278 @@ public class MenuInflater {
 
             eventType = parser.next();
         }
+
+        return new CompiledMenu(entries.toArray());
+    }
+
+    /**
+     * Called internally to fill the given menu from its compiled form. If a
+     * sub menu is seen, it will call this recursively.
+     */
+    private void replayMenu(CompiledMenu compiledMenu, Menu menu) {
+        MenuState menuState = new MenuState(menu);
+
+        for (Object entry : compiledMenu.entries) {
+            if (entry instanceof CompiledGroup) {
+                menuState.readGroup((CompiledGroup) entry);
+            } else if (entry instanceof CompiledItem) {
+                menuState.readItem((CompiledItem) entry);
+            } else if (entry instanceof CompiledMenu) {
+                // A menu denotes a submenu for an item
+                SubMenu subMenu = menuState.addSubMenuItem();
+
+                // Fill the submenu into returned SubMenu
+                replayMenu((CompiledMenu) entry, subMenu);
+            } else if (entry == END_GROUP) {
+                menuState.resetGroup();
+            } else if (entry == END_ITEM) {
+                // Add the item if it hasn't been added (if the item was
+                // a submenu, it would have been added already)
+                if (!menuState.hasAddedItem()) {
+                    if (menuState.itemActionProvider != null &&
+                            menuState.itemActionProvider.hasSubMenu()) {
+                        menuState.addSubMenuItem();
+                    } else {
+                        menuState.addItem();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Called when the parser is pointing to a group tag.
+     */
+    private CompiledGroup readGroup(AttributeSet attrs) {
+        checkCacheable(attrs);
+        TypedArray a = mContext.obtainStyledAttributes(attrs,
+                R.styleable.SherlockMenuGroup);
+
+        CompiledGroup group = new CompiledGroup(
+                a.getResourceId(R.styleable.SherlockMenuGroup_android_id, MenuState.defaultGroupId),
+                a.getInt(R.styleable.SherlockMenuGroup_android_menuCategory, MenuState.defaultItemCategory),
+                a.getInt(R.styleable.SherlockMenuGroup_android_orderInCategory, MenuState.defaultItemOrder),
+                a.getInt(R.styleable.SherlockMenuGroup_android_checkableBehavior, MenuState.defaultItemCheckable),
+                a.getBoolean(R.styleable.SherlockMenuGroup_android_visible, MenuState.defaultItemVisible),
+                a.getBoolean(R.styleable.SherlockMenuGroup_android_enabled, MenuState.defaultItemEnabled));
+
+        a.recycle();
+        return group;
+    }
+
+    /**
+     * Called when the parser is pointing to an item tag.
+     */
+    private CompiledItem readItem(AttributeSet attrs) {
+        checkCacheable(attrs);
+        TypedArray a = mContext.obtainStyledAttributes(attrs,
+                R.styleable.SherlockMenuItem);
+
+        CompiledItem item = new CompiledItem();
+        item.id = a.getResourceId(R.styleable.SherlockMenuItem_android_id, MenuState.defaultItemId);
+        item.hasCategory = a.hasValue(R.styleable.SherlockMenuItem_android_menuCategory);
+        item.category = a.getInt(R.styleable.SherlockMenuItem_android_menuCategory, 0);
+        item.hasOrder = a.hasValue(R.styleable.SherlockMenuItem_android_orderInCategory);
+        item.order = a.getInt(R.styleable.SherlockMenuItem_android_orderInCategory, 0);
+        item.title = a.getText(R.styleable.SherlockMenuItem_android_title);
+        item.titleCondensed = a.getText(R.styleable.SherlockMenuItem_android_titleCondensed);
+        item.iconResId = a.getResourceId(R.styleable.SherlockMenuItem_android_icon, 0);
+        item.alphabeticShortcut =
+                getShortcut(a.getString(R.styleable.SherlockMenuItem_android_alphabeticShortcut));
+        item.numericShortcut =
+                getShortcut(a.getString(R.styleable.SherlockMenuItem_android_numericShortcut));
+        item.checkable = getTriState(a, R.styleable.SherlockMenuItem_android_checkable);
+        item.checked = a.getBoolean(R.styleable.SherlockMenuItem_android_checked, MenuState.defaultItemChecked);
+        item.visible = getTriState(a, R.styleable.SherlockMenuItem_android_visible);
+        item.enabled = getTriState(a, R.styleable.SherlockMenuItem_android_enabled);
+
+        TypedValue value = new TypedValue();
+        a.getValue(R.styleable.SherlockMenuItem_android_showAsAction, value);
+        item.showAsAction = value.type == TypedValue.TYPE_INT_HEX ? value.data : -1;
+
+        item.listenerMethodName = a.getString(R.styleable.SherlockMenuItem_android_onClick);
+        item.actionViewLayout = a.getResourceId(R.styleable.SherlockMenuItem_android_actionLayout, 0);
+
+        // item.actionViewClassName = a.getString(R.styleable.SherlockMenuItem_android_actionViewClass);
+        value = new TypedValue();
+        a.getValue(R.styleable.SherlockMenuItem_android_actionViewClass, value);
+        item.actionViewClassName = value.type == TypedValue.TYPE_STRING ? value.string.toString() : null;
+
+        // item.actionProviderClassName = a.getString(R.styleable.SherlockMenuItem_android_actionProviderClass);
+        value = new TypedValue();
+        a.getValue(R.styleable.SherlockMenuItem_android_actionProviderClass, value);
+        item.actionProviderClassName = value.type == TypedValue.TYPE_STRING ? value.string.toString() : null;
+
+        if (item.actionProviderClassName != null
+                && (item.actionViewLayout != 0 || item.actionViewClassName != null)) {
+            Log.w(LOG_TAG, "Ignoring attribute 'actionProviderClass'."
+                    + " Action view already specified.");
+            item.actionProviderClassName = null;
+        }
+
+        a.recycle();
+        return item;
+    }
+
+    /**
+     * Marks the menu being compiled as not cacheable if one of the attributes
+     * is a theme reference.
+     */
+    private void checkCacheable(AttributeSet attrs) {
+        if (!mCompiledMenuCacheable) {
+            return;
+        }
+        for (int i = 0, count = attrs.getAttributeCount(); i < count; i++) {
+            String attrValue = attrs.getAttributeValue(i);
+            if (attrValue != null && attrValue.startsWith("?")) {
+                mCompiledMenuCacheable = false;
+                return;
+            }
+        }
+    }
+
+    private static char getShortcut(String shortcutString) {
+        if (shortcutString == null) {
+            return 0;
+        } else {
+            return shortcutString.charAt(0);
+        }
+    }
+
+    /**
+     * Returns 1 or 0 for a boolean attribute that is present, -1 otherwise.
+     */
+    private static int getTriState(TypedArray a, int index) {
+        if (!a.hasValue(index)) {
+            return -1;
+        }
+        return a.getBoolean(index, false) ? 1 : 0;
+    }
+
+    /**
+     * Identifies a constructor or method by its name and signature within a
+     * scope, the class loader or the declaring class.
+     */
+    private static final class MemberKey {
+        private final Object scope;
+        private final String name;
+        private final Class<?>[] signature;
+        private final int hash;
+
+        MemberKey(Object scope, String name, Class<?>[] signature) {
+            this.scope = scope;
+            this.name = name;
+            this.signature = signature;
+            this.hash = 31 * (31 * System.identityHashCode(scope) + name.hashCode())
+                    + Arrays.hashCode(signature);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof MemberKey)) {
+                return false;
+            }
+            MemberKey other = (MemberKey) o;
+            return scope == other.scope && name.equals(other.name)
+                    && Arrays.equals(signature, other.signature);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Least recently used cache of resolved members.
+     */
+    private static final class MemberCache<V> extends LinkedHashMap<MemberKey, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int mMaxSize;
+
+        MemberCache(int maxSize) {
+            super(16, 0.75f, true);
+            mMaxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<MemberKey, V> eldest) {
+            return size() > mMaxSize;
+        }
+    }
+
+    /**
+     * The compiled menu resources of one resources instance, by resource ID,
+     * along with the configuration they were resolved for.
+     */
+    private static final class CompiledMenus {
+        final Configuration config;
+        final SparseArray<CompiledMenu> menus = new SparseArray<CompiledMenu>();
+
+        CompiledMenus(Configuration config) {
+            this.config = new Configuration(config);
+        }
+    }
+
+    /**
+     * A menu resource compiled into the sequence of groups, items, sub menus
+     * and end markers found in its XML.
+     */
+    private static final class CompiledMenu {
+        final Object[] entries;
+
+        CompiledMenu(Object[] entries) {
+            this.entries = entries;
+        }
+    }
+
+    /**
+     * Attributes of a group tag.
+     */
+    private static final class CompiledGroup {
+        final int id;
+        final int category;
+        final int order;
+        final int checkable;
+        final boolean visible;
+        final boolean enabled;
+
+        CompiledGroup(int id, int category, int order, int checkable, boolean visible,
+                boolean enabled) {
+            this.id = id;
+            this.category = category;
+            this.order = order;
+            this.checkable = checkable;
+            this.visible = visible;
+            this.enabled = enabled;
+        }
+    }
+
+    /**
+     * Attributes of an item tag. Attributes that can be inherited from the
+     * group keep track of whether they were present.
+     */
+    private static final class CompiledItem {
+        int id;
+        boolean hasCategory;
+        int category;
+        boolean hasOrder;
+        int order;
+        CharSequence title;
+        CharSequence titleCondensed;
+        int iconResId;
+        char alphabeticShortcut;
+        char numericShortcut;
+        int checkable;
+        boolean checked;
+        int visible;
+        int enabled;
+        int showAsAction;
+        String listenerMethodName;
+        int actionViewLayout;
+        String actionViewClassName;
+        String actionProviderClassName;
     }
 
     private static class InflatedOnMenuItemClickListener
@@ -214,7 +636,7 @@ public class MenuInflater {
             mRealOwner = realOwner;
             Class<?> c = realOwner.getClass();
             try {
-                mMethod = c.getMethod(methodName, PARAM_TYPES);
+                mMethod = getMethod(c, methodName, PARAM_TYPES);
             } catch (Exception e) {
                 InflateException ex = new InflateException(
                         "Couldn't resolve menu item onClick handler " + methodName +
@@ -288,7 +710,6 @@ public class MenuInflater {
 
         private int itemActionViewLayout;
         private String itemActionViewClassName;
-        private String itemActionProviderClassName;
 
         private String itemListenerMethodName;
 
@@ -319,97 +740,56 @@ public class MenuInflater {
         }
 
         /**
-         * Called when the parser is pointing to a group tag.
+         * Called when a group is replayed.
          */
-        public void readGroup(AttributeSet attrs) {
-            TypedArray a = mContext.obtainStyledAttributes(attrs,
-                    R.styleable.SherlockMenuGroup);
-
-            groupId = a.getResourceId(R.styleable.SherlockMenuGroup_android_id, defaultGroupId);
-            groupCategory = a.getInt(R.styleable.SherlockMenuGroup_android_menuCategory, defaultItemCategory);
-            groupOrder = a.getInt(R.styleable.SherlockMenuGroup_android_orderInCategory, defaultItemOrder);
-            groupCheckable = a.getInt(R.styleable.SherlockMenuGroup_android_checkableBehavior, defaultItemCheckable);
-            groupVisible = a.getBoolean(R.styleable.SherlockMenuGroup_android_visible, defaultItemVisible);
-            groupEnabled = a.getBoolean(R.styleable.SherlockMenuGroup_android_enabled, defaultItemEnabled);
-
-            a.recycle();
+        public void readGroup(CompiledGroup group) {
+            groupId = group.id;
+            groupCategory = group.category;
+            groupOrder = group.order;
+            groupCheckable = group.checkable;
+            groupVisible = group.visible;
+            groupEnabled = group.enabled;
         }
 
         /**
-         * Called when the parser is pointing to an item tag.
+         * Called when an item is replayed.
          */
-        public void readItem(AttributeSet attrs) {
-            TypedArray a = mContext.obtainStyledAttributes(attrs,
-                    R.styleable.SherlockMenuItem);
-
+        public void readItem(CompiledItem item) {
             // Inherit attributes from the group as default value
-            itemId = a.getResourceId(R.styleable.SherlockMenuItem_android_id, defaultItemId);
-            final int category = a.getInt(R.styleable.SherlockMenuItem_android_menuCategory, groupCategory);
-            final int order = a.getInt(R.styleable.SherlockMenuItem_android_orderInCategory, groupOrder);
+            itemId = item.id;
+            final int category = item.hasCategory ? item.category : groupCategory;
+            final int order = item.hasOrder ? item.order : groupOrder;
             itemCategoryOrder = (category & Menu.CATEGORY_MASK) | (order & Menu.USER_MASK);
-            itemTitle = a.getText(R.styleable.SherlockMenuItem_android_title);
-            itemTitleCondensed = a.getText(R.styleable.SherlockMenuItem_android_titleCondensed);
-            itemIconResId = a.getResourceId(R.styleable.SherlockMenuItem_android_icon, 0);
-            itemAlphabeticShortcut =
-                    getShortcut(a.getString(R.styleable.SherlockMenuItem_android_alphabeticShortcut));
-            itemNumericShortcut =
-                    getShortcut(a.getString(R.styleable.SherlockMenuItem_android_numericShortcut));
-            if (a.hasValue(R.styleable.SherlockMenuItem_android_checkable)) {
-                // Item has attribute checkable, use it
-                itemCheckable = a.getBoolean(R.styleable.SherlockMenuItem_android_checkable, false) ? 1 : 0;
-            } else {
-                // Item does not have attribute, use the group's (group can have one more state
-                // for checkable that represents the exclusive checkable)
-                itemCheckable = groupCheckable;
-            }
-
-            itemChecked = a.getBoolean(R.styleable.SherlockMenuItem_android_checked, defaultItemChecked);
-            itemVisible = a.getBoolean(R.styleable.SherlockMenuItem_android_visible, groupVisible);
-            itemEnabled = a.getBoolean(R.styleable.SherlockMenuItem_android_enabled, groupEnabled);
-
-            TypedValue value = new TypedValue();
-            a.getValue(R.styleable.SherlockMenuItem_android_showAsAction, value);
-            itemShowAsAction = value.type == TypedValue.TYPE_INT_HEX ? value.data : -1;
-
-            itemListenerMethodName = a.getString(R.styleable.SherlockMenuItem_android_onClick);
-            itemActionViewLayout = a.getResourceId(R.styleable.SherlockMenuItem_android_actionLayout, 0);
-
-            // itemActionViewClassName = a.getString(R.styleable.SherlockMenuItem_android_actionViewClass);
-            value = new TypedValue();
-            a.getValue(R.styleable.SherlockMenuItem_android_actionViewClass, value);
-            itemActionViewClassName = value.type == TypedValue.TYPE_STRING ? value.string.toString() : null;
-
-            // itemActionProviderClassName = a.getString(R.styleable.SherlockMenuItem_android_actionProviderClass);
-            value = new TypedValue();
-            a.getValue(R.styleable.SherlockMenuItem_android_actionProviderClass, value);
-            itemActionProviderClassName = value.type == TypedValue.TYPE_STRING ? value.string.toString() : null;
-
-            final boolean hasActionProvider = itemActionProviderClassName != null;
-            if (hasActionProvider && itemActionViewLayout == 0 && itemActionViewClassName == null) {
-                itemActionProvider = newInstance(itemActionProviderClassName,
+            itemTitle = item.title;
+            itemTitleCondensed = item.titleCondensed;
+            itemIconResId = item.iconResId;
+            itemAlphabeticShortcut = item.alphabeticShortcut;
+            itemNumericShortcut = item.numericShortcut;
+            // Item does not have attribute checkable, use the group's (group can have one
+            // more state for checkable that represents the exclusive checkable)
+            itemCheckable = item.checkable >= 0 ? item.checkable : groupCheckable;
+
+            itemChecked = item.checked;
+            itemVisible = item.visible >= 0 ? item.visible == 1 : groupVisible;
+            itemEnabled = item.enabled >= 0 ? item.enabled == 1 : groupEnabled;
+
+            itemShowAsAction = item.showAsAction;
+
+            itemListenerMethodName = item.listenerMethodName;
+            itemActionViewLayout = item.actionViewLayout;
+            itemActionViewClassName = item.actionViewClassName;
+
+            if (item.actionProviderClassName != null) {
+                itemActionProvider = newInstance(item.actionProviderClassName,
                             ACTION_PROVIDER_CONSTRUCTOR_SIGNATURE,
                             mActionProviderConstructorArguments);
             } else {
-                if (hasActionProvider) {
-                    Log.w(LOG_TAG, "Ignoring attribute 'actionProviderClass'."
-                            + " Action view already specified.");
-                }
                 itemActionProvider = null;
             }
 
-            a.recycle();
-
             itemAdded = false;
         }
 
-        private char getShortcut(String shortcutString) {
-            if (shortcutString == null) {
-                return 0;
-            } else {
-                return shortcutString.charAt(0);
-            }
-        }
-
         private void setItem(MenuItem item) {
             item.setChecked(itemChecked)
                 .setVisible(itemVisible)
@@ -482,9 +862,16 @@ public class MenuInflater {
         @SuppressWarnings("unchecked")
         private <T> T newInstance(String className, Class<?>[] constructorSignature,
                 Object[] arguments) {
+            Factory factory;
+            synchronized (sFactories) {
+                factory = sFactories.get(className);
+            }
             try {
-                Class<?> clazz = mContext.getClassLoader().loadClass(className);
-                Constructor<?> constructor = clazz.getConstructor(constructorSignature);
+                if (factory != null) {
+                    return (T) factory.newInstance(mContext);
+                }
+                Constructor<?> constructor = getConstructor(mContext.getClassLoader(),
+                        className, constructorSignature);
                 return (T) constructor.newInstance(arguments);
             } catch (Exception e) {
                 Log.w(LOG_TAG, "Cannot instantiate class: " + className, e);
@@ -27,22 +27,23 @@ import android.util.Log;
 import android.util.Xml;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
-import org.xmlpull.v1.XmlSerializer;
 
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <p>
@@ -212,11 +213,26 @@ class ActivityChooserModel extends DataSetObservable {
      */
     private static final String HISTORY_FILE_EXTENSION = ".xml";
 
+    /**
+     * The extension of the binary history file which replaces the XML one.
+     */
+    private static final String HISTORY_LOG_FILE_EXTENSION = ".bin";
+
     /**
      * An invalid item index.
      */
     private static final int INVALID_INDEX = -1;
 
+    /**
+     * How long to wait for more choices before persisting the history.
+     */
+    private static final long HISTORY_PERSIST_DELAY_MILLIS = 1000;
+
+    /**
+     * How long the thread of the default history executor is kept while idle.
+     */
+    private static final long HISTORY_EXECUTOR_KEEP_ALIVE_SECONDS = 1;
+
     /**
      * Lock to guard the model registry.
      */
@@ -238,6 +254,18 @@ class ActivityChooserModel extends DataSetObservable {
      */
     private final List<ActivityResolveInfo> mActivites = new ArrayList<ActivityResolveInfo>();
 
+    /**
+     * Maps the {@link ResolveInfo} of each activity in {@link #mActivites}
+     * to the activity.
+     */
+    private final Map<ResolveInfo, ActivityResolveInfo> mResolveInfoToActivityMap =
+        new HashMap<ResolveInfo, ActivityResolveInfo>();
+
+    /**
+     * Incremented every time the contents of {@link #mActivites} are replaced.
+     */
+    private int mActivitiesGeneration;
+
     /**
      * List with historical choice records.
      */
@@ -253,6 +281,17 @@ class ActivityChooserModel extends DataSetObservable {
      */
     private final String mHistoryFileName;
 
+    /**
+     * The name of the binary history file that backs this model. The file
+     * named {@link #mHistoryFileName} is only read to migrate its records.
+     */
+    private final String mHistoryLogFileName;
+
+    /**
+     * The binary history file. Only accessed from {@link #SERIAL_EXECUTOR}.
+     */
+    private HistoricalRecordLog mHistoryLog;
+
     /**
      * The intent for which a activity is being chosen.
      */
@@ -261,7 +300,12 @@ class ActivityChooserModel extends DataSetObservable {
     /**
      * The sorter for ordering activities based on intent and past choices.
      */
-    private ActivitySorter mActivitySorter = new DefaultSorter();
+    private final DefaultSorter mDefaultSorter = new DefaultSorter();
+
+    /**
+     * The sorter for ordering activities based on intent and past choices.
+     */
+    private ActivitySorter mActivitySorter = mDefaultSorter;
 
     /**
      * The maximal length of the choice history.
@@ -302,11 +346,42 @@ class ActivityChooserModel extends DataSetObservable {
      */
     private final Handler mHandler = new Handler();
 
+    /**
+     * Flag whether persisting the history is scheduled but not yet started.
+     */
+    private boolean mPersistHistoricalDataScheduled;
+
+    /**
+     * Command for persisting the history once the choices have settled.
+     */
+    private final Runnable mPersistHistoricalDataRunnable = new Runnable() {
+        public void run() {
+            flush();
+        }
+    };
+
     /**
      * Policy for controlling how the model handles chosen activities.
      */
     private OnChooseActivityListener mActivityChoserModelPolicy;
 
+    /**
+     * Flag whether the activities for an intent are resolved off the client thread.
+     */
+    private boolean mResolveActivitiesAsync;
+
+    /**
+     * Incremented every time the intent is set. Used to drop activities resolved
+     * for an intent which has been superseded in the meantime.
+     */
+    private int mIntentGeneration;
+
+    /**
+     * Incremented every time the activities are sorted. Used to detect that the
+     * history or the sorter changed while activities were resolved asynchronously.
+     */
+    private int mSortGeneration;
+
     /**
      * Gets the data model backed by the contents of the provided file with historical data.
      * Note that only one data model is backed by a given file, thus multiple calls with
@@ -357,6 +432,13 @@ class ActivityChooserModel extends DataSetObservable {
         } else {
             mHistoryFileName = historyFileName;
         }
+        if (!TextUtils.isEmpty(mHistoryFileName)) {
+            mHistoryLogFileName = mHistoryFileName.substring(0,
+                    mHistoryFileName.length() - HISTORY_FILE_EXTENSION.length())
+                    + HISTORY_LOG_FILE_EXTENSION;
+        } else {
+            mHistoryLogFileName = null;
+        }
     }
 
     /**
@@ -374,7 +456,45 @@ class ActivityChooserModel extends DataSetObservable {
                 return;
             }
             mIntent = intent;
-            loadActivitiesLocked();
+            mIntentGeneration++;
+            if (mResolveActivitiesAsync && intent != null) {
+                /*AsyncTask.*/SERIAL_EXECUTOR.execute(
+                        new ActivitiesLoader(intent, mIntentGeneration));
+            } else {
+                loadActivitiesLocked();
+            }
+        }
+    }
+
+    /**
+     * Sets whether the activities that can handle the intent are resolved
+     * and sorted off the client thread. If so, the activities for the previous
+     * intent remain available until the new ones are ready, at which point any
+     * registered {@link android.database.DataSetObserver}s are notified. Results
+     * for an intent that was replaced before they became ready are dropped.
+     * Otherwise the activities are available and observers are notified right
+     * away, while their labels and icons are loaded off the client thread in
+     * the background. Defaults to <code>false</code>.
+     *
+     * @param resolveActivitiesAsync Whether to resolve activities asynchronously.
+     */
+    public void setResolveActivitiesAsync(boolean resolveActivitiesAsync) {
+        synchronized (mInstanceLock) {
+            mResolveActivitiesAsync = resolveActivitiesAsync;
+        }
+    }
+
+    /**
+     * Gets whether the activities that can handle the intent are resolved
+     * off the client thread.
+     *
+     * @return Whether activities are resolved asynchronously.
+     *
+     * @see #setResolveActivitiesAsync(boolean)
+     */
+    public boolean isResolveActivitiesAsync() {
+        synchronized (mInstanceLock) {
+            return mResolveActivitiesAsync;
         }
     }
 
@@ -424,15 +544,10 @@ class ActivityChooserModel extends DataSetObservable {
      * @return The index if found, -1 otherwise.
      */
     public int getActivityIndex(ResolveInfo activity) {
-        List<ActivityResolveInfo> activities = mActivites;
-        final int activityCount = activities.size();
-        for (int i = 0; i < activityCount; i++) {
-            ActivityResolveInfo currentActivity = activities.get(i);
-            if (currentActivity.resolveInfo == activity) {
-                return i;
-            }
+        synchronized (mInstanceLock) {
+            ActivityResolveInfo resolvedActivity = mResolveInfoToActivityMap.get(activity);
+            return (resolvedActivity != null) ? resolvedActivity.index : INVALID_INDEX;
         }
-        return INVALID_INDEX;
     }
 
     /**
@@ -561,13 +676,86 @@ class ActivityChooserModel extends DataSetObservable {
         }
     }
 
-    private static final Executor SERIAL_EXECUTOR = Executors.newSingleThreadExecutor();
+    /**
+     * The default executor for history I/O, which uses at most one thread and
+     * lets it go once idle.
+     */
+    private static final Executor DEFAULT_HISTORY_EXECUTOR = new ThreadPoolExecutor(0, 1,
+            HISTORY_EXECUTOR_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>());
+
+    /**
+     * The executor commands of {@link #SERIAL_EXECUTOR} run on.
+     */
+    private static volatile Executor sHistoryExecutor = DEFAULT_HISTORY_EXECUTOR;
+
+    private static final Executor SERIAL_EXECUTOR = new SerialExecutor();
+
+    /**
+     * Sets the executor on which the history files are read and written and
+     * the activities are resolved if {@link #setResolveActivitiesAsync(boolean)
+     * asynchronous}. Commands are handed to the executor one at a time, so
+     * it may as well be a shared thread pool. Defaults to an executor with a
+     * single thread which is released when idle.
+     *
+     * @param executor The executor or <code>null</code> for the default.
+     */
+    public static void setHistoryExecutor(Executor executor) {
+        sHistoryExecutor = executor != null ? executor : DEFAULT_HISTORY_EXECUTOR;
+    }
+
+    /**
+     * Executes commands one at a time in order on {@link #sHistoryExecutor}.
+     */
+    private static class SerialExecutor implements Executor {
+        final LinkedList<Runnable> mTasks = new LinkedList<Runnable>();
+        Runnable mActive;
+
+        public synchronized void execute(final Runnable r) {
+            mTasks.offer(new Runnable() {
+                public void run() {
+                    try {
+                        r.run();
+                    } finally {
+                        scheduleNext();
+                    }
+                }
+            });
+            if (mActive == null) {
+                scheduleNext();
+            }
+        }
+
+        protected synchronized void scheduleNext() {
+            if ((mActive = mTasks.poll()) != null) {
+                sHistoryExecutor.execute(mActive);
+            }
+        }
+    }
+
+    /**
+     * Gets the binary history file, creating it if needed. Must only be
+     * called from {@link #SERIAL_EXECUTOR}.
+     *
+     * @return The history file.
+     */
+    private HistoricalRecordLog getHistoryLog() {
+        if (mHistoryLog == null) {
+            mHistoryLog = new HistoricalRecordLog(mContext.getFileStreamPath(mHistoryLogFileName));
+        }
+        return mHistoryLog;
+    }
 
     /**
      * Persists the history data to the backing file if the latter
      * was provided. Calling this method before a call to {@link #readHistoricalData()}
      * throws an exception. Calling this method more than one without choosing an
      * activity has not effect.
+     * <p>
+     * <strong>Note:</strong> The history is written after a short delay so that
+     *       a series of choices results in a single write. Use {@link #flush()}
+     *       to write it right away.
+     * </p>
      *
      * @throws IllegalStateException If this method is called before a call to
      *         {@link #readHistoricalData()}.
@@ -582,9 +770,28 @@ class ActivityChooserModel extends DataSetObservable {
             }
             mHistoricalRecordsChanged = false;
             mCanReadHistoricalData = true;
-            if (!TextUtils.isEmpty(mHistoryFileName)) {
-                /*AsyncTask.*/SERIAL_EXECUTOR.execute(new HistoryPersister());
+            if (!TextUtils.isEmpty(mHistoryFileName) && !mPersistHistoricalDataScheduled) {
+                mPersistHistoricalDataScheduled = true;
+                mHandler.postDelayed(mPersistHistoricalDataRunnable,
+                        HISTORY_PERSIST_DELAY_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Starts writing any choices which have not been persisted yet without
+     * waiting for more choices. Clients should call this when they stop,
+     * e.g. from {@link android.app.Activity#onStop()}, so that no choices are
+     * lost if the process goes away.
+     */
+    public void flush() {
+        synchronized (mInstanceLock) {
+            if (!mPersistHistoricalDataScheduled) {
+                return;
             }
+            mPersistHistoricalDataScheduled = false;
+            mHandler.removeCallbacks(mPersistHistoricalDataRunnable);
+            /*AsyncTask.*/SERIAL_EXECUTOR.execute(new HistoryPersister());
         }
     }
 
@@ -613,14 +820,31 @@ class ActivityChooserModel extends DataSetObservable {
      */
     private void sortActivities() {
         synchronized (mInstanceLock) {
-            if (mActivitySorter != null && !mActivites.isEmpty()) {
-                mActivitySorter.sort(mIntent, mActivites,
-                        Collections.unmodifiableList(mHistoricalRecords));
+            if (sortActivitiesLocked()) {
                 notifyChanged();
             }
         }
     }
 
+    /**
+     * Sorts the activities without notifying clients.
+     *
+     * @return Whether there was anything to sort.
+     */
+    private boolean sortActivitiesLocked() {
+        mSortGeneration++;
+        if (mActivitySorter == null || mActivites.isEmpty()) {
+            return false;
+        }
+        mActivitySorter.sort(mIntent, mActivites,
+                Collections.unmodifiableList(mHistoricalRecords));
+        if (mActivitySorter != mDefaultSorter) {
+            // The default sorter keeps the indices up to date itself.
+            updateActivityIndicesLocked(mActivites, 0, mActivites.size());
+        }
+        return true;
+    }
+
     /**
      * Sets the maximal size of the historical data. Defaults to
      * {@link #DEFAULT_HISTORY_MAX_LENGTH}
@@ -717,9 +941,43 @@ class ActivityChooserModel extends DataSetObservable {
                 ResolveInfo resolveInfo = resolveInfos.get(i);
                 mActivites.add(new ActivityResolveInfo(resolveInfo));
             }
-            sortActivities();
+            onActivitiesChangedLocked();
+            sortActivitiesLocked();
+            // Warm up the labels and icons. Any not loaded yet by the time
+            // clients ask for them are loaded on the spot.
+            /*AsyncTask.*/SERIAL_EXECUTOR.execute(new ActivityInfoPrefetcher(resolveInfos));
         } else {
-            notifyChanged();
+            onActivitiesChangedLocked();
+        }
+        notifyChanged();
+    }
+
+    /**
+     * Updates the lookup of activities after the contents of {@link #mActivites}
+     * have been replaced.
+     */
+    private void onActivitiesChangedLocked() {
+        mActivitiesGeneration++;
+        mResolveInfoToActivityMap.clear();
+        final int activityCount = mActivites.size();
+        for (int i = 0; i < activityCount; i++) {
+            ActivityResolveInfo activity = mActivites.get(i);
+            mResolveInfoToActivityMap.put(activity.resolveInfo, activity);
+        }
+        updateActivityIndicesLocked(mActivites, 0, activityCount);
+    }
+
+    /**
+     * Updates {@link ActivityResolveInfo#index} of a range of activities.
+     *
+     * @param activities The activities.
+     * @param start The index of the first activity to update.
+     * @param end The index after the last activity to update.
+     */
+    private static void updateActivityIndicesLocked(List<ActivityResolveInfo> activities,
+            int start, int end) {
+        for (int i = start; i < end; i++) {
+            activities.get(i).index = i;
         }
     }
 
@@ -832,6 +1090,11 @@ class ActivityChooserModel extends DataSetObservable {
          */
         public float weight;
 
+        /**
+         * Position of the activity in the activities of the model.
+         */
+        int index;
+
         /**
          * Creates a new instance.
          *
@@ -881,6 +1144,14 @@ class ActivityChooserModel extends DataSetObservable {
 
     /**
      * Default activity sorter implementation.
+     * <p>
+     * The weight of an activity is the sum of the weights of its records, each
+     * decayed by {@link #WEIGHT_DECAY_COEFFICIENT} for every more recent record
+     * of an activity in the list. As long as the activities stay the same, the
+     * sorter remembers the records it has applied and updates the weights
+     * for records added to and pruned from the history since, then moves
+     * only the activities whose weights changed relative to the others.
+     * </p>
      */
     private final class DefaultSorter implements ActivitySorter {
         private static final float WEIGHT_DECAY_COEFFICIENT = 0.95f;
@@ -888,8 +1159,51 @@ class ActivityChooserModel extends DataSetObservable {
         private final Map<String, ActivityResolveInfo> mPackageNameToActivityMap =
             new HashMap<String, ActivityResolveInfo>();
 
+        /**
+         * The records applied to the weights, oldest first.
+         */
+        private final LinkedList<AppliedRecord> mAppliedRecords = new LinkedList<AppliedRecord>();
+
+        /**
+         * The number of applied records which matched an activity.
+         */
+        private int mMatchCount;
+
+        /**
+         * The activities the weights were computed for.
+         */
+        private List<ActivityResolveInfo> mSortedActivities;
+
+        /**
+         * The value of {@link #mActivitiesGeneration} when the weights were computed.
+         */
+        private int mSortedActivitiesGeneration;
+
         public void sort(Intent intent, List<ActivityResolveInfo> activities,
                 List<HistoricalRecord> historicalRecords) {
+            if (activities != mSortedActivities
+                    || mSortedActivitiesGeneration != mActivitiesGeneration
+                    || !updateWeights(activities, historicalRecords)) {
+                computeWeights(activities, historicalRecords);
+                Collections.sort(activities);
+                updateActivityIndicesLocked(activities, 0, activities.size());
+                mSortedActivities = activities;
+                mSortedActivitiesGeneration = mActivitiesGeneration;
+            }
+
+            if (DEBUG) {
+                final int activityCount = activities.size();
+                for (int i = 0; i < activityCount; i++) {
+                    Log.i(LOG_TAG, "Sorted: " + activities.get(i));
+                }
+            }
+        }
+
+        /**
+         * Computes the weights of the activities from all historical records.
+         */
+        private void computeWeights(List<ActivityResolveInfo> activities,
+                List<HistoricalRecord> historicalRecords) {
             Map<String, ActivityResolveInfo> packageNameToActivityMap =
                 mPackageNameToActivityMap;
             packageNameToActivityMap.clear();
@@ -902,6 +1216,10 @@ class ActivityChooserModel extends DataSetObservable {
                 packageNameToActivityMap.put(packageName, activity);
             }
 
+            LinkedList<AppliedRecord> appliedRecords = mAppliedRecords;
+            appliedRecords.clear();
+            int matchCount = 0;
+
             final int lastShareIndex = historicalRecords.size() - 1;
             float nextRecordWeight = 1;
             for (int i = lastShareIndex; i >= 0; i--) {
@@ -911,16 +1229,134 @@ class ActivityChooserModel extends DataSetObservable {
                 if (activity != null) {
                     activity.weight += historicalRecord.weight * nextRecordWeight;
                     nextRecordWeight = nextRecordWeight * WEIGHT_DECAY_COEFFICIENT;
+                    // Counted from the most recent record for now.
+                    appliedRecords.addFirst(new AppliedRecord(historicalRecord, activity,
+                            matchCount++));
+                } else {
+                    appliedRecords.addFirst(new AppliedRecord(historicalRecord, null, 0));
                 }
             }
 
-            Collections.sort(activities);
+            for (AppliedRecord appliedRecord : appliedRecords) {
+                if (appliedRecord.activity != null) {
+                    appliedRecord.match = matchCount - 1 - appliedRecord.match;
+                }
+            }
+            mMatchCount = matchCount;
+        }
 
-            if (DEBUG) {
-                for (int i = 0; i < activityCount; i++) {
-                    Log.i(LOG_TAG, "Sorted: " + activities.get(i));
+        /**
+         * Updates the weights and the order of the activities for the records
+         * which have been pruned from and added to the history since the
+         * weights were computed.
+         *
+         * @return Whether the weights could be updated. If not, the history
+         *         has been changed in another way and the weights have to be
+         *         computed from scratch.
+         */
+        private boolean updateWeights(List<ActivityResolveInfo> activities,
+                List<HistoricalRecord> historicalRecords) {
+            LinkedList<AppliedRecord> appliedRecords = mAppliedRecords;
+            final int recordCount = historicalRecords.size();
+
+            // Drop the weight of the oldest records which have been pruned.
+            HistoricalRecord oldestRecord = (recordCount > 0) ? historicalRecords.get(0) : null;
+            boolean pruned = false;
+            while (!appliedRecords.isEmpty() && appliedRecords.getFirst().record != oldestRecord) {
+                AppliedRecord prunedRecord = appliedRecords.removeFirst();
+                pruned = true;
+                ActivityResolveInfo activity = prunedRecord.activity;
+                if (activity != null) {
+                    final double decay = Math.pow(WEIGHT_DECAY_COEFFICIENT,
+                            mMatchCount - 1 - prunedRecord.match);
+                    activity.weight = Math.max(0.0f,
+                            (float) (activity.weight - prunedRecord.record.weight * decay));
+                    reorderActivity(activities, activity.index);
+                }
+            }
+
+            final int appliedCount = appliedRecords.size();
+            if (appliedCount == 0) {
+                if (pruned && recordCount > 0) {
+                    return false;
+                }
+            } else if (appliedCount > recordCount
+                    || appliedRecords.getLast().record != historicalRecords.get(appliedCount - 1)) {
+                return false;
+            }
+
+            // Apply the records added since, decaying the weight of all older ones.
+            Map<String, ActivityResolveInfo> packageNameToActivityMap =
+                mPackageNameToActivityMap;
+            for (int i = appliedCount; i < recordCount; i++) {
+                HistoricalRecord historicalRecord = historicalRecords.get(i);
+                String packageName = historicalRecord.activity.getPackageName();
+                ActivityResolveInfo activity = packageNameToActivityMap.get(packageName);
+                if (activity != null) {
+                    final int activityCount = activities.size();
+                    for (int j = 0; j < activityCount; j++) {
+                        activities.get(j).weight *= WEIGHT_DECAY_COEFFICIENT;
+                    }
+                    activity.weight += historicalRecord.weight;
+                    reorderActivity(activities, activity.index);
+                    appliedRecords.addLast(new AppliedRecord(historicalRecord, activity,
+                            mMatchCount++));
+                } else {
+                    appliedRecords.addLast(new AppliedRecord(historicalRecord, null, 0));
                 }
             }
+            return true;
+        }
+
+        /**
+         * Moves an activity whose weight has changed to its place in the
+         * otherwise sorted activities.
+         *
+         * @param activities The activities.
+         * @param index The index of the activity.
+         */
+        private void reorderActivity(List<ActivityResolveInfo> activities, int index) {
+            ActivityResolveInfo activity = activities.get(index);
+            int newIndex = index;
+            while (newIndex > 0 && activities.get(newIndex - 1).compareTo(activity) > 0) {
+                activities.set(newIndex, activities.get(newIndex - 1));
+                newIndex--;
+            }
+            final int lastIndex = activities.size() - 1;
+            while (newIndex < lastIndex && activity.compareTo(activities.get(newIndex + 1)) > 0) {
+                activities.set(newIndex, activities.get(newIndex + 1));
+                newIndex++;
+            }
+            activities.set(newIndex, activity);
+            updateActivityIndicesLocked(activities, Math.min(index, newIndex),
+                    Math.max(index, newIndex) + 1);
+        }
+    }
+
+    /**
+     * A historical record applied to the weights by the {@link DefaultSorter}.
+     */
+    private static final class AppliedRecord {
+
+        /**
+         * The record.
+         */
+        final HistoricalRecord record;
+
+        /**
+         * The activity the record was applied to, <code>null</code> if none.
+         */
+        final ActivityResolveInfo activity;
+
+        /**
+         * The number of records applied to an activity before this one.
+         */
+        int match;
+
+        AppliedRecord(HistoricalRecord record, ActivityResolveInfo activity, int match) {
+            this.record = record;
+            this.activity = activity;
+            this.match = match;
         }
     }
 
@@ -930,6 +1366,79 @@ class ActivityChooserModel extends DataSetObservable {
     private final class HistoryLoader implements Runnable {
 
        public void run() {
+            HistoricalRecordLog historyLog = getHistoryLog();
+            List<HistoricalRecord> readRecords;
+            if (historyLog.exists()) {
+                try {
+                    readRecords = historyLog.read();
+                } catch (IOException ioe) {
+                    Log.e(LOG_TAG, "Error reading historical recrod file: "
+                            + mHistoryLogFileName, ioe);
+                    return;
+                }
+            } else {
+                readRecords = readXmlHistoricalRecords();
+                if (readRecords == null) {
+                    return;
+                }
+                // One time migration of the records from the XML file.
+                try {
+                    historyLog.compact(readRecords, readRecords.size());
+                    mContext.deleteFile(mHistoryFileName);
+                } catch (IOException ioe) {
+                    Log.e(LOG_TAG, "Error writing historical recrod file: "
+                            + mHistoryLogFileName, ioe);
+                }
+            }
+
+            if (DEBUG) {
+                Log.i(LOG_TAG, "Read " + readRecords.size() + " historical records.");
+            }
+
+            synchronized (mInstanceLock) {
+                Set<HistoricalRecord> uniqueShareRecords =
+                    new LinkedHashSet<HistoricalRecord>(readRecords);
+
+                // Make sure no duplicates. Example: Read a file with
+                // one record, add one record, persist the two records,
+                // add a record, read the persisted records - the
+                // read two records should not be added again.
+                List<HistoricalRecord> historicalRecords = mHistoricalRecords;
+                final int historicalRecordsCount = historicalRecords.size();
+                for (int i = historicalRecordsCount - 1; i >= 0; i--) {
+                    HistoricalRecord historicalRecord = historicalRecords.get(i);
+                    uniqueShareRecords.add(historicalRecord);
+                }
+
+                if (historicalRecords.size() == uniqueShareRecords.size()) {
+                    return;
+                }
+
+                // Make sure the oldest records go to the end.
+                historicalRecords.clear();
+                historicalRecords.addAll(uniqueShareRecords);
+
+                mHistoricalRecordsChanged = true;
+
+                // Do this on the client thread since the client may be on the UI
+                // thread, wait for data changes which happen during sorting, and
+                // perform UI modification based on the data change.
+                mHandler.post(new Runnable() {
+                    public void run() {
+                        pruneExcessiveHistoricalRecordsLocked();
+                        sortActivities();
+                    }
+                });
+            }
+        }
+
+        /**
+         * Reads the historical records from the XML file used by earlier versions.
+         *
+         * @return The records or <code>null</code> if there is no such file
+         *         or it could not be read.
+         */
+        private List<HistoricalRecord> readXmlHistoricalRecords() {
             FileInputStream fis = null;
             try {
                 fis = mContext.openFileInput(mHistoryFileName);
@@ -937,7 +1446,7 @@ class ActivityChooserModel extends DataSetObservable {
                 if (DEBUG) {
                     Log.i(LOG_TAG, "Could not open historical records file: " + mHistoryFileName);
                 }
-                return;
+                return null;
             }
             try {
                 XmlPullParser parser = Xml.newPullParser();
@@ -982,46 +1491,7 @@ class ActivityChooserModel extends DataSetObservable {
                         Log.i(LOG_TAG, "Read " + readRecord.toString());
                     }
                 }
-
-                if (DEBUG) {
-                    Log.i(LOG_TAG, "Read " + readRecords.size() + " historical records.");
-                }
-
-                synchronized (mInstanceLock) {
-                    Set<HistoricalRecord> uniqueShareRecords =
-                        new LinkedHashSet<HistoricalRecord>(readRecords);
-
-                    // Make sure no duplicates. Example: Read a file with
-                    // one record, add one record, persist the two records,
-                    // add a record, read the persisted records - the
-                    // read two records should not be added again.
-                    List<HistoricalRecord> historicalRecords = mHistoricalRecords;
-                    final int historicalRecordsCount = historicalRecords.size();
-                    for (int i = historicalRecordsCount - 1; i >= 0; i--) {
-                        HistoricalRecord historicalRecord = historicalRecords.get(i);
-                        uniqueShareRecords.add(historicalRecord);
-                    }
-
-                    if (historicalRecords.size() == uniqueShareRecords.size()) {
-                        return;
-                    }
-
-                    // Make sure the oldest records go to the end.
-                    historicalRecords.clear();
-                    historicalRecords.addAll(uniqueShareRecords);
-
-                    mHistoricalRecordsChanged = true;
-
-                    // Do this on the client thread since the client may be on the UI
-                    // thread, wait for data changes which happen during sorting, and
-                    // perform UI modification based on the data change.
-                    mHandler.post(new Runnable() {
-                        public void run() {
-                            pruneExcessiveHistoricalRecordsLocked();
-                            sortActivities();
-                        }
-                    });
-                }
+                return readRecords;
             } catch (XmlPullParserException xppe) {
                 Log.e(LOG_TAG, "Error reading historical recrod file: " + mHistoryFileName, xppe);
             } catch (IOException ioe) {
@@ -1035,69 +1505,128 @@ class ActivityChooserModel extends DataSetObservable {
                     }
                 }
             }
+            return null;
         }
     }
 
     /**
-     * Command for persisting the historical records to a file off the UI thread.
+     * Command for resolving and sorting the activities for an intent off the UI thread.
      */
-    private final class HistoryPersister implements Runnable {
+    private final class ActivitiesLoader implements Runnable {
 
-        public void run() {
-            FileOutputStream fos = null;
-            List<HistoricalRecord> records = null;
+        /**
+         * The intent to resolve activities for.
+         */
+        private final Intent mLoaderIntent;
 
+        /**
+         * The value of {@link #mIntentGeneration} when the intent was set.
+         */
+        private final int mLoaderGeneration;
+
+        public ActivitiesLoader(Intent intent, int generation) {
+            mLoaderIntent = intent;
+            mLoaderGeneration = generation;
+        }
+
+        public void run() {
             synchronized (mInstanceLock) {
-                records = new ArrayList<HistoricalRecord>(mHistoricalRecords);
+                if (mLoaderGeneration != mIntentGeneration) {
+                    return;
+                }
             }
 
-            try {
-                fos = mContext.openFileOutput(mHistoryFileName, Context.MODE_PRIVATE);
-            } catch (FileNotFoundException fnfe) {
-                Log.e(LOG_TAG, "Error writing historical recrod file: " + mHistoryFileName, fnfe);
-                return;
+            List<ResolveInfo> resolveInfos =
+                mContext.getPackageManager().queryIntentActivities(mLoaderIntent, 0);
+            final int resolveInfoCount = resolveInfos.size();
+            final List<ActivityResolveInfo> activities =
+                new ArrayList<ActivityResolveInfo>(resolveInfoCount);
+            for (int i = 0; i < resolveInfoCount; i++) {
+                ResolveInfo resolveInfo = resolveInfos.get(i);
+                activities.add(new ActivityResolveInfo(resolveInfo));
             }
+            // Have the labels and icons ready by the time clients get notified.
+            ResolveInfoCache.get(mContext).prefetch(resolveInfos);
 
-            XmlSerializer serializer = Xml.newSerializer();
-
-            try {
-                serializer.setOutput(fos, null);
-                serializer.startDocument("UTF-8", true);
-                serializer.startTag(null, TAG_HISTORICAL_RECORDS);
-
-                final int recordCount = records.size();
-                for (int i = 0; i < recordCount; i++) {
-                    HistoricalRecord record = records.remove(0);
-                    serializer.startTag(null, TAG_HISTORICAL_RECORD);
-                    serializer.attribute(null, ATTRIBUTE_ACTIVITY, record.activity.flattenToString());
-                    serializer.attribute(null, ATTRIBUTE_TIME, String.valueOf(record.time));
-                    serializer.attribute(null, ATTRIBUTE_WEIGHT, String.valueOf(record.weight));
-                    serializer.endTag(null, TAG_HISTORICAL_RECORD);
+            final int sortGeneration;
+            synchronized (mInstanceLock) {
+                if (mLoaderGeneration != mIntentGeneration) {
                     if (DEBUG) {
-                        Log.i(LOG_TAG, "Wrote " + record.toString());
+                        Log.i(LOG_TAG, "Dropped activities for stale intent: " + mLoaderIntent);
+                    }
+                    return;
+                }
+                if (mActivitySorter != null && !activities.isEmpty()) {
+                    mActivitySorter.sort(mLoaderIntent, activities,
+                            Collections.unmodifiableList(mHistoricalRecords));
+                }
+                sortGeneration = mSortGeneration;
+            }
+
+            // Swap the activities on the client thread since clients such as
+            // adapters expect them not to change between notifications.
+            mHandler.post(new Runnable() {
+                public void run() {
+                    synchronized (mInstanceLock) {
+                        if (mLoaderGeneration != mIntentGeneration) {
+                            return;
+                        }
+                        mActivites.clear();
+                        mActivites.addAll(activities);
+                        onActivitiesChangedLocked();
+                        if (sortGeneration != mSortGeneration && mActivitySorter != null
+                                && !mActivites.isEmpty()) {
+                            // History or sorter changed since the sort above.
+                            sortActivities();
+                        } else {
+                            notifyChanged();
+                        }
                     }
                 }
+            });
+        }
+    }
+
+    /**
+     * Command for loading the labels and icons of activities off the UI thread.
+     */
+    private final class ActivityInfoPrefetcher implements Runnable {
+
+        /**
+         * The activities to load the labels and icons of.
+         */
+        private final List<ResolveInfo> mResolveInfos;
+
+        public ActivityInfoPrefetcher(List<ResolveInfo> resolveInfos) {
+            mResolveInfos = resolveInfos;
+        }
+
+        public void run() {
+            ResolveInfoCache.get(mContext).prefetch(mResolveInfos);
+        }
+    }
+
+    /**
+     * Command for persisting the historical records to a file off the UI thread.
+     */
+    private final class HistoryPersister implements Runnable {
 
-                serializer.endTag(null, TAG_HISTORICAL_RECORDS);
-                serializer.endDocument();
+        public void run() {
+            List<HistoricalRecord> records = null;
+            final int historyMaxSize;
 
+            synchronized (mInstanceLock) {
+                records = new ArrayList<HistoricalRecord>(mHistoricalRecords);
+                historyMaxSize = mHistoryMaxSize;
+            }
+
+            try {
+                getHistoryLog().write(records, historyMaxSize);
                 if (DEBUG) {
-                    Log.i(LOG_TAG, "Wrote " + recordCount + " historical records.");
+                    Log.i(LOG_TAG, "Wrote " + records.size() + " historical records.");
                 }
-            } catch (IllegalArgumentException iae) {
-                Log.e(LOG_TAG, "Error writing historical recrod file: " + mHistoryFileName, iae);
-            } catch (IllegalStateException ise) {
-                Log.e(LOG_TAG, "Error writing historical recrod file: " + mHistoryFileName, ise);
             } catch (IOException ioe) {
-                Log.e(LOG_TAG, "Error writing historical recrod file: " + mHistoryFileName, ioe);
-            } finally {
-                if (fos != null) {
-                    try {
-                        fos.close();
-                    } catch (IOException e) {
-                        /* ignore */
-                    }
-                }
+                Log.e(LOG_TAG, "Error writing historical recrod file: " + mHistoryLogFileName, ioe);
             }
         }
     }
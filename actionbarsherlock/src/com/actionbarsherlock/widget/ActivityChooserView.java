@@ -24,7 +24,6 @@ import com.actionbarsherlock.view.ActionProvider;
 import com.actionbarsherlock.widget.ActivityChooserModel.ActivityChooserModelClient;
 import android.content.Context;
 import android.content.Intent;
-import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
@@ -518,10 +517,10 @@ class ActivityChooserView extends ViewGroup implements ActivityChooserModelClien
         if (activityCount > 0 && historySize > 0) {
             mDefaultActivityButton.setVisibility(VISIBLE);
             ResolveInfo activity = mAdapter.getDefaultActivity();
-            PackageManager packageManager = mContext.getPackageManager();
-            mDefaultActivityButtonImage.setImageDrawable(activity.loadIcon(packageManager));
+            ResolveInfoCache resolveInfoCache = ResolveInfoCache.get(mContext);
+            mDefaultActivityButtonImage.setImageDrawable(resolveInfoCache.getIcon(activity));
             if (mDefaultActionButtonContentDescription != 0) {
-                CharSequence label = activity.loadLabel(packageManager);
+                CharSequence label = resolveInfoCache.getLabel(activity);
                 String contentDescription = mContext.getString(
                         mDefaultActionButtonContentDescription, label);
                 mDefaultActivityButton.setContentDescription(contentDescription);
@@ -742,14 +741,14 @@ class ActivityChooserView extends ViewGroup implements ActivityChooserModelClien
                         convertView = LayoutInflater.from(getContext()).inflate(
                                 R.layout.abs__activity_chooser_view_list_item, parent, false);
                     }
-                    PackageManager packageManager = mContext.getPackageManager();
+                    ResolveInfoCache resolveInfoCache = ResolveInfoCache.get(mContext);
                     // Set the icon
                     ImageView iconView = (ImageView) convertView.findViewById(R.id.abs__icon);
                     ResolveInfo activity = (ResolveInfo) getItem(position);
-                    iconView.setImageDrawable(activity.loadIcon(packageManager));
+                    iconView.setImageDrawable(resolveInfoCache.getIcon(activity));
                     // Set the title.
                     TextView titleView = (TextView) convertView.findViewById(R.id.abs__title);
-                    titleView.setText(activity.loadLabel(packageManager));
+                    titleView.setText(resolveInfoCache.getLabel(activity));
                     if (IS_HONEYCOMB) {
                         // Highlight the default.
                         if (mShowDefaultActivity && position == 0 && mHighlightDefaultActivity) {
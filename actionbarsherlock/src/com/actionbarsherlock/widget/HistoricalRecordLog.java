@@ -0,0 +1,242 @@
+package com.actionbarsherlock.widget;
+
+import android.content.ComponentName;
+import android.util.Log;
+
+import com.actionbarsherlock.widget.ActivityChooserModel.HistoricalRecord;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only binary file of {@link HistoricalRecord}s.
+ *
+ * <p>The file starts with a header followed by entries of two kinds: a
+ * component entry assigns the next id to the package and class name of a
+ * {@link ComponentName}, and a record entry holds the id of the chosen
+ * component along with the choice time and weight. Component names are thus
+ * written once per file rather than once per record, and new records are
+ * appended without touching the ones already written. Once the file holds too many records it is
+ * compacted by rewriting only the most recent ones.</p>
+ *
+ * <p>Reading stops at a truncated trailing entry, as left by a write that was
+ * interrupted, and the next write then compacts the file.</p>
+ *
+ * <p><strong>Note:</strong> This class is not thread safe. All calls must be
+ * made from the same thread or otherwise serialized.</p>
+ */
+final class HistoricalRecordLog {
+    private static final String LOG_TAG = HistoricalRecordLog.class.getSimpleName();
+
+    private static final int MAGIC = 0x41434d48; // ACMH
+    private static final int VERSION = 1;
+
+    private static final byte ENTRY_COMPONENT = 1;
+    private static final byte ENTRY_RECORD = 2;
+
+    /**
+     * How many times the maximal history size the file may grow to before it
+     * is compacted.
+     */
+    private static final int COMPACTION_FACTOR = 2;
+
+    private final File mFile;
+
+    /** Ids of the components written to the file so far. */
+    private final Map<ComponentName, Integer> mComponentIds = new HashMap<ComponentName, Integer>();
+
+    /** The number of records in the file. */
+    private int mRecordCount;
+
+    /**
+     * The last record in the file, <code>null</code> if the contents of the
+     * file are unknown and it has to be rewritten.
+     */
+    private HistoricalRecord mLastRecord;
+
+    HistoricalRecordLog(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Whether the backing file exists.
+     */
+    boolean exists() {
+        return mFile.exists();
+    }
+
+    /**
+     * Reads all records from the backing file.
+     *
+     * @return The records, oldest first.
+     * @throws IOException If the file cannot be read or is not a history file.
+     */
+    List<HistoricalRecord> read() throws IOException {
+        mComponentIds.clear();
+        mRecordCount = 0;
+        mLastRecord = null;
+
+        final List<HistoricalRecord> records = new ArrayList<HistoricalRecord>();
+        final ArrayList<ComponentName> components = new ArrayList<ComponentName>();
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a history file: " + mFile);
+            }
+            while (true) {
+                final int type = in.read();
+                if (type == -1) {
+                    break;
+                }
+                if (type == ENTRY_COMPONENT) {
+                    final String packageName = in.readUTF();
+                    final ComponentName component = new ComponentName(packageName, in.readUTF());
+                    mComponentIds.put(component, components.size());
+                    components.add(component);
+                } else if (type == ENTRY_RECORD) {
+                    final int id = in.readInt();
+                    final long time = in.readLong();
+                    final float weight = in.readFloat();
+                    if (id < 0 || id >= components.size()) {
+                        throw new IOException("Unknown component " + id + " in " + mFile);
+                    }
+                    records.add(new HistoricalRecord(components.get(id), time, weight));
+                } else {
+                    throw new IOException("Unknown entry " + type + " in " + mFile);
+                }
+            }
+            mRecordCount = records.size();
+            if (mRecordCount > 0) {
+                mLastRecord = records.get(mRecordCount - 1);
+            }
+        } catch (EOFException eofe) {
+            // Keep what was fully written; the next write rewrites the file.
+            Log.w(LOG_TAG, "Truncated history file: " + mFile);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ioe) {
+                    /* ignore */
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Brings the backing file up to date with the given records. Records
+     * following the last one written are appended, unless the file has grown
+     * too large or does not end with a record in the list, in which case the
+     * file is compacted.
+     *
+     * @param records The records, oldest first.
+     * @param maxSize The maximal number of records to keep on compaction.
+     */
+    void write(List<HistoricalRecord> records, int maxSize) throws IOException {
+        final int lastIndex = mLastRecord != null ? records.lastIndexOf(mLastRecord) : -1;
+        final int appendCount = records.size() - lastIndex - 1;
+        if (lastIndex < 0 || mRecordCount + appendCount > maxSize * COMPACTION_FACTOR) {
+            compact(records, maxSize);
+        } else if (appendCount > 0) {
+            append(records, lastIndex + 1);
+        }
+    }
+
+    /**
+     * Replaces the backing file with one holding the last <code>maxSize</code>
+     * of the given records.
+     *
+     * @param records The records, oldest first.
+     * @param maxSize The maximal number of records to write.
+     */
+    void compact(List<HistoricalRecord> records, int maxSize) throws IOException {
+        mComponentIds.clear();
+        mRecordCount = 0;
+        mLastRecord = null;
+
+        final File tempFile = new File(mFile.getPath() + ".tmp");
+        final int start = Math.max(0, records.size() - maxSize);
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeRecords(out, records, start);
+            out.close();
+            out = null;
+            if (!tempFile.renameTo(mFile)) {
+                throw new IOException("Could not replace " + mFile);
+            }
+        } catch (IOException ioe) {
+            mComponentIds.clear();
+            mRecordCount = 0;
+            mLastRecord = null;
+            throw ioe;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ioe) {
+                    /* ignore */
+                }
+            }
+        }
+    }
+
+    private void append(List<HistoricalRecord> records, int start) throws IOException {
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mFile, true)));
+            writeRecords(out, records, start);
+            out.close();
+            out = null;
+        } catch (IOException ioe) {
+            // The file may end with a partial entry now.
+            mLastRecord = null;
+            throw ioe;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ioe) {
+                    /* ignore */
+                }
+            }
+        }
+    }
+
+    private void writeRecords(DataOutputStream out, List<HistoricalRecord> records, int start)
+            throws IOException {
+        final int recordCount = records.size();
+        for (int i = start; i < recordCount; i++) {
+            final HistoricalRecord record = records.get(i);
+            Integer id = mComponentIds.get(record.activity);
+            if (id == null) {
+                id = mComponentIds.size();
+                mComponentIds.put(record.activity, id);
+                out.writeByte(ENTRY_COMPONENT);
+                out.writeUTF(record.activity.getPackageName());
+                out.writeUTF(record.activity.getClassName());
+            }
+            out.writeByte(ENTRY_RECORD);
+            out.writeInt(id);
+            out.writeLong(record.time);
+            out.writeFloat(record.weight);
+            mRecordCount++;
+            mLastRecord = record;
+        }
+    }
+}
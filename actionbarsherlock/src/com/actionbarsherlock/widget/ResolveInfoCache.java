@@ -0,0 +1,171 @@
+package com.actionbarsherlock.widget;
+
+import android.content.BroadcastReceiver;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ActivityInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.support.v4.util.LruCache;
+
+import java.util.List;
+
+/**
+ * Per-process cache of the labels and icons of the activities offered by
+ * the activity chooser, keyed by component name. Icons are kept as
+ * {@link Drawable.ConstantState}s so that each view gets its own drawable
+ * while sharing the decoded bitmap.
+ *
+ * <p>The entries of a package are dropped when it is changed, replaced or
+ * removed, and all entries when the locale changes.</p>
+ *
+ * <p><strong>Note:</strong> This class is thread safe. Entries are usually
+ * loaded in the background by {@link #prefetch(List)}, so that the UI thread
+ * does not have to.</p>
+ */
+final class ResolveInfoCache {
+    /**
+     * The maximal number of activities to keep.
+     */
+    private static final int MAX_ENTRIES = 128;
+
+    private static ResolveInfoCache sInstance;
+
+    private final Context mContext;
+
+    private final PackageManager mPackageManager;
+
+    private final LruCache<ComponentName, Entry> mEntries =
+        new LruCache<ComponentName, Entry>(MAX_ENTRIES);
+
+    private final BroadcastReceiver mInvalidationReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Uri data = intent.getData();
+            if (data != null) {
+                invalidatePackage(data.getSchemeSpecificPart());
+            } else {
+                invalidateAll();
+            }
+        }
+    };
+
+    /**
+     * Gets the cache of this process.
+     *
+     * @param context Context for accessing the package manager.
+     * @return The cache.
+     */
+    static synchronized ResolveInfoCache get(Context context) {
+        if (sInstance == null) {
+            sInstance = new ResolveInfoCache(context.getApplicationContext());
+            sInstance.registerInvalidationReceiver();
+        }
+        return sInstance;
+    }
+
+    ResolveInfoCache(Context context) {
+        mContext = context;
+        mPackageManager = context.getPackageManager();
+    }
+
+    private void registerInvalidationReceiver() {
+        IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        packageFilter.addDataScheme("package");
+        mContext.registerReceiver(mInvalidationReceiver, packageFilter);
+        mContext.registerReceiver(mInvalidationReceiver,
+                new IntentFilter(Intent.ACTION_LOCALE_CHANGED));
+    }
+
+    /**
+     * Gets the label of an activity.
+     *
+     * @param resolveInfo The activity.
+     * @return The label.
+     */
+    CharSequence getLabel(ResolveInfo resolveInfo) {
+        return getEntry(resolveInfo).label;
+    }
+
+    /**
+     * Gets a new drawable with the icon of an activity.
+     *
+     * @param resolveInfo The activity.
+     * @return The icon.
+     */
+    Drawable getIcon(ResolveInfo resolveInfo) {
+        Drawable.ConstantState icon = getEntry(resolveInfo).icon;
+        if (icon == null) {
+            // Not every drawable can be shared.
+            return resolveInfo.loadIcon(mPackageManager);
+        }
+        return icon.newDrawable();
+    }
+
+    /**
+     * Loads the labels and icons of activities which are not cached yet.
+     * Should be called off the UI thread.
+     *
+     * @param resolveInfos The activities, most relevant first.
+     */
+    void prefetch(List<ResolveInfo> resolveInfos) {
+        final int count = Math.min(resolveInfos.size(), MAX_ENTRIES);
+        for (int i = 0; i < count; i++) {
+            getEntry(resolveInfos.get(i));
+        }
+    }
+
+    /**
+     * Drops the entries of all activities of a package.
+     *
+     * @param packageName The package name.
+     */
+    void invalidatePackage(String packageName) {
+        for (ComponentName component : mEntries.snapshot().keySet()) {
+            if (component.getPackageName().equals(packageName)) {
+                mEntries.remove(component);
+            }
+        }
+    }
+
+    /**
+     * Drops all entries.
+     */
+    void invalidateAll() {
+        mEntries.evictAll();
+    }
+
+    private Entry getEntry(ResolveInfo resolveInfo) {
+        ActivityInfo activityInfo = resolveInfo.activityInfo;
+        ComponentName component = new ComponentName(activityInfo.packageName, activityInfo.name);
+        Entry entry = mEntries.get(component);
+        if (entry == null) {
+            Drawable icon = resolveInfo.loadIcon(mPackageManager);
+            entry = new Entry(resolveInfo.loadLabel(mPackageManager),
+                    (icon != null) ? icon.getConstantState() : null);
+            mEntries.put(component, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * The cached label and icon of an activity.
+     */
+    private static final class Entry {
+        final CharSequence label;
+        final Drawable.ConstantState icon;
+
+        Entry(CharSequence label, Drawable.ConstantState icon) {
+            this.label = label;
+            this.icon = icon;
+        }
+    }
+}
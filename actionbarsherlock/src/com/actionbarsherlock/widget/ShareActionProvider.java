@@ -18,7 +18,6 @@ package com.actionbarsherlock.widget;
 
 import android.content.Context;
 import android.content.Intent;
-import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.graphics.drawable.Drawable;
 import android.util.TypedValue;
@@ -32,6 +31,8 @@ import com.actionbarsherlock.view.MenuItem.OnMenuItemClickListener;
 import com.actionbarsherlock.view.SubMenu;
 import com.actionbarsherlock.widget.ActivityChooserModel.OnChooseActivityListener;
 
+import java.util.concurrent.Executor;
+
 /**
  * This is a provider for a share action. It is responsible for creating views
  * that enable data sharing and also to show a sub menu with sharing activities
@@ -125,6 +126,11 @@ public class ShareActionProvider extends ActionProvider {
      */
     private String mShareHistoryFileName = DEFAULT_SHARE_HISTORY_FILE_NAME;
 
+    /**
+     * Whether share targets are resolved off the UI thread.
+     */
+    private boolean mResolveShareTargetsAsync;
+
     private OnShareTargetSelectedListener mOnShareTargetSelectedListener;
 
     private OnChooseActivityListener mOnChooseActivityListener;
@@ -197,7 +203,7 @@ public class ShareActionProvider extends ActionProvider {
         subMenu.clear();
 
         ActivityChooserModel dataModel = ActivityChooserModel.get(mContext, mShareHistoryFileName);
-        PackageManager packageManager = mContext.getPackageManager();
+        ResolveInfoCache resolveInfoCache = ResolveInfoCache.get(mContext);
 
         final int expandedActivityCount = dataModel.getActivityCount();
         final int collapsedActivityCount = Math.min(expandedActivityCount, mMaxShownActivityCount);
@@ -205,8 +211,8 @@ public class ShareActionProvider extends ActionProvider {
         // Populate the sub-menu with a sub set of the activities.
         for (int i = 0; i < collapsedActivityCount; i++) {
             ResolveInfo activity = dataModel.getActivity(i);
-            subMenu.add(0, i, i, activity.loadLabel(packageManager))
-                .setIcon(activity.loadIcon(packageManager))
+            subMenu.add(0, i, i, resolveInfoCache.getLabel(activity))
+                .setIcon(resolveInfoCache.getIcon(activity))
                 .setOnMenuItemClickListener(mOnMenuItemClickListener);
         }
 
@@ -217,8 +223,8 @@ public class ShareActionProvider extends ActionProvider {
                     mContext.getString(R.string.abs__activity_chooser_view_see_all));
             for (int i = 0; i < expandedActivityCount; i++) {
                 ResolveInfo activity = dataModel.getActivity(i);
-                expandedSubMenu.add(0, i, i, activity.loadLabel(packageManager))
-                    .setIcon(activity.loadIcon(packageManager))
+                expandedSubMenu.add(0, i, i, resolveInfoCache.getLabel(activity))
+                    .setIcon(resolveInfoCache.getIcon(activity))
                     .setOnMenuItemClickListener(mOnMenuItemClickListener);
             }
         }
@@ -265,9 +271,48 @@ public class ShareActionProvider extends ActionProvider {
     public void setShareIntent(Intent shareIntent) {
         ActivityChooserModel dataModel = ActivityChooserModel.get(mContext,
             mShareHistoryFileName);
+        dataModel.setResolveActivitiesAsync(mResolveShareTargetsAsync);
         dataModel.setIntent(shareIntent);
     }
 
+    /**
+     * Sets whether the share targets for the intents passed to
+     * {@link #setShareIntent(Intent)} are resolved off the UI thread. Resolving
+     * may take tens of milliseconds when many applications can share. If set,
+     * the share targets for the previous intent are shown until the new ones
+     * are ready. Defaults to <code>false</code>.
+     *
+     * @param resolveShareTargetsAsync Whether to resolve share targets asynchronously.
+     */
+    public void setResolveShareTargetsAsync(boolean resolveShareTargetsAsync) {
+        mResolveShareTargetsAsync = resolveShareTargetsAsync;
+    }
+
+    /**
+     * Writes any share choices which have not been persisted yet without
+     * waiting for more. Choices are written shortly after they are made,
+     * so calling this from {@link android.app.Activity#onStop()} ensures
+     * that none are lost if the process goes away.
+     */
+    public void flushShareHistory() {
+        ActivityChooserModel dataModel = ActivityChooserModel.get(mContext,
+            mShareHistoryFileName);
+        dataModel.flush();
+    }
+
+    /**
+     * Sets the executor on which share history files are read and written by
+     * all share action providers, e.g. a thread pool of the application.
+     * Commands are handed to the executor one at a time. Set to
+     * <code>null</code> to use the default executor, whose single thread
+     * is released when idle.
+     *
+     * @param executor The executor.
+     */
+    public static void setShareHistoryExecutor(Executor executor) {
+        ActivityChooserModel.setHistoryExecutor(executor);
+    }
+
     /**
      * Reusable listener for handling share item clicks.
      */
@@ -0,0 +1,144 @@
+package com.actionbarsherlock.internal;
+
+import android.app.Activity;
+import android.content.Context;
+import android.view.KeyCharacterMap;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.internal.Implementation;
+import org.robolectric.internal.Implements;
+import org.robolectric.tester.android.view.TestMenu;
+
+import com.actionbarsherlock.ActionBarSherlock;
+import com.actionbarsherlock.internal.view.menu.ShadowFullSparseIntArray;
+import com.actionbarsherlock.view.ActionProvider;
+import com.actionbarsherlock.view.Menu;
+import com.actionbarsherlock.view.MenuItem;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class ActionBarSherlockCompatTest {
+    /** Loads a full keyboard, which Robolectric does not, and counts the loads. */
+    @Implements(KeyCharacterMap.class)
+    public static class ShadowVirtualKeyCharacterMap {
+        static int loadCount;
+
+        @Implementation
+        public static KeyCharacterMap load(int deviceId) {
+            loadCount++;
+            return Robolectric.newInstanceOf(KeyCharacterMap.class);
+        }
+
+        @Implementation
+        public int getKeyboardType() {
+            return KeyCharacterMap.FULL;
+        }
+    }
+
+    private MenuActivity activity;
+    private ActionBarSherlockCompat sherlock;
+
+    @Before
+    public void setUp() {
+        Robolectric.bindShadowClass(ShadowFullSparseIntArray.class);
+        Robolectric.bindShadowClass(ShadowVirtualKeyCharacterMap.class);
+        ShadowVirtualKeyCharacterMap.loadCount = 0;
+        activity = new MenuActivity();
+        sherlock = new ActionBarSherlockCompat(activity, 0);
+    }
+
+    @Test
+    public void diffedInvalidationKeepsActionViewsAndProviders() {
+        sherlock.setMenuDiffingEnabled(true);
+        sherlock.dispatchPrepareOptionsMenu(new TestMenu(activity));
+        final Menu menu = activity.preparedMenu;
+        final View actionView = menu.findItem(1).getActionView();
+        final ActionProvider actionProvider = menu.findItem(2).getActionProvider();
+        assertThat(activity.createCount).isEqualTo(1);
+
+        activity.showExtra = true;
+        sherlock.dispatchInvalidateOptionsMenu();
+        sherlock.dispatchPrepareOptionsMenu(new TestMenu(activity));
+
+        assertThat(activity.createCount).isEqualTo(2);
+        assertThat(activity.preparedMenu).isSameAs(menu);
+        assertThat(menu.size()).isEqualTo(3);
+        assertThat(menu.findItem(1).getActionView()).isSameAs(actionView);
+        assertThat(menu.findItem(2).getActionProvider()).isSameAs(actionProvider);
+        assertThat(menu.findItem(3)).isNotNull();
+    }
+
+    @Test
+    public void invalidationWithoutDiffingRecreatesActionViews() {
+        sherlock.dispatchPrepareOptionsMenu(new TestMenu(activity));
+        final Menu menu = activity.preparedMenu;
+        final View actionView = menu.findItem(1).getActionView();
+        final ActionProvider actionProvider = menu.findItem(2).getActionProvider();
+
+        sherlock.dispatchInvalidateOptionsMenu();
+        sherlock.dispatchPrepareOptionsMenu(new TestMenu(activity));
+
+        assertThat(menu.findItem(1).getActionView()).isNotSameAs(actionView);
+        assertThat(menu.findItem(2).getActionProvider()).isNotSameAs(actionProvider);
+    }
+
+    @Test
+    public void keyCharacterMapIsLoadedOnce() {
+        for (int i = 0; i < 3; i++) {
+            sherlock.dispatchInvalidateOptionsMenu();
+            sherlock.dispatchPrepareOptionsMenu(new TestMenu(activity));
+        }
+
+        assertThat(ShadowVirtualKeyCharacterMap.loadCount).isEqualTo(1);
+    }
+
+    /** Creates a new action view and provider every time, as inflating a menu does. */
+    private static class MenuActivity extends Activity implements
+            ActionBarSherlock.OnCreateOptionsMenuListener,
+            ActionBarSherlock.OnPrepareOptionsMenuListener {
+        boolean showExtra;
+        int createCount;
+        Menu preparedMenu;
+
+        @Override
+        public boolean onCreateOptionsMenu(Menu menu) {
+            createCount++;
+            menu.add(0, 1, 0, "Search")
+                .setActionView(new View(this))
+                .setShowAsAction(MenuItem.SHOW_AS_ACTION_ALWAYS);
+            menu.add(0, 2, 0, "Share")
+                .setActionProvider(new TestActionProvider(this))
+                .setShowAsAction(MenuItem.SHOW_AS_ACTION_ALWAYS);
+            if (showExtra) {
+                menu.add(0, 3, 0, "Refresh");
+            }
+            return true;
+        }
+
+        @Override
+        public boolean onPrepareOptionsMenu(Menu menu) {
+            preparedMenu = menu;
+            return true;
+        }
+    }
+
+    private static class TestActionProvider extends ActionProvider {
+        private final Context context;
+
+        TestActionProvider(Context context) {
+            super(context);
+            this.context = context;
+        }
+
+        @Override
+        public View onCreateActionView() {
+            return new View(context);
+        }
+    }
+}
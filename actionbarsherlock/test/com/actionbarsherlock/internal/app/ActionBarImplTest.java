@@ -0,0 +1,170 @@
+package com.actionbarsherlock.internal.app;
+
+import android.app.Activity;
+import android.graphics.Paint;
+import android.os.Build;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.internal.Implementation;
+import org.robolectric.internal.Implements;
+import org.robolectric.shadows.ShadowFrameLayout;
+
+import com.actionbarsherlock.internal.nineoldandroids.animation.FrameSource;
+import com.actionbarsherlock.internal.nineoldandroids.animation.ValueAnimator;
+import com.actionbarsherlock.internal.nineoldandroids.widget.NineFrameLayout;
+import com.actionbarsherlock.internal.widget.ActionBarContainer;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class ActionBarImplTest {
+    /** Keeps the layer type, which Robolectric drops, and whether to be accelerated. */
+    @Implements(FrameLayout.class)
+    public static class ShadowLayeredFrameLayout extends ShadowFrameLayout {
+        boolean hardwareAccelerated;
+        int layerType = View.LAYER_TYPE_NONE;
+        int layerTypeChanges;
+
+        @Implementation
+        public boolean isHardwareAccelerated() {
+            return hardwareAccelerated;
+        }
+
+        @Implementation
+        public int getLayerType() {
+            return layerType;
+        }
+
+        @Implementation
+        public void setLayerType(int layerType, Paint paint) {
+            this.layerType = layerType;
+            layerTypeChanges++;
+        }
+    }
+
+    private int sdkInt;
+    private FrameSource.ManualFrameSource clock;
+    private Activity activity;
+    private ActionBarContainer container;
+    private NineFrameLayout content;
+    private ActionBarImpl actionBar;
+
+    @Before
+    public void setUp() throws Exception {
+        Robolectric.bindShadowClass(ShadowLayeredFrameLayout.class);
+        sdkInt = Build.VERSION.SDK_INT;
+        setSdkInt(Build.VERSION_CODES.HONEYCOMB);
+        clock = new FrameSource.ManualFrameSource(1000);
+        ValueAnimator.setFrameSource(clock);
+
+        activity = new Activity();
+        container = new ActionBarContainer(activity, null);
+        content = new NineFrameLayout(activity, null);
+        layered(container).hardwareAccelerated = true;
+        layered(content).hardwareAccelerated = true;
+        actionBar = new ActionBarImpl(container, content, null);
+        actionBar.setShowHideAnimationEnabled(true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ValueAnimator.setFrameSource(null);
+        setSdkInt(sdkInt);
+    }
+
+    @Test
+    public void animatesInHardwareLayersAndRestoresLayerTypes() {
+        layered(container).layerType = View.LAYER_TYPE_SOFTWARE;
+
+        actionBar.hide();
+        assertThat(layered(container).layerType).isEqualTo(View.LAYER_TYPE_HARDWARE);
+        assertThat(layered(content).layerType).isEqualTo(View.LAYER_TYPE_HARDWARE);
+        finishAnimation();
+        assertThat(container.getVisibility()).isEqualTo(View.GONE);
+        assertThat(layered(container).layerType).isEqualTo(View.LAYER_TYPE_SOFTWARE);
+        assertThat(layered(content).layerType).isEqualTo(View.LAYER_TYPE_NONE);
+
+        actionBar.show();
+        assertThat(layered(container).layerType).isEqualTo(View.LAYER_TYPE_HARDWARE);
+        // Ending the animation early restores the layer types as well.
+        actionBar.setShowHideAnimationEnabled(false);
+        assertThat(layered(container).layerType).isEqualTo(View.LAYER_TYPE_SOFTWARE);
+        assertThat(layered(content).layerType).isEqualTo(View.LAYER_TYPE_NONE);
+    }
+
+    @Test
+    public void restoresLayerTypesOnCancel() {
+        final View view = new FrameLayout(activity);
+        layered(view).hardwareAccelerated = true;
+        final ValueAnimator animator = ValueAnimator.ofFloat(0, 1);
+        animator.addListener(new ActionBarImpl.HardwareLayerListener(view, null));
+
+        animator.start();
+        assertThat(layered(view).layerType).isEqualTo(View.LAYER_TYPE_HARDWARE);
+        animator.cancel();
+        assertThat(layered(view).layerType).isEqualTo(View.LAYER_TYPE_NONE);
+    }
+
+    @Test
+    public void leavesViewsWhichAreNotAcceleratedAlone() {
+        layered(content).hardwareAccelerated = false;
+
+        actionBar.hide();
+        assertThat(layered(container).layerType).isEqualTo(View.LAYER_TYPE_HARDWARE);
+        finishAnimation();
+
+        assertThat(layered(content).layerTypeChanges).isZero();
+        assertThat(layered(content).layerType).isEqualTo(View.LAYER_TYPE_NONE);
+    }
+
+    @Test
+    public void togglingLayersRebuildsShowAndHideAnimations() {
+        actionBar.hide();
+        finishAnimation();
+        actionBar.show();
+        finishAnimation();
+
+        actionBar.setShowHideAnimationLayersEnabled(false);
+        actionBar.hide();
+        assertThat(layered(container).layerType).isEqualTo(View.LAYER_TYPE_NONE);
+        finishAnimation();
+        actionBar.show();
+        assertThat(layered(container).layerType).isEqualTo(View.LAYER_TYPE_NONE);
+        finishAnimation();
+
+        actionBar.setShowHideAnimationLayersEnabled(true);
+        actionBar.hide();
+        assertThat(layered(container).layerType).isEqualTo(View.LAYER_TYPE_HARDWARE);
+        finishAnimation();
+        assertThat(layered(container).layerType).isEqualTo(View.LAYER_TYPE_NONE);
+    }
+
+    private void finishAnimation() {
+        while (clock.isFramePending()) {
+            clock.advance(ValueAnimator.getFrameDelay());
+        }
+    }
+
+    private static ShadowLayeredFrameLayout layered(View view) {
+        return (ShadowLayeredFrameLayout) Robolectric.shadowOf_(view);
+    }
+
+    /** Robolectric reports an older platform, which has no hardware layers. */
+    private static void setSdkInt(int sdkInt) throws Exception {
+        final Field field = Build.VERSION.class.getField("SDK_INT");
+        final Field modifiers = Field.class.getDeclaredField("modifiers");
+        modifiers.setAccessible(true);
+        modifiers.setInt(field, field.getModifiers() & ~Modifier.FINAL);
+        field.setInt(null, sdkInt);
+    }
+}
@@ -0,0 +1,104 @@
+package com.actionbarsherlock.internal.nineoldandroids.animation;
+
+import java.util.ArrayList;
+
+import android.view.animation.Interpolator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class AnimatorSetTest {
+    private static final Interpolator LINEAR = new Interpolator() {
+        @Override
+        public float getInterpolation(float input) {
+            return input;
+        }
+    };
+
+    private FrameSource.ManualFrameSource clock;
+
+    @Before
+    public void setUp() {
+        clock = new FrameSource.ManualFrameSource(1000);
+        ValueAnimator.setFrameSource(clock);
+    }
+
+    @After
+    public void tearDown() {
+        ValueAnimator.setFrameSource(null);
+    }
+
+    @Test
+    public void replaysWithNewValues() {
+        final ValueAnimator first = animator(0f, 1f);
+        final ValueAnimator second = animator(0f, 1f);
+        final ValueAnimator with = animator(0f, 1f);
+        final AnimatorSet set = new AnimatorSet();
+        set.play(first).before(second);
+        set.play(second).with(with);
+        final ArrayList<String> events = new ArrayList<String>();
+        set.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                events.add("end");
+            }
+        });
+
+        for (int run = 0; run < 3; run++) {
+            second.setFloatValues(run, run + 1);
+            set.start();
+            // The set and the dependency of second, not piling up from earlier runs.
+            assertThat(first.getListeners()).hasSize(2);
+            clock.advance(0);
+            clock.advance(50);
+            assertThat(first.isRunning()).isTrue();
+            assertThat(second.isRunning()).isFalse();
+
+            clock.advance(60);
+            clock.advance(0);
+            clock.advance(50);
+            assertThat(second.isRunning()).isTrue();
+            assertThat(with.isRunning()).isTrue();
+            assertThat((Float) second.getAnimatedValue()).isEqualTo(run + 0.5f);
+
+            clock.advance(60);
+            assertThat(set.isStarted()).isFalse();
+            assertThat(events).hasSize(run + 1);
+        }
+    }
+
+    @Test
+    public void replaysAfterStartDelay() {
+        final ValueAnimator child = animator(0f, 1f);
+        final AnimatorSet set = new AnimatorSet();
+        set.play(child);
+        set.setStartDelay(100);
+
+        for (int run = 0; run < 2; run++) {
+            set.start();
+            clock.advance(0);
+            clock.advance(50);
+            assertThat(child.isRunning()).isFalse();
+
+            clock.advance(60);
+            clock.advance(0);
+            assertThat(child.isRunning()).isTrue();
+            clock.advance(110);
+            assertThat(child.isRunning()).isFalse();
+            assertThat(set.isStarted()).isFalse();
+        }
+    }
+
+    private static ValueAnimator animator(float... values) {
+        final ValueAnimator animator = ValueAnimator.ofFloat(values);
+        animator.setDuration(100);
+        animator.setInterpolator(LINEAR);
+        return animator;
+    }
+}
@@ -0,0 +1,54 @@
+package com.actionbarsherlock.internal.nineoldandroids.animation;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.api.Assertions.offset;
+
+@RunWith(RobolectricTestRunner.class)
+public class KeyframeSetTest {
+    @Test
+    public void floatValuesFollowKeyframes() {
+        final FloatKeyframeSet set = (FloatKeyframeSet) KeyframeSet.ofFloat(0f, 10f, 0f, 40f, 20f);
+
+        // Forward, backward and jumping across intervals.
+        final float[] fractions = { 0f, 0.1f, 0.2f, 0.3f, 0.6f, 0.9f, 1f, 0.55f, 0.05f, 0.8f };
+        final float[] expected = { 0f, 4f, 8f, 8f, 16f, 28f, 20f, 8f, 2f, 36f };
+        for (int i = 0; i < fractions.length; i++) {
+            assertThat(set.getFloatValue(fractions[i])).isEqualTo(expected[i], offset(0.001f));
+        }
+
+        // Outside of [0-1] the interval at the appropriate end is extrapolated.
+        assertThat(set.getFloatValue(-0.25f)).isEqualTo(-10f, offset(0.001f));
+        assertThat(set.getFloatValue(1.25f)).isEqualTo(0f, offset(0.001f));
+    }
+
+    @Test
+    public void intValuesFollowKeyframes() {
+        final IntKeyframeSet set = (IntKeyframeSet) KeyframeSet.ofInt(0, 100, 50);
+
+        assertThat(set.getIntValue(0.25f)).isEqualTo(50);
+        assertThat(set.getIntValue(0.75f)).isEqualTo(75);
+        assertThat(set.getIntValue(0.5f)).isEqualTo(100);
+        assertThat(set.getIntValue(0.1f)).isEqualTo(20);
+        assertThat(set.getIntValue(1f)).isEqualTo(50);
+    }
+
+    @Test
+    public void valuesFollowKeyframeChangesAfterInvalidate() {
+        final Keyframe first = Keyframe.ofFloat(0f);
+        final Keyframe middle = Keyframe.ofFloat(0.5f, 10f);
+        final Keyframe last = Keyframe.ofFloat(1f, 20f);
+        final FloatKeyframeSet set = (FloatKeyframeSet) KeyframeSet.ofKeyframe(first, middle, last);
+
+        first.setValue(0f);
+        set.invalidate();
+        assertThat(set.getFloatValue(0.25f)).isEqualTo(5f, offset(0.001f));
+
+        first.setValue(-10f);
+        set.invalidate();
+        assertThat(set.getFloatValue(0.25f)).isEqualTo(0f, offset(0.001f));
+    }
+}
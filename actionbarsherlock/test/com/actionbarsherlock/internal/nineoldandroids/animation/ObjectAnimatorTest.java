@@ -0,0 +1,194 @@
+package com.actionbarsherlock.internal.nineoldandroids.animation;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CountDownLatch;
+
+import android.view.View;
+import android.view.animation.Interpolator;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import com.actionbarsherlock.internal.nineoldandroids.util.FloatProperty;
+import com.actionbarsherlock.internal.nineoldandroids.util.IntProperty;
+import com.actionbarsherlock.internal.nineoldandroids.view.ViewProperties;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class ObjectAnimatorTest {
+    private static final Interpolator LINEAR = new Interpolator() {
+        @Override
+        public float getInterpolation(float input) {
+            return input;
+        }
+    };
+
+    @Test
+    public void typedPropertiesSetPrimitiveValues() {
+        final Target target = new Target();
+        final ObjectAnimator floatAnimator = ObjectAnimator.ofFloat(target, Target.FLOAT, 2f);
+        final ObjectAnimator intAnimator = ObjectAnimator.ofInt(target, Target.INT, 10, 20);
+        floatAnimator.setInterpolator(LINEAR);
+        intAnimator.setInterpolator(LINEAR);
+
+        floatAnimator.setupStartValues();
+        assertThat(floatAnimator.getPropertyName()).isEqualTo("float");
+        floatAnimator.animateValue(0.5f);
+        assertThat(target.floatValue).isEqualTo(1.5f);
+
+        intAnimator.initAnimation();
+        intAnimator.animateValue(0.5f);
+        assertThat(target.intValue).isEqualTo(15);
+    }
+
+    @Test
+    public void viewPropertiesAreResolvedByName() {
+        final View view = new View(Robolectric.application);
+        final ObjectAnimator animator = ObjectAnimator.ofFloat(view, "translationY", 0, 100);
+        animator.setInterpolator(LINEAR);
+        animator.initAnimation();
+        assertThat(animator.getValues()[0].mProperty).isSameAs(ViewProperties.TRANSLATION_Y);
+
+        animator.animateValue(0.25f);
+        assertThat(ViewProperties.TRANSLATION_Y.get(view)).isEqualTo(25f);
+
+        // Other targets still go through reflection.
+        final Target target = new Target();
+        animator.setTarget(target);
+        animator.setPropertyName("float");
+        animator.initAnimation();
+        assertThat(animator.getValues()[0].mProperty).isNull();
+        animator.animateValue(0.5f);
+        assertThat(target.floatValue).isEqualTo(50f);
+    }
+
+    @Test
+    public void setterLookupsAreSharedAcrossThreads() throws Exception {
+        for (int threads : new int[] { 1, 10, 100 }) {
+            final Method[] setters = new Method[threads];
+            final Method[] missing = new Method[threads];
+            final CountDownLatch start = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(threads);
+            for (int i = 0; i < threads; i++) {
+                final int index = i;
+                new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            final ObjectAnimator found = ObjectAnimator.ofFloat(new Target(), "float", 0f, 1f);
+                            found.initAnimation();
+                            setters[index] = found.getValues()[0].mSetter;
+                            final ObjectAnimator absent = ObjectAnimator.ofFloat(new Target(), "missing", 0f, 1f);
+                            absent.initAnimation();
+                            missing[index] = absent.getValues()[0].mSetter;
+                        } catch (InterruptedException e) {
+                            // Leaves the setters unset.
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }.start();
+            }
+            start.countDown();
+            done.await();
+
+            final Method setter = Target.class.getMethod("setFloat", float.class);
+            for (int i = 0; i < threads; i++) {
+                assertThat(setters[i]).isEqualTo(setter);
+                assertThat(missing[i]).isNull();
+            }
+        }
+    }
+
+    /**
+     * Benchmark of animator setup from 1, 10 and 100 threads at once, each
+     * creating and initializing its share of 1,000 animators, with the setter
+     * cache dropped before every setup and with it warm. Timings under
+     * Robolectric are only compared, the best of a few rounds each.
+     */
+    @Test
+    public void concurrentSetupIsFasterWithWarmCache() throws Exception {
+        final int setups = 1000;
+        final int rounds = 3;
+        for (int threads : new int[] { 1, 10, 100 }) {
+            long cold = Long.MAX_VALUE;
+            long warm = Long.MAX_VALUE;
+            for (int round = 0; round < rounds; round++) {
+                cold = Math.min(cold, timeSetups(threads, setups / threads, true));
+                warm = Math.min(warm, timeSetups(threads, setups / threads, false));
+            }
+            assertThat(warm).isLessThanOrEqualTo(cold);
+        }
+    }
+
+    private static long timeSetups(int threads, final int setupsPerThread, final boolean cold)
+            throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < setupsPerThread; j++) {
+                            if (cold) {
+                                PropertyValuesHolder.clearMethodCaches();
+                            }
+                            ObjectAnimator.ofFloat(new Target(), "float", 0f, 1f).initAnimation();
+                            ObjectAnimator.ofFloat(new Target(), "missing", 0f, 1f).initAnimation();
+                        }
+                    } catch (InterruptedException e) {
+                        // Ends the run early.
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        // Warm the cache, the threads do not start before the clock.
+        ObjectAnimator.ofFloat(new Target(), "float", 0f, 1f).initAnimation();
+        ObjectAnimator.ofFloat(new Target(), "missing", 0f, 1f).initAnimation();
+        final long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        return System.nanoTime() - begin;
+    }
+
+    public static class Target {
+        static final FloatProperty<Target> FLOAT = new FloatProperty<Target>("float") {
+            @Override
+            public void setValue(Target target, float value) {
+                target.floatValue = value;
+            }
+
+            @Override
+            public Float get(Target target) {
+                return target.floatValue;
+            }
+        };
+
+        static final IntProperty<Target> INT = new IntProperty<Target>("int") {
+            @Override
+            public void setValue(Target target, int value) {
+                target.intValue = value;
+            }
+
+            @Override
+            public Integer get(Target target) {
+                return target.intValue;
+            }
+        };
+
+        float floatValue = 1f;
+        int intValue;
+
+        public void setFloat(float value) {
+            floatValue = value;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.actionbarsherlock.internal.nineoldandroids.animation;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+
+import android.os.Handler;
+import android.view.animation.AnimationUtils;
+import android.view.animation.Interpolator;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.util.Scheduler;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class ValueAnimatorTest {
+    private static final Interpolator LINEAR = new Interpolator() {
+        @Override
+        public float getInterpolation(float input) {
+            return input;
+        }
+    };
+
+    private FrameSource.ManualFrameSource clock;
+
+    @Before
+    public void setUp() {
+        clock = new FrameSource.ManualFrameSource(1000);
+        ValueAnimator.setFrameSource(clock);
+    }
+
+    @After
+    public void tearDown() {
+        ValueAnimator.setFrameSource(null);
+    }
+
+    @Test
+    public void animatorsSampleTheSameFrameTime() {
+        final ArrayList<Long> playTimes = new ArrayList<Long>();
+        final ValueAnimator.AnimatorUpdateListener listener = new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                playTimes.add(animation.getCurrentPlayTime());
+            }
+        };
+        final ValueAnimator first = linearAnimator(listener);
+        final ValueAnimator second = linearAnimator(listener);
+
+        first.start();
+        second.start();
+        assertThat(clock.isFramePending()).isTrue();
+
+        // Both animations start on the next frame.
+        assertThat(clock.advance(0)).isTrue();
+        playTimes.clear();
+        // Nothing happens until the frame is due.
+        assertThat(clock.advance(5)).isFalse();
+        assertThat(playTimes).isEmpty();
+
+        assertThat(clock.advance(30)).isTrue();
+        assertThat(playTimes).containsExactly(35L, 35L);
+        assertThat((Float) first.getAnimatedValue()).isEqualTo(0.35f);
+        assertThat((Float) second.getAnimatedValue()).isEqualTo(0.35f);
+
+        clock.advance(100);
+        assertThat(first.isRunning()).isFalse();
+        assertThat(second.isRunning()).isFalse();
+        assertThat((Float) first.getAnimatedValue()).isEqualTo(1f);
+        assertThat(clock.isFramePending()).isFalse();
+    }
+
+    private static ValueAnimator linearAnimator(ValueAnimator.AnimatorUpdateListener listener) {
+        final ValueAnimator animator = ValueAnimator.ofFloat(0f, 1f);
+        animator.setDuration(100);
+        animator.setInterpolator(LINEAR);
+        animator.addUpdateListener(listener);
+        return animator;
+    }
+
+    @Test
+    public void cancelStopsRequestingFrames() {
+        final ValueAnimator animator = ValueAnimator.ofInt(0, 10);
+        animator.setDuration(100);
+        animator.start();
+        clock.advance(50);
+        assertThat(animator.isRunning()).isTrue();
+
+        animator.cancel();
+        clock.advance(50);
+        assertThat(clock.isFramePending()).isFalse();
+    }
+
+    @Test
+    public void cancelBeforeTheFirstFrameEndsTheAnimation() {
+        final ArrayList<String> events = new ArrayList<String>();
+        final ValueAnimator animator = ValueAnimator.ofInt(0, 10);
+        animator.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationCancel(Animator animation) {
+                events.add("cancel");
+            }
+
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                events.add("end");
+            }
+        });
+        animator.start();
+        assertThat(clock.isFramePending()).isTrue();
+
+        animator.cancel();
+        assertThat(events).containsExactly("cancel", "end");
+        assertThat(animator.isRunning()).isFalse();
+        clock.advance(0);
+        assertThat(clock.isFramePending()).isFalse();
+    }
+
+    @Test
+    public void statsDescribeEachFrame() {
+        final ArrayList<long[]> frames = new ArrayList<long[]>();
+        ValueAnimator.setAnimationStatsListener(new AnimationStats.Listener() {
+            @Override
+            public void onAnimationFrame(AnimationStats stats) {
+                frames.add(new long[] {
+                        stats.getFrameTime(), stats.getJitterMillis(),
+                        stats.getActiveAnimations(), stats.getDelayedAnimations(),
+                        stats.getUpdateListenerNanos(), stats.getFrameNanos() });
+            }
+        });
+        try {
+            final ValueAnimator running = linearAnimator(new ValueAnimator.AnimatorUpdateListener() {
+                @Override
+                public void onAnimationUpdate(ValueAnimator animation) {
+                }
+            });
+            final ValueAnimator delayed = ValueAnimator.ofFloat(0f, 1f);
+            delayed.setStartDelay(1000);
+            running.start();
+            delayed.start();
+
+            clock.advance(0);
+            clock.advance(ValueAnimator.getFrameDelay() + 5);
+            assertThat(frames).hasSize(2);
+            assertThat(frames.get(0)[0]).isEqualTo(1000);
+            // The first frame has nothing to be late against.
+            assertThat(frames.get(0)[1]).isZero();
+            assertThat(frames.get(1)[1]).isEqualTo(5);
+            assertThat(frames.get(1)[2]).isEqualTo(1);
+            assertThat(frames.get(1)[3]).isEqualTo(1);
+            assertThat(frames.get(1)[4]).isLessThanOrEqualTo(frames.get(1)[5]);
+            // Animators do not hold on to the stats, and with them the listener, between frames.
+            assertThat(running.mStats).isNull();
+
+            running.cancel();
+            delayed.cancel();
+            clock.advance(100);
+            assertThat(clock.isFramePending()).isFalse();
+        } finally {
+            ValueAnimator.setAnimationStatsListener(null);
+        }
+    }
+
+    @Test
+    public void framesDoNotAllocate() {
+        final com.sun.management.ThreadMXBean allocations = allocationCounter();
+
+        final ValueAnimator floats = ValueAnimator.ofFloat(0f, 10f, 5f, 20f);
+        final ValueAnimator ints = ValueAnimator.ofInt(0, 100);
+        final ValueAnimator delayed = ValueAnimator.ofFloat(0f, 1f);
+        delayed.setStartDelay(500);
+        for (ValueAnimator animator : new ValueAnimator[] { floats, ints, delayed }) {
+            animator.setDuration(60000);
+            animator.setInterpolator(LINEAR);
+            animator.start();
+        }
+        // Warm up, starting all animations.
+        for (int i = 0; i < 100; i++) {
+            clock.advance(10);
+        }
+
+        final long before = allocatedBytes(allocations);
+        for (int i = 0; i < 1000; i++) {
+            clock.advance(10);
+        }
+        final long allocated = allocatedBytes(allocations) - before;
+
+        assertThat(floats.isRunning()).isTrue();
+        // Allow for the measurement itself, but not for anything per frame.
+        assertThat(allocated).isLessThan(1000);
+
+        floats.cancel();
+        ints.cancel();
+        delayed.cancel();
+        // Deliver the last requested frame, after which none are requested.
+        clock.advance(10);
+        assertThat(clock.isFramePending()).isFalse();
+    }
+
+    @Test
+    public void defaultSourceFramesDoNotAllocate() {
+        final com.sun.management.ThreadMXBean allocations = allocationCounter();
+        final Scheduler scheduler = Robolectric.getUiThreadScheduler();
+        ValueAnimator.setFrameSource(null);
+
+        // Robolectric allocates for the platform calls a frame makes, reading the
+        // clock and posting the next frame, unlike the platform.
+        final Handler handler = new Handler();
+        final Runnable pulse = new Runnable() {
+            @Override
+            public void run() {
+                AnimationUtils.currentAnimationTimeMillis();
+                AnimationUtils.currentAnimationTimeMillis();
+                handler.postDelayed(this, ValueAnimator.getFrameDelay());
+            }
+        };
+        handler.post(pulse);
+        for (int i = 0; i < 100; i++) {
+            scheduler.advanceBy(ValueAnimator.getFrameDelay());
+        }
+        long before = allocatedBytes(allocations);
+        for (int i = 0; i < 1000; i++) {
+            scheduler.advanceBy(ValueAnimator.getFrameDelay());
+        }
+        final long posting = allocatedBytes(allocations) - before;
+        handler.removeCallbacks(pulse);
+
+        final ValueAnimator floats = ValueAnimator.ofFloat(0f, 10f, 5f, 20f);
+        final ValueAnimator ints = ValueAnimator.ofInt(0, 100);
+        for (ValueAnimator animator : new ValueAnimator[] { floats, ints }) {
+            animator.setDuration(60000);
+            animator.setInterpolator(LINEAR);
+            animator.start();
+        }
+        for (int i = 0; i < 100; i++) {
+            scheduler.advanceBy(ValueAnimator.getFrameDelay());
+        }
+        before = allocatedBytes(allocations);
+        for (int i = 0; i < 1000; i++) {
+            scheduler.advanceBy(ValueAnimator.getFrameDelay());
+        }
+        final long allocated = allocatedBytes(allocations) - before;
+
+        assertThat(floats.isRunning()).isTrue();
+        assertThat(allocated).isLessThan(posting + 1000);
+
+        floats.cancel();
+        ints.cancel();
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        Assume.assumeTrue(allocations.isThreadAllocatedMemorySupported());
+        allocations.setThreadAllocatedMemoryEnabled(true);
+        return allocations;
+    }
+
+    private static long allocatedBytes(com.sun.management.ThreadMXBean allocations) {
+        return allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
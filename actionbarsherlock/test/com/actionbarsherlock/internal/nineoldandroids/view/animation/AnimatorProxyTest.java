@@ -0,0 +1,138 @@
+package com.actionbarsherlock.internal.nineoldandroids.view.animation;
+
+import android.app.Activity;
+import android.content.Context;
+import android.view.View;
+import android.view.animation.Interpolator;
+import android.widget.FrameLayout;
+
+import com.actionbarsherlock.internal.nineoldandroids.animation.FrameSource;
+import com.actionbarsherlock.internal.nineoldandroids.animation.ValueAnimator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class AnimatorProxyTest {
+    private static final Interpolator LINEAR = new Interpolator() {
+        @Override
+        public float getInterpolation(float input) {
+            return input;
+        }
+    };
+
+    private FrameSource.ManualFrameSource clock;
+    private CountingParent parent;
+    private CountingView view;
+    private AnimatorProxy proxy;
+
+    @Before
+    public void setUp() {
+        clock = new FrameSource.ManualFrameSource(1000);
+        ValueAnimator.setFrameSource(clock);
+
+        final Activity activity = new Activity();
+        parent = new CountingParent(activity);
+        view = new CountingView(activity);
+        parent.addView(view);
+        proxy = AnimatorProxy.wrap(view);
+        parent.invalidations = 0;
+        view.invalidations = 0;
+    }
+
+    @After
+    public void tearDown() {
+        ValueAnimator.setFrameSource(null);
+    }
+
+    @Test
+    public void wrapKeepsOneProxyPerView() {
+        assertThat(view.getAnimation()).isSameAs(proxy);
+        assertThat(AnimatorProxy.wrap(view)).isSameAs(proxy);
+
+        // Found again when the view's animation has been cleared.
+        proxy.setTranslationX(10);
+        view.clearAnimation();
+        assertThat(AnimatorProxy.wrap(view)).isSameAs(proxy);
+        assertThat(AnimatorProxy.wrap(view).getTranslationX()).isEqualTo(10);
+
+        final View other = new View(view.getContext());
+        assertThat(AnimatorProxy.wrap(other)).isNotSameAs(proxy);
+    }
+
+    @Test
+    public void changesOutsideOfFramesInvalidateRightAway() {
+        proxy.setTranslationX(10);
+        proxy.setTranslationY(20);
+        assertThat(parent.invalidations).isEqualTo(2);
+
+        proxy.setAlpha(0.5f);
+        assertThat(view.invalidations).isEqualTo(1);
+    }
+
+    @Test
+    public void changesDuringFramesInvalidateOncePerFrame() {
+        final int[] invalidationsDuringUpdate = new int[1];
+        final ValueAnimator animator = ValueAnimator.ofFloat(0f, 1f);
+        animator.setDuration(100);
+        animator.setInterpolator(LINEAR);
+        animator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                final float value = animation.getAnimatedFraction();
+                proxy.setAlpha(1 - value);
+                proxy.setTranslationX(value * 10);
+                proxy.setTranslationY(value * 20);
+                invalidationsDuringUpdate[0] += parent.invalidations + view.invalidations;
+            }
+        });
+        animator.start();
+        parent.invalidations = 0;
+        view.invalidations = 0;
+
+        clock.advance(0);
+        clock.advance(50);
+        // Nothing is invalidated until the frame is done, and then only once.
+        assertThat(invalidationsDuringUpdate[0]).isZero();
+        assertThat(parent.invalidations).isEqualTo(1);
+        assertThat(view.invalidations).isZero();
+        assertThat(proxy.getTranslationY()).isEqualTo(proxy.getTranslationX() * 2);
+
+        clock.advance(60);
+        assertThat(animator.isRunning()).isFalse();
+        assertThat(parent.invalidations).isEqualTo(2);
+    }
+
+    static class CountingParent extends FrameLayout {
+        int invalidations;
+
+        CountingParent(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void invalidate(int l, int t, int r, int b) {
+            invalidations++;
+            super.invalidate(l, t, r, b);
+        }
+    }
+
+    static class CountingView extends View {
+        int invalidations;
+
+        CountingView(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void invalidate() {
+            invalidations++;
+            super.invalidate();
+        }
+    }
+}
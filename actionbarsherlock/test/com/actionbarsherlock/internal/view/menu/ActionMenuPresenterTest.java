@@ -0,0 +1,259 @@
+package com.actionbarsherlock.internal.view.menu;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import android.content.Context;
+import android.view.View;
+import android.view.View.MeasureSpec;
+import android.view.ViewGroup;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import com.actionbarsherlock.view.MenuItem;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class ActionMenuPresenterTest {
+    private static final int[] SHOW_AS_ACTION = {
+        MenuItem.SHOW_AS_ACTION_NEVER,
+        MenuItem.SHOW_AS_ACTION_IF_ROOM,
+        MenuItem.SHOW_AS_ACTION_ALWAYS,
+        MenuItem.SHOW_AS_ACTION_IF_ROOM | MenuItem.SHOW_AS_ACTION_WITH_TEXT,
+    };
+
+    private Context context;
+    private int minCellSize;
+
+    @Before
+    public void setUp() {
+        Robolectric.bindShadowClass(ShadowFullSparseIntArray.class);
+        context = Robolectric.application;
+        minCellSize = (int) (ActionMenuView.MIN_CELL_SIZE
+                * context.getResources().getDisplayMetrics().density);
+    }
+
+    @Test
+    public void flaggingMatchesQuadraticAlgorithmOnRandomMenus() {
+        final Random random = new Random(42);
+        for (int run = 0; run < 300; run++) {
+            final MenuBuilder menu = new MenuBuilder(context);
+            final int itemCount = random.nextInt(24);
+            for (int i = 0; i < itemCount; i++) {
+                final String title = "Item".substring(0, 1 + random.nextInt(4)) + i;
+                final MenuItemImpl item = (MenuItemImpl) menu.add(random.nextInt(4), i + 1, 0, title);
+                item.setShowAsAction(SHOW_AS_ACTION[random.nextInt(SHOW_AS_ACTION.length)]);
+                item.setVisible(random.nextInt(5) != 0);
+                item.setIsActionButton(random.nextBoolean());
+            }
+
+            final int maxItems = random.nextInt(8);
+            final boolean strict = random.nextBoolean();
+            final int widthLimit = minCellSize + random.nextInt(12 * minCellSize);
+            final MeasuringPresenter presenter = new MeasuringPresenter(context);
+            presenter.setReserveOverflow(false);
+            presenter.setItemLimit(maxItems);
+            presenter.setWidthLimit(widthLimit, strict);
+            presenter.initForMenu(context, menu);
+
+            final ArrayList<MenuItemImpl> items = menu.getVisibleItems();
+            final boolean[] initial = snapshot(items);
+            flagActionItemsQuadratic(presenter, items, maxItems, widthLimit, strict);
+            final boolean[] expected = snapshot(items);
+
+            restore(items, initial);
+            presenter.flagActionItems();
+            assertThat(snapshot(items)).isEqualTo(expected);
+
+            // Flagging the unchanged menu again needs no measuring.
+            restore(items, initial);
+            presenter.measureCount = 0;
+            presenter.flagActionItems();
+            assertThat(snapshot(items)).isEqualTo(expected);
+            assertThat(presenter.measureCount).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void itemChangesMeasureAgain() {
+        final MenuBuilder menu = new MenuBuilder(context);
+        final MenuItemImpl item = (MenuItemImpl) menu.add(0, 1, 0, "A");
+        item.setShowAsAction(MenuItem.SHOW_AS_ACTION_IF_ROOM);
+
+        final MeasuringPresenter presenter = new MeasuringPresenter(context);
+        presenter.setReserveOverflow(false);
+        presenter.setItemLimit(2);
+        presenter.setWidthLimit(10 * minCellSize, false);
+        presenter.initForMenu(context, menu);
+
+        presenter.flagActionItems();
+        assertThat(presenter.measureCount).isEqualTo(1);
+        presenter.flagActionItems();
+        assertThat(presenter.measureCount).isEqualTo(1);
+
+        item.setTitle("Longer");
+        presenter.flagActionItems();
+        assertThat(presenter.measureCount).isEqualTo(2);
+
+        item.setShowAsAction(MenuItem.SHOW_AS_ACTION_IF_ROOM | MenuItem.SHOW_AS_ACTION_WITH_TEXT);
+        presenter.flagActionItems();
+        assertThat(presenter.measureCount).isEqualTo(3);
+
+        presenter.onConfigurationChanged(context.getResources().getConfiguration());
+        presenter.flagActionItems();
+        assertThat(presenter.measureCount).isEqualTo(4);
+    }
+
+    private static boolean[] snapshot(ArrayList<MenuItemImpl> items) {
+        final boolean[] flags = new boolean[items.size()];
+        for (int i = 0; i < flags.length; i++) {
+            flags[i] = items.get(i).isActionButton();
+        }
+        return flags;
+    }
+
+    private static void restore(ArrayList<MenuItemImpl> items, boolean[] flags) {
+        for (int i = 0; i < flags.length; i++) {
+            items.get(i).setIsActionButton(flags[i]);
+        }
+    }
+
+    /**
+     * The flagging algorithm as it was before group members were tracked,
+     * without an overflow button or expanded action views.
+     */
+    private void flagActionItemsQuadratic(MeasuringPresenter presenter,
+            ArrayList<MenuItemImpl> visibleItems, int maxActions, int widthLimit,
+            boolean strict) {
+        final int itemsSize = visibleItems.size();
+        final int querySpec = MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
+
+        int requiredItems = 0;
+        int firstActionWidth = 0;
+        for (int i = 0; i < itemsSize; i++) {
+            if (visibleItems.get(i).requiresActionButton()) {
+                requiredItems++;
+            }
+        }
+        maxActions -= requiredItems;
+
+        final HashMap<Integer, Boolean> seenGroups = new HashMap<Integer, Boolean>();
+
+        int cellSize = 0;
+        int cellsRemaining = 0;
+        if (strict) {
+            cellsRemaining = widthLimit / minCellSize;
+            final int cellSizeRemaining = widthLimit % minCellSize;
+            cellSize = minCellSize + cellSizeRemaining / cellsRemaining;
+        }
+
+        for (int i = 0; i < itemsSize; i++) {
+            MenuItemImpl item = visibleItems.get(i);
+
+            if (item.requiresActionButton()) {
+                View v = presenter.getItemView(item, null, null);
+                if (strict) {
+                    cellsRemaining -= ActionMenuView.measureChildForCells(v,
+                            cellSize, cellsRemaining, querySpec, 0);
+                } else {
+                    v.measure(querySpec, querySpec);
+                }
+                final int measuredWidth = v.getMeasuredWidth();
+                widthLimit -= measuredWidth;
+                if (firstActionWidth == 0) {
+                    firstActionWidth = measuredWidth;
+                }
+                final int groupId = item.getGroupId();
+                if (groupId != 0) {
+                    seenGroups.put(groupId, true);
+                }
+                item.setIsActionButton(true);
+            } else if (item.requestsActionButton()) {
+                final int groupId = item.getGroupId();
+                final boolean inGroup = Boolean.TRUE.equals(seenGroups.get(groupId));
+                boolean isAction = (maxActions > 0 || inGroup) && widthLimit > 0 &&
+                        (!strict || cellsRemaining > 0);
+
+                if (isAction) {
+                    View v = presenter.getItemView(item, null, null);
+                    if (strict) {
+                        final int cells = ActionMenuView.measureChildForCells(v,
+                                cellSize, cellsRemaining, querySpec, 0);
+                        cellsRemaining -= cells;
+                        if (cells == 0) {
+                            isAction = false;
+                        }
+                    } else {
+                        v.measure(querySpec, querySpec);
+                    }
+                    final int measuredWidth = v.getMeasuredWidth();
+                    widthLimit -= measuredWidth;
+                    if (firstActionWidth == 0) {
+                        firstActionWidth = measuredWidth;
+                    }
+
+                    if (strict) {
+                        isAction &= widthLimit >= 0;
+                    } else {
+                        isAction &= widthLimit + firstActionWidth > 0;
+                    }
+                }
+
+                if (isAction && groupId != 0) {
+                    seenGroups.put(groupId, true);
+                } else if (inGroup) {
+                    seenGroups.put(groupId, false);
+                    for (int j = 0; j < i; j++) {
+                        MenuItemImpl areYouMyGroupie = visibleItems.get(j);
+                        if (areYouMyGroupie.getGroupId() == groupId) {
+                            if (areYouMyGroupie.isActionButton()) maxActions++;
+                            areYouMyGroupie.setIsActionButton(false);
+                        }
+                    }
+                }
+
+                if (isAction) maxActions--;
+
+                item.setIsActionButton(isAction);
+            }
+        }
+    }
+
+    /** Presenter with buttons as wide as their title that counts measurements. */
+    private static class MeasuringPresenter extends ActionMenuPresenter {
+        int measureCount;
+
+        MeasuringPresenter(Context context) {
+            super(context);
+        }
+
+        @Override
+        public View getItemView(MenuItemImpl item, View convertView, ViewGroup parent) {
+            measureCount++;
+            final TitleWidthView view = new TitleWidthView(mContext);
+            view.width = 40 * item.getTitle().length();
+            view.setLayoutParams(new ActionMenuView.LayoutParams(
+                    ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+            return view;
+        }
+    }
+
+    private static class TitleWidthView extends View {
+        int width;
+
+        TitleWidthView(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            setMeasuredDimension(resolveSize(width, widthMeasureSpec), 1);
+        }
+    }
+}
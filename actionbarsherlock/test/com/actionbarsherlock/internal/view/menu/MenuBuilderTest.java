@@ -0,0 +1,439 @@
+package com.actionbarsherlock.internal.view.menu;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.os.Parcelable;
+import android.view.KeyCharacterMap;
+import android.view.KeyEvent;
+import android.view.ViewGroup;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import com.actionbarsherlock.R;
+import com.actionbarsherlock.view.Menu;
+import com.actionbarsherlock.view.MenuItem;
+import com.actionbarsherlock.view.SubMenu;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class MenuBuilderTest {
+    private MenuBuilder menu;
+
+    @Before
+    public void setUp() {
+        Robolectric.bindShadowClass(ShadowFullSparseIntArray.class);
+        menu = new MenuBuilder(Robolectric.application);
+    }
+
+    @Test
+    public void findItemReturnsFirstMatchInMenuOrder() {
+        MenuItem first = menu.add(0, 1, 0, "First");
+        menu.add(0, 1, 0, "Duplicate");
+        MenuItem early = menu.add(0, 2, Menu.CATEGORY_SECONDARY, "Late");
+        MenuItem inserted = menu.add(0, 2, 0, "Inserted");
+
+        assertThat(menu.findItem(1)).isSameAs(first);
+        assertThat(menu.findItem(2)).isSameAs(inserted);
+        assertThat(menu.findItemIndex(2)).isEqualTo(2);
+        assertThat(menu.findItem(3)).isNull();
+        assertThat(menu.findItemIndex(3)).isEqualTo(-1);
+
+        menu.removeItem(2);
+        assertThat(menu.findItem(2)).isSameAs(early);
+    }
+
+    @Test
+    public void findItemSearchesSubMenus() {
+        menu.add(0, 1, 0, "One");
+        SubMenu subMenu = menu.addSubMenu(0, 2, 0, "Sub");
+        MenuItem nested = subMenu.add(0, 3, 0, "Nested");
+        MenuItem after = menu.add(0, 4, 0, "After");
+
+        assertThat(menu.findItem(3)).isSameAs((MenuItemImpl) nested);
+        assertThat(menu.findItem(4)).isSameAs(after);
+
+        MenuItem deeper = subMenu.addSubMenu(0, 5, 0, "Deeper").add(0, 6, 0, "Deepest");
+        assertThat(menu.findItem(6)).isSameAs(deeper);
+
+        subMenu.clear();
+        assertThat(menu.findItem(3)).isNull();
+        assertThat(menu.findItem(6)).isNull();
+        assertThat(menu.findItem(2)).isSameAs(subMenu.getItem());
+    }
+
+    @Test
+    public void findGroupIndexHonorsStart() {
+        menu.add(1, 0, 0, "A");
+        menu.add(2, 0, 0, "B");
+        menu.add(1, 0, 0, "C");
+        menu.add(3, 0, Menu.CATEGORY_SECONDARY, "D");
+        menu.add(2, 0, 0, "E");
+
+        assertThat(menu.findGroupIndex(1)).isEqualTo(0);
+        assertThat(menu.findGroupIndex(1, 1)).isEqualTo(2);
+        assertThat(menu.findGroupIndex(1, 3)).isEqualTo(-1);
+        assertThat(menu.findGroupIndex(2, 2)).isEqualTo(3);
+        assertThat(menu.findGroupIndex(3)).isEqualTo(4);
+        assertThat(menu.findGroupIndex(4)).isEqualTo(-1);
+
+        menu.removeGroup(3);
+        assertThat(menu.size()).isEqualTo(4);
+        assertThat(menu.findGroupIndex(3)).isEqualTo(-1);
+        assertThat(menu.findGroupIndex(2, 2)).isEqualTo(3);
+    }
+
+    @Test
+    public void indicesFollowEditsInPlace() {
+        final Random random = new Random(7);
+        final SubMenu subMenu = menu.addSubMenu(1, 1, 0, "Sub");
+        final SubMenu deeper = subMenu.addSubMenu(2, 2, 0, "Deeper");
+        final Menu[] menus = { menu, subMenu, deeper };
+
+        for (int i = 0; i < 500; i++) {
+            final Menu target = menus[random.nextInt(menus.length)];
+            final int action = random.nextInt(10);
+            if (action < 6) {
+                final int order = random.nextBoolean() ? 0 : Menu.CATEGORY_SECONDARY;
+                target.add(random.nextInt(4), 3 + random.nextInt(8), order, "Item");
+            } else if (action < 8) {
+                if (target.size() > 1) {
+                    // Keep the sub menu items in place.
+                    final int index = 1 + random.nextInt(target.size() - 1);
+                    if (!target.getItem(index).hasSubMenu()) {
+                        target.removeItem(target.getItem(index).getItemId());
+                    }
+                }
+            } else if (action < 9) {
+                target.removeGroup(random.nextInt(4));
+            } else if (target != menu) {
+                target.clear();
+            }
+
+            for (Menu m : menus) {
+                assertIndices((MenuBuilder) m);
+            }
+        }
+    }
+
+    @Test
+    public void visibilityChangesArePatchedIntoPartitions() {
+        FlaggingPresenter presenter = new FlaggingPresenter();
+        menu.addMenuPresenter(presenter);
+
+        List<MenuItemImpl> items = new ArrayList<MenuItemImpl>();
+        for (int i = 0; i < 6; i++) {
+            MenuItemImpl item = (MenuItemImpl) menu.add(i % 2, i + 1, 0, "Item " + i);
+            item.setShowAsAction(i % 3 == 0 ? MenuItem.SHOW_AS_ACTION_ALWAYS : MenuItem.SHOW_AS_ACTION_NEVER);
+            items.add(item);
+        }
+        assertPartitions(items);
+
+        items.get(0).setVisible(false);
+        items.get(4).setVisible(false);
+        assertPartitions(items);
+
+        items.get(0).setVisible(true);
+        items.get(3).setShowAsAction(MenuItem.SHOW_AS_ACTION_NEVER);
+        items.get(2).setShowAsAction(MenuItem.SHOW_AS_ACTION_ALWAYS);
+        assertPartitions(items);
+
+        menu.setGroupVisible(1, false);
+        assertPartitions(items);
+
+        menu.stopDispatchingItemsChanged();
+        menu.setGroupVisible(1, true);
+        items.get(5).setVisible(false);
+        items.get(5).setVisible(true);
+        items.get(2).setVisible(false);
+        menu.startDispatchingItemsChanged();
+        assertPartitions(items);
+
+        menu.removeItem(1);
+        items.remove(0);
+        assertPartitions(items);
+    }
+
+    @Test
+    public void batchDispatchesSingleUpdateWithChangedItems() {
+        FlaggingPresenter presenter = new FlaggingPresenter();
+        menu.addMenuPresenter(presenter);
+        MenuItemImpl first = (MenuItemImpl) menu.add(0, 1, 0, "First");
+        MenuItemImpl second = (MenuItemImpl) menu.add(0, 2, 0, "Second");
+        menu.add(0, 3, 0, "Third");
+        presenter.updateCount = 0;
+
+        menu.beginBatch();
+        first.setTitle("One");
+        menu.beginBatch();
+        second.setEnabled(false);
+        first.setChecked(true);
+        menu.commitBatch();
+        assertThat(presenter.updateCount).isEqualTo(0);
+        menu.commitBatch();
+
+        assertThat(presenter.updateCount).isEqualTo(1);
+        assertThat(presenter.lastChangedItems).containsExactly(first, second);
+
+        second.setTitle("Two");
+        assertThat(presenter.updateCount).isEqualTo(2);
+        assertThat(presenter.lastChangedItems).containsExactly(second);
+
+        menu.beginBatch();
+        first.setTitle("Uno");
+        menu.add(0, 4, 0, "Fourth");
+        menu.commitBatch();
+        assertThat(presenter.updateCount).isEqualTo(3);
+        assertThat(presenter.lastChangedItems).isNull();
+    }
+
+    @Test
+    public void batchSurvivesNestedDispatchPrevention() {
+        FlaggingPresenter presenter = new FlaggingPresenter();
+        menu.addMenuPresenter(presenter);
+        MenuItem item = menu.add(0, 1, 0, "Item");
+        presenter.updateCount = 0;
+
+        menu.stopDispatchingItemsChanged();
+        menu.beginBatch();
+        item.setTitle("Changed");
+        menu.startDispatchingItemsChanged();
+        assertThat(presenter.updateCount).isEqualTo(0);
+        menu.commitBatch();
+        assertThat(presenter.updateCount).isEqualTo(1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void commitWithoutBeginThrows() {
+        menu.commitBatch();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void actionMenuCommitWithoutBeginThrows() {
+        ActionMenu actionMenu = new ActionMenu(Robolectric.application);
+        actionMenu.beginBatch();
+        actionMenu.commitBatch();
+        actionMenu.commitBatch();
+    }
+
+    @Test
+    public void applyDiffKeepsMatchingItems() {
+        MenuItem kept = menu.add(0, 1, 0, "One");
+        menu.add(0, 2, 0, "Two");
+        SubMenu sub = menu.addSubMenu(0, 3, 0, "Three");
+        MenuItem keptChild = sub.add(0, 4, 0, "Four");
+
+        MenuBuilder rebuilt = new MenuBuilder(Robolectric.application);
+        rebuilt.add(0, 1, 0, "Uno").setVisible(false);
+        SubMenu rebuiltSub = rebuilt.addSubMenu(0, 3, 0, "Tres");
+        rebuiltSub.add(0, 4, 0, "Cuatro");
+        MenuItem added = rebuiltSub.add(0, 5, 0, "Cinco");
+        menu.applyDiff(rebuilt);
+
+        assertThat(menu.size()).isEqualTo(2);
+        assertThat(menu.findItem(1)).isSameAs(kept);
+        assertThat(kept.getTitle().toString()).isEqualTo("Uno");
+        assertThat(kept.isVisible()).isFalse();
+        assertThat(menu.findItem(2)).isNull();
+        assertThat(menu.findItem(3).getSubMenu()).isSameAs(sub);
+        assertThat(menu.findItem(4)).isSameAs(keptChild);
+        assertThat(menu.findItem(5)).isSameAs(added);
+        assertThat(menu.getVisibleItems()).hasSize(1);
+    }
+
+    @Test
+    public void applyDiffKeepsLoadedIcon() {
+        FlaggingPresenter presenter = new FlaggingPresenter();
+        menu.addMenuPresenter(presenter);
+        MenuItem item = menu.add(0, 1, 0, "Go").setIcon(R.drawable.abs__ic_go);
+        Drawable icon = item.getIcon();
+        presenter.updateCount = 0;
+
+        MenuBuilder rebuilt = new MenuBuilder(Robolectric.application);
+        rebuilt.add(0, 1, 0, "Go").setIcon(R.drawable.abs__ic_go);
+        menu.applyDiff(rebuilt);
+        assertThat(presenter.updateCount).isEqualTo(0);
+        assertThat(item.getIcon()).isSameAs(icon);
+
+        rebuilt = new MenuBuilder(Robolectric.application);
+        rebuilt.add(0, 1, 0, "Go").setIcon(R.drawable.abs__ic_search);
+        menu.applyDiff(rebuilt);
+        assertThat(presenter.updateCount).isEqualTo(1);
+        assertThat(presenter.lastChangedItems).containsExactly((MenuItemImpl) item);
+        assertThat(item.getIcon()).isNotSameAs(icon);
+    }
+
+    @Test
+    public void shortcutLookupFollowsChanges() {
+        MenuItem first = menu.add(0, 1, 0, "First").setAlphabeticShortcut('a');
+        SubMenu sub = menu.addSubMenu(0, 2, 0, "Sub");
+        MenuItem nested = sub.add(0, 3, 0, "Nested").setAlphabeticShortcut('b');
+        menu.setQwertyMode(true);
+
+        assertThat(menu.findItemWithShortcutForKey(KeyEvent.KEYCODE_A, new CharKeyEvent('a')))
+                .isSameAs((MenuItemImpl) first);
+        assertThat(menu.findItemWithShortcutForKey(KeyEvent.KEYCODE_B, new CharKeyEvent('b')))
+                .isSameAs((MenuItemImpl) nested);
+
+        nested.setAlphabeticShortcut('c');
+        assertThat(menu.findItemWithShortcutForKey(KeyEvent.KEYCODE_B, new CharKeyEvent('b')))
+                .isNull();
+        nested.setEnabled(false);
+        assertThat(menu.findItemWithShortcutForKey(KeyEvent.KEYCODE_C, new CharKeyEvent('c')))
+                .isNull();
+
+        menu.setQwertyMode(false);
+        first.setNumericShortcut('1');
+        assertThat(menu.findItemWithShortcutForKey(KeyEvent.KEYCODE_1, new CharKeyEvent('1')))
+                .isSameAs((MenuItemImpl) first);
+        assertThat(menu.findItemWithShortcutForKey(KeyEvent.KEYCODE_A, new CharKeyEvent('a')))
+                .isNull();
+    }
+
+    private static void assertIndices(MenuBuilder menu) {
+        for (int id = 0; id < 12; id++) {
+            assertThat(menu.findItem(id)).isSameAs(scanForItem(menu, id));
+            int index = -1;
+            for (int i = menu.size() - 1; i >= 0; i--) {
+                if (menu.getItem(i).getItemId() == id) {
+                    index = i;
+                }
+            }
+            assertThat(menu.findItemIndex(id)).isEqualTo(index);
+        }
+        for (int group = 0; group < 4; group++) {
+            for (int start = 0; start <= menu.size(); start++) {
+                int index = -1;
+                for (int i = menu.size() - 1; i >= start; i--) {
+                    if (menu.getItem(i).getGroupId() == group) {
+                        index = i;
+                    }
+                }
+                assertThat(menu.findGroupIndex(group, start)).isEqualTo(index);
+            }
+        }
+    }
+
+    /** Looks up an item the way {@link Menu#findItem(int)} used to. */
+    private static MenuItem scanForItem(Menu menu, int id) {
+        for (int i = 0; i < menu.size(); i++) {
+            final MenuItem item = menu.getItem(i);
+            if (item.getItemId() == id) {
+                return item;
+            }
+            if (item.hasSubMenu()) {
+                final MenuItem subItem = scanForItem(item.getSubMenu(), id);
+                if (subItem != null) {
+                    return subItem;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void assertPartitions(List<MenuItemImpl> items) {
+        List<MenuItemImpl> visible = new ArrayList<MenuItemImpl>();
+        List<MenuItemImpl> action = new ArrayList<MenuItemImpl>();
+        List<MenuItemImpl> nonAction = new ArrayList<MenuItemImpl>();
+        for (MenuItemImpl item : items) {
+            if (!item.isVisible()) continue;
+            visible.add(item);
+            (item.requiresActionButton() ? action : nonAction).add(item);
+        }
+        assertThat(menu.getVisibleItems()).isEqualTo(visible);
+        assertThat(menu.getActionItems()).isEqualTo(action);
+        assertThat(menu.getNonActionItems()).isEqualTo(nonAction);
+    }
+
+    /** Flags every visible item which requires an action button. */
+    static class FlaggingPresenter implements MenuPresenter {
+        MenuBuilder menu;
+        int updateCount;
+        List<MenuItemImpl> lastChangedItems;
+
+        @Override public void initForMenu(Context context, MenuBuilder menu) {
+            this.menu = menu;
+        }
+
+        @Override public MenuView getMenuView(ViewGroup root) {
+            return null;
+        }
+
+        @Override public void updateMenuView(boolean cleared) {
+            updateCount++;
+            menu.flagActionItems();
+            List<MenuItemImpl> changedItems = menu.getChangedItems();
+            lastChangedItems = changedItems == null ? null : new ArrayList<MenuItemImpl>(changedItems);
+        }
+
+        @Override public void setCallback(Callback cb) {
+        }
+
+        @Override public boolean onSubMenuSelected(SubMenuBuilder subMenu) {
+            return false;
+        }
+
+        @Override public void onCloseMenu(MenuBuilder menu, boolean allMenusAreClosing) {
+        }
+
+        @Override public boolean flagActionItems() {
+            for (MenuItemImpl item : menu.getVisibleItems()) {
+                item.setIsActionButton(item.requiresActionButton());
+            }
+            return true;
+        }
+
+        @Override public boolean expandItemActionView(MenuBuilder menu, MenuItemImpl item) {
+            return false;
+        }
+
+        @Override public boolean collapseItemActionView(MenuBuilder menu, MenuItemImpl item) {
+            return false;
+        }
+
+        @Override public int getId() {
+            return 0;
+        }
+
+        @Override public Parcelable onSaveInstanceState() {
+            return null;
+        }
+
+        @Override public void onRestoreInstanceState(Parcelable state) {
+        }
+    }
+
+    /** Key event typing a single character without a key character map. */
+    @SuppressWarnings("deprecation")
+    private static class CharKeyEvent extends KeyEvent {
+        private final char c;
+
+        CharKeyEvent(char c) {
+            super(ACTION_DOWN, KEYCODE_UNKNOWN);
+            this.c = c;
+        }
+
+        @Override
+        public boolean getKeyData(KeyCharacterMap.KeyData results) {
+            if (results.meta == null) {
+                // Robolectric skips the field initializers of unshadowed classes.
+                results.meta = new char[KeyCharacterMap.KeyData.META_LENGTH];
+            }
+            results.displayLabel = Character.toUpperCase(c);
+            results.number = c;
+            results.meta[0] = c;
+            results.meta[1] = Character.toUpperCase(c);
+            results.meta[2] = c;
+            results.meta[3] = c;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.actionbarsherlock.internal.view.menu;
+
+import android.util.SparseIntArray;
+
+import java.util.Arrays;
+
+import org.robolectric.internal.Implementation;
+import org.robolectric.internal.Implements;
+
+/**
+ * Implements the whole of {@link SparseIntArray}, which Robolectric only
+ * partially shadows.
+ */
+@Implements(SparseIntArray.class)
+public class ShadowFullSparseIntArray {
+    private int[] keys = new int[0];
+    private int[] values = new int[0];
+
+    @Implementation
+    public int get(int key) {
+        return get(key, 0);
+    }
+
+    @Implementation
+    public int get(int key, int valueIfKeyNotFound) {
+        final int i = Arrays.binarySearch(keys, key);
+        return (i >= 0) ? values[i] : valueIfKeyNotFound;
+    }
+
+    @Implementation
+    public void put(int key, int value) {
+        final int i = Arrays.binarySearch(keys, key);
+        if (i >= 0) {
+            values[i] = value;
+            return;
+        }
+        final int insert = ~i;
+        keys = insert(keys, insert, key);
+        values = insert(values, insert, value);
+    }
+
+    @Implementation
+    public void append(int key, int value) {
+        put(key, value);
+    }
+
+    @Implementation
+    public void delete(int key) {
+        final int i = Arrays.binarySearch(keys, key);
+        if (i >= 0) {
+            removeAt(i);
+        }
+    }
+
+    @Implementation
+    public void removeAt(int index) {
+        keys = remove(keys, index);
+        values = remove(values, index);
+    }
+
+    @Implementation
+    public int size() {
+        return keys.length;
+    }
+
+    @Implementation
+    public int keyAt(int index) {
+        return keys[index];
+    }
+
+    @Implementation
+    public int valueAt(int index) {
+        return values[index];
+    }
+
+    @Implementation
+    public int indexOfKey(int key) {
+        final int i = Arrays.binarySearch(keys, key);
+        return (i >= 0) ? i : -1;
+    }
+
+    @Implementation
+    public int indexOfValue(int value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Implementation
+    public void clear() {
+        keys = new int[0];
+        values = new int[0];
+    }
+
+    private static int[] insert(int[] array, int index, int value) {
+        final int[] result = new int[array.length + 1];
+        System.arraycopy(array, 0, result, 0, index);
+        result[index] = value;
+        System.arraycopy(array, index, result, index + 1, array.length - index);
+        return result;
+    }
+
+    private static int[] remove(int[] array, int index) {
+        final int[] result = new int[array.length - 1];
+        System.arraycopy(array, 0, result, 0, index);
+        System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+        return result;
+    }
+}
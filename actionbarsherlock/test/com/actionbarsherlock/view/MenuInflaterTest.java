@@ -0,0 +1,382 @@
+package com.actionbarsherlock.view;
+
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.content.res.XmlResourceParser;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.util.Xml;
+import android.view.View;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.internal.Implementation;
+import org.robolectric.internal.Implements;
+import org.robolectric.res.ResourceLoader;
+import org.robolectric.res.builder.XmlFileBuilder;
+import org.robolectric.shadows.ShadowResources;
+import org.robolectric.shadows.ShadowTypedArray;
+import org.xml.sax.InputSource;
+import org.xmlpull.v1.XmlPullParser;
+
+import com.actionbarsherlock.internal.view.menu.MenuBuilder;
+import com.actionbarsherlock.internal.view.menu.MenuItemImpl;
+import com.actionbarsherlock.internal.view.menu.ShadowFullSparseIntArray;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class MenuInflaterTest {
+    private static final int MENU_RES = 0x7f0f0001;
+
+    // Robolectric looks attributes up by their local name and reads missing
+    // strings as "", so the shortcuts and onClick are always given.
+    private static final String MENU_XML = "<menu>"
+            + "<item title=\"Search\" orderInCategory=\"2\" showAsAction=\"always\""
+            + " alphabeticShortcut=\"s\" numericShortcut=\"1\" onClick=\"onItemClick\"/>"
+            + "<group id=\"1\" checkableBehavior=\"single\" visible=\"false\">"
+            + "<item title=\"Sort\" checked=\"true\""
+            + " alphabeticShortcut=\"o\" numericShortcut=\"2\" onClick=\"onItemClick\"/>"
+            + "<item title=\"Filter\" enabled=\"false\" visible=\"true\""
+            + " alphabeticShortcut=\"f\" numericShortcut=\"3\" onClick=\"onItemClick\"/>"
+            + "</group>"
+            + "<item title=\"More\" alphabeticShortcut=\"m\" numericShortcut=\"4\" onClick=\"onItemClick\">"
+            + "<menu><item title=\"Settings\" menuCategory=\"secondary\""
+            + " alphabeticShortcut=\"t\" numericShortcut=\"5\" onClick=\"onItemClick\"/></menu>"
+            + "</item>"
+            + "</menu>";
+
+    private static final String OTHER_MENU_XML = "<menu>"
+            + "<item title=\"Share\" alphabeticShortcut=\"h\" numericShortcut=\"6\" onClick=\"onItemClick\"/>"
+            + "</menu>";
+
+    private static final String PROVIDER_MENU_XML = "<menu>"
+            + "<item title=\"Share\" actionProviderClass=\"" + CountingActionProvider.class.getName() + "\""
+            + " alphabeticShortcut=\"h\" numericShortcut=\"6\" onClick=\"onItemClick\"/>"
+            + "</menu>";
+
+    @Implements(Xml.class)
+    public static class ShadowXml {
+        @Implementation
+        public static AttributeSet asAttributeSet(XmlPullParser parser) {
+            return (AttributeSet) parser;
+        }
+    }
+
+    /** Reads class names, which Robolectric does not resolve to values. */
+    @Implements(TypedArray.class)
+    public static class ShadowStringTypedArray extends ShadowTypedArray {
+        @Implementation
+        @Override
+        public boolean getValue(int index, TypedValue outValue) {
+            String string = getString(index);
+            if (string.length() == 0) {
+                return false;
+            }
+            outValue.type = TypedValue.TYPE_STRING;
+            outValue.string = string;
+            return true;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        Robolectric.bindShadowClass(ShadowXml.class);
+        Robolectric.bindShadowClass(ShadowStringTypedArray.class);
+        Robolectric.bindShadowClass(ShadowFullSparseIntArray.class);
+    }
+
+    @After
+    public void tearDown() {
+        MenuInflater.registerFactory(CountingActionProvider.class.getName(), null);
+    }
+
+    @Test
+    public void replayedMenuMatchesParsedMenu() throws Exception {
+        MenuResources resources = new MenuResources(MENU_XML);
+        MenuInflater inflater = new MenuInflater(new MenuContext(resources));
+
+        MenuBuilder parsed = new MenuBuilder(Robolectric.application);
+        inflater.inflate(MENU_RES, parsed);
+        MenuBuilder replayed = new MenuBuilder(Robolectric.application);
+        inflater.inflate(MENU_RES, replayed);
+
+        assertThat(resources.parseCount).isEqualTo(1);
+        assertThat(describe(parsed)).hasSize(5);
+        assertThat(describe(replayed)).isEqualTo(describe(parsed));
+    }
+
+    @Test
+    public void cachesPerResources() throws Exception {
+        MenuResources resources = new MenuResources(MENU_XML);
+        MenuResources otherResources = new MenuResources(OTHER_MENU_XML);
+
+        MenuBuilder menu = new MenuBuilder(Robolectric.application);
+        new MenuInflater(new MenuContext(resources)).inflate(MENU_RES, menu);
+        MenuBuilder otherMenu = new MenuBuilder(Robolectric.application);
+        new MenuInflater(new MenuContext(otherResources)).inflate(MENU_RES, otherMenu);
+
+        assertThat(menu.size()).isEqualTo(4);
+        assertThat(otherMenu.size()).isEqualTo(1);
+        assertThat(otherMenu.getItem(0).getTitle().toString()).isEqualTo("Share");
+        assertThat(otherResources.parseCount).isEqualTo(1);
+    }
+
+    @Test
+    public void configurationChangeDropsCache() throws Exception {
+        MenuResources resources = new MenuResources(OTHER_MENU_XML);
+        MenuInflater inflater = new MenuInflater(new MenuContext(resources));
+        inflater.inflate(MENU_RES, new MenuBuilder(Robolectric.application));
+
+        Configuration config = new Configuration(resources.getConfiguration());
+        config.locale = Locale.FRENCH;
+        Robolectric.shadowOf(resources).setConfiguration(config);
+        resources.xml = OTHER_MENU_XML.replace("Share", "Partager");
+
+        MenuBuilder menu = new MenuBuilder(Robolectric.application);
+        inflater.inflate(MENU_RES, menu);
+        assertThat(resources.parseCount).isEqualTo(2);
+        assertThat(menu.getItem(0).getTitle().toString()).isEqualTo("Partager");
+    }
+
+    @Test
+    public void reusesResolvedConstructor() throws Exception {
+        CountingClassLoader classLoader = new CountingClassLoader();
+        MenuInflater inflater = new MenuInflater(
+                new MenuContext(new MenuResources(PROVIDER_MENU_XML), classLoader));
+
+        MenuBuilder menu = new MenuBuilder(Robolectric.application);
+        inflater.inflate(MENU_RES, menu);
+        MenuBuilder otherMenu = new MenuBuilder(Robolectric.application);
+        inflater.inflate(MENU_RES, otherMenu);
+
+        assertThat(classLoader.loadCount).isEqualTo(1);
+        assertThat(menu.getItem(0).getActionProvider()).isInstanceOf(CountingActionProvider.class);
+        assertThat(otherMenu.getItem(0).getActionProvider())
+                .isInstanceOf(CountingActionProvider.class)
+                .isNotSameAs(menu.getItem(0).getActionProvider());
+    }
+
+    @Test
+    public void resolvesConstructorPerClassLoader() throws Exception {
+        MenuResources resources = new MenuResources(PROVIDER_MENU_XML);
+        CountingClassLoader classLoader = new CountingClassLoader();
+        CountingClassLoader otherClassLoader = new CountingClassLoader();
+
+        new MenuInflater(new MenuContext(resources, classLoader))
+                .inflate(MENU_RES, new MenuBuilder(Robolectric.application));
+        new MenuInflater(new MenuContext(resources, otherClassLoader))
+                .inflate(MENU_RES, new MenuBuilder(Robolectric.application));
+
+        assertThat(classLoader.loadCount).isEqualTo(1);
+        assertThat(otherClassLoader.loadCount).isEqualTo(1);
+    }
+
+    @Test
+    public void factoryBypassesReflection() throws Exception {
+        final List<Context> contexts = new ArrayList<Context>();
+        MenuInflater.registerFactory(CountingActionProvider.class.getName(),
+                new MenuInflater.Factory() {
+                    @Override
+                    public Object newInstance(Context context) {
+                        contexts.add(context);
+                        return new CountingActionProvider(context);
+                    }
+                });
+        CountingClassLoader classLoader = new CountingClassLoader();
+        MenuContext context = new MenuContext(new MenuResources(PROVIDER_MENU_XML), classLoader);
+
+        MenuBuilder menu = new MenuBuilder(Robolectric.application);
+        new MenuInflater(context).inflate(MENU_RES, menu);
+
+        assertThat(classLoader.loadCount).isZero();
+        assertThat(contexts).containsExactly(context);
+        assertThat(menu.getItem(0).getActionProvider()).isInstanceOf(CountingActionProvider.class);
+    }
+
+    /**
+     * Micro-benchmark of inflating a 20 item menu 1,000 times with the
+     * resolved constructors and methods dropped before every inflation, and
+     * 1,000 times with them cached. Timings under Robolectric are noisy, so
+     * each uncached inflation is paired with a cached one right after it and
+     * only the pairs are compared.
+     */
+    @Test
+    public void cachedReflectionSpeedsUpInflation() throws Exception {
+        StringBuilder xml = new StringBuilder("<menu>");
+        for (int i = 0; i < 20; i++) {
+            xml.append("<item title=\"Item ").append(i).append("\" orderInCategory=\"").append(i)
+                    .append("\" alphabeticShortcut=\"a\" numericShortcut=\"1\" onClick=\"onItemClick\"");
+            if (i % 5 == 0) {
+                xml.append(" actionProviderClass=\"").append(CountingActionProvider.class.getName())
+                        .append("\"");
+            }
+            xml.append("/>");
+        }
+        xml.append("</menu>");
+        MenuResources resources = new MenuResources(xml.toString());
+        CountingClassLoader classLoader = new CountingClassLoader();
+        MenuInflater inflater = new MenuInflater(new MenuContext(resources, classLoader));
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        final int inflations = 1000;
+        int uncachedLoads = 0;
+        int cachedLoads = 0;
+        int cachedFaster = 0;
+        for (int i = 0; i < inflations; i++) {
+            classLoader.loadCount = 0;
+            long start = threads.getCurrentThreadCpuTime();
+            MenuInflater.clearReflectionCaches();
+            inflate(inflater);
+            long uncached = threads.getCurrentThreadCpuTime() - start;
+            uncachedLoads += classLoader.loadCount;
+
+            classLoader.loadCount = 0;
+            start = threads.getCurrentThreadCpuTime();
+            inflate(inflater);
+            long cached = threads.getCurrentThreadCpuTime() - start;
+            cachedLoads += classLoader.loadCount;
+
+            if (cached < uncached) {
+                cachedFaster++;
+            }
+        }
+
+        // Every uncached inflation resolves the provider constructor again, the
+        // cached one after it reuses it.
+        assertThat(uncachedLoads).isEqualTo(inflations);
+        assertThat(cachedLoads).isZero();
+        assertThat(cachedFaster).isGreaterThan(inflations / 2);
+    }
+
+    private static void inflate(MenuInflater inflater) {
+        MenuBuilder menu = new MenuBuilder(Robolectric.application);
+        inflater.inflate(MENU_RES, menu);
+        assertThat(menu.size()).isEqualTo(20);
+    }
+
+    private static List<String> describe(Menu menu) {
+        List<String> description = new ArrayList<String>();
+        for (int i = 0; i < menu.size(); i++) {
+            MenuItemImpl item = (MenuItemImpl) menu.getItem(i);
+            description.add(item.getTitle() + " group=" + item.getGroupId()
+                    + " order=" + item.getOrder()
+                    + " shortcuts=" + item.getAlphabeticShortcut() + item.getNumericShortcut()
+                    + " checkable=" + item.isCheckable() + " exclusive=" + item.isExclusiveCheckable()
+                    + " checked=" + item.isChecked() + " visible=" + item.isVisible()
+                    + " enabled=" + item.isEnabled() + " action=" + item.requiresActionButton());
+            if (item.hasSubMenu()) {
+                description.addAll(describe(item.getSubMenu()));
+            }
+        }
+        return description;
+    }
+
+    /** Resources serving a single menu from an XML string. */
+    static class MenuResources extends Resources {
+        String xml;
+        int parseCount;
+
+        MenuResources(String xml) throws Exception {
+            super(Robolectric.application.getAssets(),
+                    Robolectric.application.getResources().getDisplayMetrics(),
+                    Robolectric.application.getResources().getConfiguration());
+            this.xml = xml;
+
+            // Let Robolectric resolve attributes for these resources too.
+            Method bind = ShadowResources.class.getDeclaredMethod("bind",
+                    Resources.class, ResourceLoader.class);
+            bind.setAccessible(true);
+            bind.invoke(null, this,
+                    Robolectric.shadowOf(Robolectric.application.getResources()).getResourceLoader());
+        }
+
+        @Override
+        public XmlResourceParser getLayout(int id) {
+            parseCount++;
+            try {
+                DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+                factory.setNamespaceAware(true);
+                return new XmlFileBuilder().getXml(
+                        factory.newDocumentBuilder().parse(new InputSource(new StringReader(xml))));
+            } catch (Exception e) {
+                throw new NotFoundException(e.toString());
+            }
+        }
+    }
+
+    /** Context with the given resources and class loader and an onClick handler. */
+    public static class MenuContext extends ContextWrapper {
+        private final Resources resources;
+        private final ClassLoader classLoader;
+
+        MenuContext(Resources resources) {
+            this(resources, MenuInflaterTest.class.getClassLoader());
+        }
+
+        MenuContext(Resources resources, ClassLoader classLoader) {
+            super(Robolectric.application);
+            this.resources = resources;
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        public Resources getResources() {
+            return resources;
+        }
+
+        @Override
+        public ClassLoader getClassLoader() {
+            return classLoader;
+        }
+
+        public boolean onItemClick(MenuItem item) {
+            return true;
+        }
+    }
+
+    /** Class loader counting the loads of {@link CountingActionProvider}. */
+    static class CountingClassLoader extends ClassLoader {
+        int loadCount;
+
+        CountingClassLoader() {
+            super(MenuInflaterTest.class.getClassLoader());
+        }
+
+        @Override
+        public Class<?> loadClass(String name) throws ClassNotFoundException {
+            if (name.equals(CountingActionProvider.class.getName())) {
+                loadCount++;
+            }
+            return super.loadClass(name);
+        }
+    }
+
+    public static class CountingActionProvider extends ActionProvider {
+        public CountingActionProvider(Context context) {
+            super(context);
+        }
+
+        @Override
+        public View onCreateActionView() {
+            return null;
+        }
+    }
+}
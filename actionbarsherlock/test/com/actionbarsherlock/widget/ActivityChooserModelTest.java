@@ -0,0 +1,282 @@
+package com.actionbarsherlock.widget;
+
+import android.content.Intent;
+import android.content.pm.ActivityInfo;
+import android.content.pm.ResolveInfo;
+import android.database.DataSetObserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.res.builder.RobolectricPackageManager;
+import org.robolectric.shadows.ShadowLooper;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class ActivityChooserModelTest {
+    private final Executor executor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            executed++;
+            command.run();
+        }
+    };
+
+    private int executed;
+    private Intent intent;
+    private Intent imageIntent;
+
+    @Before
+    public void setUp() {
+        ActivityChooserModel.setHistoryExecutor(executor);
+        intent = new Intent(Intent.ACTION_SEND);
+        intent.setType("text/plain");
+        imageIntent = new Intent(Intent.ACTION_SEND);
+        imageIntent.setType("image/png");
+        final RobolectricPackageManager packageManager =
+            (RobolectricPackageManager) Robolectric.application.getPackageManager();
+        packageManager.addResolveInfoForIntent(intent, resolveInfo("com.example.mail"));
+        packageManager.addResolveInfoForIntent(intent, resolveInfo("com.example.chat"));
+        packageManager.addResolveInfoForIntent(intent, resolveInfo("com.example.notes"));
+        packageManager.addResolveInfoForIntent(intent, resolveInfo("com.example.social"));
+        packageManager.addResolveInfoForIntent(imageIntent, resolveInfo("com.example.gallery"));
+    }
+
+    @After
+    public void tearDown() {
+        ActivityChooserModel.setHistoryExecutor(null);
+    }
+
+    @Test
+    public void coalescesQuickChoices() throws IOException {
+        final ActivityChooserModel model = model("coalesce_history");
+        executed = 0;
+
+        model.chooseActivity(0);
+        model.chooseActivity(1);
+        model.chooseActivity(0);
+        assertThat(executed).isZero();
+
+        ShadowLooper.idleMainLooper(1000);
+        assertThat(executed).isEqualTo(1);
+        assertThat(readHistory("coalesce_history")).isEqualTo(3);
+    }
+
+    @Test
+    public void flushWritesRightAway() throws IOException {
+        final ActivityChooserModel model = model("flush_history");
+        executed = 0;
+
+        model.chooseActivity(0);
+        model.flush();
+        assertThat(executed).isEqualTo(1);
+        assertThat(readHistory("flush_history")).isEqualTo(1);
+
+        // Nothing left to write.
+        model.flush();
+        ShadowLooper.idleMainLooper(1000);
+        assertThat(executed).isEqualTo(1);
+    }
+
+    @Test
+    public void notifiesRightAwayAndPrefetchesActivityInfo() {
+        final ActivityChooserModel model =
+            ActivityChooserModel.get(Robolectric.application, "prefetch_history");
+        final int[] changes = new int[1];
+        model.registerObserver(new DataSetObserver() {
+            @Override
+            public void onChanged() {
+                changes[0]++;
+            }
+        });
+        changes[0] = 0;
+        executed = 0;
+
+        Robolectric.pauseMainLooper();
+        model.setIntent(intent);
+        // Available right away, with labels and icons loaded on the executor.
+        assertThat(model.getActivityCount()).isEqualTo(4);
+        assertThat(changes[0]).isEqualTo(1);
+        assertThat(executed).isEqualTo(1);
+
+        // Nothing more to tell once they are loaded.
+        Robolectric.unPauseMainLooper();
+        assertThat(changes[0]).isEqualTo(1);
+    }
+
+    @Test
+    public void asyncPublishesOnlyTheLatestIntent() {
+        final ActivityChooserModel model = asyncModel("async_latest_history");
+        final int[] changes = countChanges(model);
+
+        Robolectric.pauseMainLooper();
+        model.setIntent(intent);
+        model.setIntent(imageIntent);
+        // Both are resolved on the executor, but only swapped in on the client thread.
+        assertThat(executed).isEqualTo(2);
+        assertThat(model.getActivityCount()).isZero();
+        assertThat(changes[0]).isZero();
+
+        // The activities for the replaced intent are dropped.
+        Robolectric.unPauseMainLooper();
+        assertThat(changes[0]).isEqualTo(1);
+        assertThat(packageNames(model)).containsExactly("com.example.gallery");
+    }
+
+    @Test
+    public void asyncKeepsActivitiesUntilSwappedOnClientThread() {
+        final ActivityChooserModel model = asyncModel("async_swap_history");
+        final int[] changes = countChanges(model);
+        model.setIntent(intent);
+        assertThat(changes[0]).isEqualTo(1);
+        final List<String> textActivities = packageNames(model);
+        assertThat(textActivities).hasSize(4);
+
+        Robolectric.pauseMainLooper();
+        model.setIntent(imageIntent);
+        assertThat(packageNames(model)).isEqualTo(textActivities);
+        assertThat(changes[0]).isEqualTo(1);
+
+        Robolectric.unPauseMainLooper();
+        assertThat(changes[0]).isEqualTo(2);
+        assertThat(packageNames(model)).containsExactly("com.example.gallery");
+    }
+
+    @Test
+    public void asyncResortsWhenSortingChangedMeanwhile() {
+        final ActivityChooserModel model = asyncModel("async_resort_history");
+        final int[] changes = countChanges(model);
+
+        Robolectric.pauseMainLooper();
+        model.setIntent(intent);
+        // Replaces the sorter the activities were sorted with on the executor.
+        model.setActivitySorter(new ActivityChooserModel.ActivitySorter() {
+            @Override
+            public void sort(Intent intent,
+                    List<ActivityChooserModel.ActivityResolveInfo> activities,
+                    List<ActivityChooserModel.HistoricalRecord> historicalRecords) {
+                Collections.sort(activities,
+                        new Comparator<ActivityChooserModel.ActivityResolveInfo>() {
+                    @Override
+                    public int compare(ActivityChooserModel.ActivityResolveInfo lhs,
+                            ActivityChooserModel.ActivityResolveInfo rhs) {
+                        return rhs.resolveInfo.activityInfo.packageName.compareTo(
+                                lhs.resolveInfo.activityInfo.packageName);
+                    }
+                });
+            }
+        });
+        assertThat(changes[0]).isZero();
+
+        Robolectric.unPauseMainLooper();
+        assertThat(changes[0]).isEqualTo(1);
+        assertThat(packageNames(model)).containsExactly("com.example.social",
+                "com.example.notes", "com.example.mail", "com.example.chat");
+        for (int i = 0; i < model.getActivityCount(); i++) {
+            assertThat(model.getActivityIndex(model.getActivity(i))).isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void ranksByDecayedHistory() {
+        final ActivityChooserModel model = model("rank_history");
+        model.setHistoryMaxSize(6);
+
+        final Random random = new Random(42);
+        final List<String> chosen = new ArrayList<String>();
+        for (int i = 0; i < 40; i++) {
+            final int index = random.nextInt(model.getActivityCount());
+            chosen.add(model.getActivity(index).activityInfo.packageName);
+            model.chooseActivity(index);
+
+            // Same order as weighing the last 6 choices from scratch.
+            final List<String> history = chosen.subList(Math.max(0, chosen.size() - 6),
+                    chosen.size());
+            double previousWeight = Double.MAX_VALUE;
+            for (int j = 0; j < model.getActivityCount(); j++) {
+                final ResolveInfo activity = model.getActivity(j);
+                assertThat(model.getActivityIndex(activity)).isEqualTo(j);
+                final double weight = weight(activity.activityInfo.packageName, history);
+                assertThat(weight).isLessThanOrEqualTo(previousWeight + 1e-4);
+                previousWeight = weight;
+            }
+        }
+    }
+
+    private static double weight(String packageName, List<String> history) {
+        double weight = 0;
+        double decay = 1;
+        for (int i = history.size() - 1; i >= 0; i--) {
+            if (history.get(i).equals(packageName)) {
+                weight += decay;
+            }
+            decay *= 0.95;
+        }
+        return weight;
+    }
+
+    private ActivityChooserModel asyncModel(String historyFileName) {
+        final ActivityChooserModel model =
+            ActivityChooserModel.get(Robolectric.application, historyFileName);
+        model.setResolveActivitiesAsync(true);
+        executed = 0;
+        return model;
+    }
+
+    private static int[] countChanges(ActivityChooserModel model) {
+        final int[] changes = new int[1];
+        model.registerObserver(new DataSetObserver() {
+            @Override
+            public void onChanged() {
+                changes[0]++;
+            }
+        });
+        return changes;
+    }
+
+    private static List<String> packageNames(ActivityChooserModel model) {
+        final List<String> packageNames = new ArrayList<String>();
+        for (int i = 0; i < model.getActivityCount(); i++) {
+            packageNames.add(model.getActivity(i).activityInfo.packageName);
+        }
+        return packageNames;
+    }
+
+    private ActivityChooserModel model(String historyFileName) {
+        final ActivityChooserModel model =
+            ActivityChooserModel.get(Robolectric.application, historyFileName);
+        model.setIntent(intent);
+        assertThat(model.getActivityCount()).isEqualTo(4);
+        return model;
+    }
+
+    private static int readHistory(String historyFileName) throws IOException {
+        final File file = Robolectric.application.getFileStreamPath(historyFileName + ".bin");
+        try {
+            return new HistoricalRecordLog(file).read().size();
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static ResolveInfo resolveInfo(String packageName) {
+        final ResolveInfo resolveInfo = new ResolveInfo();
+        resolveInfo.activityInfo = new ActivityInfo();
+        resolveInfo.activityInfo.packageName = packageName;
+        resolveInfo.activityInfo.name = packageName + ".Share";
+        return resolveInfo;
+    }
+}
@@ -0,0 +1,91 @@
+package com.actionbarsherlock.widget;
+
+import android.content.ComponentName;
+
+import com.actionbarsherlock.widget.ActivityChooserModel.HistoricalRecord;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class HistoricalRecordLogTest {
+    private ComponentName mail;
+    private ComponentName chat;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        mail = new ComponentName("com.example.mail", "com.example.mail.Send");
+        chat = new ComponentName("com.example.chat", "com.example.chat.Share");
+        file = File.createTempFile("history", ".bin");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void appendsNewRecords() throws IOException {
+        final List<HistoricalRecord> records = new ArrayList<HistoricalRecord>();
+        records.add(new HistoricalRecord(mail, 1000, 1f));
+        records.add(new HistoricalRecord(chat, 2000, 0.5f));
+
+        final HistoricalRecordLog log = new HistoricalRecordLog(file);
+        log.write(records, 50);
+        final long compactedLength = file.length();
+
+        records.add(new HistoricalRecord(mail, 3000, 6.5f));
+        log.write(records, 50);
+        // One record entry of a known component: type, id, time and weight.
+        assertThat(file.length()).isEqualTo(compactedLength + 1 + 4 + 8 + 4);
+
+        assertThat(new HistoricalRecordLog(file).read()).isEqualTo(records);
+    }
+
+    @Test
+    public void compactsToMaxSize() throws IOException {
+        final List<HistoricalRecord> records = new ArrayList<HistoricalRecord>();
+        final HistoricalRecordLog log = new HistoricalRecordLog(file);
+        for (int i = 0; i < 7; i++) {
+            records.add(new HistoricalRecord(i % 2 == 0 ? mail : chat, i, 1f));
+            log.write(records, 3);
+        }
+
+        // Compacted to the last 3 on the 7th, the 4 earlier ones fit in twice the max.
+        final List<HistoricalRecord> read = new HistoricalRecordLog(file).read();
+        assertThat(read).isEqualTo(records.subList(4, 7));
+    }
+
+    @Test
+    public void rewritesAfterTruncatedRecord() throws IOException {
+        final List<HistoricalRecord> records = new ArrayList<HistoricalRecord>();
+        records.add(new HistoricalRecord(mail, 1000, 1f));
+        records.add(new HistoricalRecord(chat, 2000, 1f));
+        new HistoricalRecordLog(file).write(records, 50);
+
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(file.length() - 2);
+        raf.close();
+
+        final HistoricalRecordLog log = new HistoricalRecordLog(file);
+        final List<HistoricalRecord> read = log.read();
+        assertThat(read).containsExactly(records.get(0));
+
+        read.add(new HistoricalRecord(chat, 3000, 1f));
+        log.write(read, 50);
+        assertThat(new HistoricalRecordLog(file).read()).isEqualTo(read);
+    }
+}
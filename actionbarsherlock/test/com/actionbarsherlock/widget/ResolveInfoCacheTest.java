@@ -0,0 +1,56 @@
+package com.actionbarsherlock.widget;
+
+import android.content.pm.ResolveInfo;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowResolveInfo;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.robolectric.Robolectric.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+public class ResolveInfoCacheTest {
+    private ResolveInfoCache cache;
+    private ResolveInfo mail;
+    private ResolveInfo chat;
+
+    @Before
+    public void setUp() {
+        cache = new ResolveInfoCache(Robolectric.application);
+        mail = ShadowResolveInfo.newResolveInfo("Mail", "com.example.mail",
+                "com.example.mail.Send");
+        chat = ShadowResolveInfo.newResolveInfo("Chat", "com.example.chat",
+                "com.example.chat.Share");
+    }
+
+    @Test
+    public void keepsLabelsUntilPackageChanges() {
+        cache.prefetch(Arrays.asList(mail, chat));
+        shadowOf(mail).setLabel("Mail 2");
+        shadowOf(chat).setLabel("Chat 2");
+        assertThat(cache.getLabel(mail).toString()).isEqualTo("Mail");
+        assertThat(cache.getLabel(chat).toString()).isEqualTo("Chat");
+
+        cache.invalidatePackage("com.example.mail");
+        assertThat(cache.getLabel(mail).toString()).isEqualTo("Mail 2");
+        assertThat(cache.getLabel(chat).toString()).isEqualTo("Chat");
+
+        shadowOf(chat).setLabel("Chat 3");
+        cache.invalidateAll();
+        assertThat(cache.getLabel(chat).toString()).isEqualTo("Chat 3");
+    }
+
+    @Test
+    public void keysByComponent() {
+        cache.getLabel(mail);
+        final ResolveInfo sameComponent = ShadowResolveInfo.newResolveInfo("Other",
+                "com.example.mail", "com.example.mail.Send");
+        assertThat(cache.getLabel(sameComponent).toString()).isEqualTo("Mail");
+    }
+}